@@ -0,0 +1,299 @@
+package com.tsaysoft.nfpacid3;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * A set of bitmap indexes over the rows of a {@link ChemDB}.
+ * <p>
+ *     Keeps one bitmap per value of each {@link ChemProp} rating (e.g. <tt>HEALTH = 3</tt>) and one bitmap
+ *     per {@link ChemSpecial} symbol.
+ *     A {@link ChemQuery} is answered by OR-ing the bitmaps of each rating range and AND-ing the results
+ *     together with the special symbol bitmaps, a word (64 rows) at a time.
+ * </p>
+ * <p>
+ *     Bitmaps are only ever extended, so an index can be forked (see {@link BitmapIndex#fork()}) without
+ *     copying them: every query passes the number of rows it sees, and later rows are ignored.
+ *     Removed rows keep their bits and are masked out by a separate bitmap of removed rows, which is kept in
+ *     pages so that a fork removing a row only copies the page of that row.
+ * </p>
+ *
+ * @author Clay Tsay
+ * @version 00.02.00
+ */
+class BitmapIndex {
+
+    // --------------------
+    // VARIABLES AND DATA
+    // --------------------
+
+    private static final int RATING_BITMAPS = ChemProp.values().length * ChemSignature.RATING_LEVELS;
+
+    // Each page of the removed rows holds 64 words (4096 rows)
+    private static final int PAGE_BITS = 6;
+
+    /**
+     * The words of every bitmap: first one per rating value of each property, then one per special symbol.
+     * May hold bits of rows that only a newer fork has.
+     */
+    private final long[][] bitmaps;
+
+    /**
+     * The pages of words of the removed rows; a <tt>null</tt> page holds no removed rows.
+     */
+    private long[][] removed;
+
+    /**
+     * Whether each page of removed rows was made by this index, and may thus be changed in place.
+     */
+    private boolean[] ownedPages;
+
+    private int removedCount;
+
+
+
+    // --------------------
+    // CONSTRUCTORS
+    // --------------------
+
+    BitmapIndex() {
+        this(new long[RATING_BITMAPS + ChemSpecial.values().length][], new long[0][], 0);
+        Arrays.fill(bitmaps, new long[0]);
+    }
+
+    private BitmapIndex(long[][] bitmaps, long[][] removed, int removedCount) {
+        this.bitmaps = bitmaps;
+        this.removed = removed;
+        this.ownedPages = new boolean[removed.length];
+        this.removedCount = removedCount;
+    }
+
+
+
+    // --------------------
+    // PUBLIC UTILITY METHODS
+    // --------------------
+
+    /**
+     * Sets the bits of a row in the bitmaps matching its signature (and clears them in all others).
+     *
+     * @param row the row to be added
+     * @param signature the (valid) signature of the row
+     */
+    void add(int row, int signature) {
+        int mask = ChemSignature.getSpecials(signature);
+        for(ChemProp prop : ChemProp.values()) {
+            for(int value = 0; value < ChemSignature.RATING_LEVELS; value++) {
+                set(bitmap(prop, value), row, ChemSignature.getProp(signature, prop) == value);
+            }
+        }
+        for(ChemSpecial symbol : ChemSpecial.values()) {
+            set(RATING_BITMAPS + symbol.ordinal(), row, (mask & (1 << symbol.ordinal())) != 0);
+        }
+    }
+
+    /**
+     * Marks a row as removed, so that no query matches it any more.
+     *
+     * @param row the row to be removed
+     */
+    void remove(int row) {
+        int page = row >>> (6 + PAGE_BITS);
+        if(page >= removed.length) {
+            removed = Arrays.copyOf(removed, Math.max(page + 1, removed.length * 2));
+            ownedPages = Arrays.copyOf(ownedPages, removed.length);
+        }
+        if(!ownedPages[page]) {
+            long[] shared = removed[page];
+            removed[page] = shared == null ? new long[1 << PAGE_BITS] : shared.clone();
+            ownedPages[page] = true;
+        }
+        long[] words = removed[page];
+        int word = (row >>> 6) & ((1 << PAGE_BITS) - 1);
+        if((words[word] & (1L << row)) == 0) {
+            words[word] |= 1L << row;
+            removedCount++;
+        }
+    }
+
+    /**
+     * Checks whether a row was removed.
+     *
+     * @param row the row to be checked
+     * @return <tt>true</tt> if the row was removed
+     */
+    boolean isRemoved(int row) {
+        int page = row >>> (6 + PAGE_BITS);
+        return page < removed.length && removed[page] != null
+                && (removed[page][(row >>> 6) & ((1 << PAGE_BITS) - 1)] & (1L << row)) != 0;
+    }
+
+    /**
+     * Gets the number of removed rows.
+     *
+     * @return the number of rows removed
+     */
+    int removedCount() {
+        return removedCount;
+    }
+
+    /**
+     * Creates an index over the same rows that more rows can be added to without changing this one.
+     * <p>
+     *     The bitmaps are shared rather than copied, so the cost does not depend on the number of rows.
+     *     Once forked, rows must only be added to or removed from the fork.
+     * </p>
+     *
+     * @return the new index
+     */
+    BitmapIndex fork() {
+        return new BitmapIndex(bitmaps.clone(), removed.clone(), removedCount);
+    }
+
+    /**
+     * Finds the rows matching a query.
+     *
+     * @param query the <tt>ChemQuery</tt> to be evaluated
+     * @param size the number of rows in the database
+     * @return a new <tt>BitSet</tt> with the bits of the matching rows set
+     */
+    BitSet evaluate(ChemQuery query, int size) {
+        int length = (size + 63) >>> 6;
+        long[] result = new long[length];
+        Arrays.fill(result, -1L);
+        if(size % 64 != 0) {
+            result[length - 1] = (1L << size) - 1;
+        }
+
+        long[] range = new long[length];
+        for(ChemProp prop : ChemProp.values()) {
+            if(query.isRestricted(prop)) {
+                Arrays.fill(range, 0);
+                for(int value = query.getMin(prop); value <= query.getMax(prop); value++) {
+                    long[] words = bitmaps[bitmap(prop, value)];
+                    for(int i = Math.min(length, words.length) - 1; i >= 0; i--) {
+                        range[i] |= words[i];
+                    }
+                }
+                for(int i = 0; i < length; i++) {
+                    result[i] &= range[i];
+                }
+            }
+        }
+
+        for(ChemSpecial symbol : ChemSpecial.values()) {
+            int bit = 1 << symbol.ordinal();
+            long[] words = bitmaps[RATING_BITMAPS + symbol.ordinal()];
+            if((query.getRequiredSpecials() & bit) != 0) {
+                for(int i = 0; i < length; i++) {
+                    result[i] &= i < words.length ? words[i] : 0;
+                }
+            } else if((query.getExcludedSpecials() & bit) != 0) {
+                for(int i = Math.min(length, words.length) - 1; i >= 0; i--) {
+                    result[i] &= ~words[i];
+                }
+            }
+        }
+
+        for(int page = 0; page < removed.length; page++) {
+            long[] words = removed[page];
+            int start = page << PAGE_BITS;
+            if(words != null && start < length) {
+                for(int i = Math.min(length - start, words.length) - 1; i >= 0; i--) {
+                    result[start + i] &= ~words[i];
+                }
+            }
+        }
+
+        return BitSet.valueOf(result);
+    }
+
+    /**
+     * Writes the bitmaps in the format read by {@link BitmapIndex#read(ByteBuffer)}.
+     * <p>
+     *     Each bitmap is written as its number of 64-bit words followed by the words.
+     *     The format has no room for removed rows, so the index must not have any.
+     * </p>
+     *
+     * @param out the <tt>DataOutput</tt> to be written to
+     * @param size the number of rows in the database
+     * @throws IOException if writing fails
+     */
+    void write(DataOutput out, int size) throws IOException {
+        if(removedCount > 0) {
+            throw new IllegalStateException("bitmap index with removed rows cannot be written");
+        }
+        for(long[] words : bitmaps) {
+            BitSet bitmap = BitSet.valueOf(words);
+            // Rows of newer forks are left out
+            bitmap.clear(size, Math.max(size, bitmap.length()));
+            writeBitmap(out, bitmap);
+        }
+    }
+
+    /**
+     * Reads bitmaps written by {@link BitmapIndex#write(DataOutput, int)}.
+     *
+     * @param in the <tt>ByteBuffer</tt> positioned at the start of the index; advanced past its end
+     * @return the index
+     */
+    static BitmapIndex read(ByteBuffer in) {
+        BitmapIndex index = new BitmapIndex();
+        for(int i = 0; i < index.bitmaps.length; i++) {
+            index.bitmaps[i] = readBitmap(in);
+        }
+        return index;
+    }
+
+
+
+    // --------------------
+    // PRIVATE UTILITY METHODS
+    // --------------------
+
+    private static int bitmap(ChemProp prop, int value) {
+        return prop.ordinal() * ChemSignature.RATING_LEVELS + value;
+    }
+
+    /**
+     * Sets or clears the bit of a row, growing the bitmap if necessary.
+     * <p>
+     *     Clearing matters too: a discarded fork may have left bits behind in the shared words.
+     * </p>
+     */
+    private void set(int bitmap, int row, boolean value) {
+        long[] words = bitmaps[bitmap];
+        int word = row >>> 6;
+        if(word >= words.length) {
+            if(!value) {
+                return;
+            }
+            words = Arrays.copyOf(words, Math.max(word + 1, words.length * 2));
+            bitmaps[bitmap] = words;
+        }
+        if(value) {
+            words[word] |= 1L << row;
+        } else {
+            words[word] &= ~(1L << row);
+        }
+    }
+
+    private static void writeBitmap(DataOutput out, BitSet bitmap) throws IOException {
+        long[] words = bitmap.toLongArray();
+        out.writeInt(words.length);
+        for(long word : words) {
+            out.writeLong(word);
+        }
+    }
+
+    private static long[] readBitmap(ByteBuffer in) {
+        long[] words = new long[in.getInt()];
+        in.asLongBuffer().get(words);
+        in.position(in.position() + words.length * Long.BYTES);
+        return words;
+    }
+
+}
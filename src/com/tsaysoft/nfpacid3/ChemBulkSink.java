@@ -0,0 +1,179 @@
+package com.tsaysoft.nfpacid3;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A {@link ChemSink} that hands chemicals to another sink on a separate thread.
+ * <p>
+ *     Chemicals are collected into batches and passed over a small bounded queue, so a loader can go on
+ *     decoding the file while the previous batches are being stored and indexed. When the queue is full
+ *     the loader waits, so no more than a few batches are ever held in memory.
+ * </p>
+ * <p>
+ *     Chemicals that the target sink rejects are reported to the console and skipped, as the loaders do.
+ *     {@link ChemBulkSink#close()} must be called once the loader is done; it waits until every chemical
+ *     has been stored.
+ * </p>
+ *
+ * @author Clay Tsay
+ * @version 00.02.00
+ */
+class ChemBulkSink implements ChemSink, Closeable {
+
+    /**
+     * One chemical waiting to be stored.
+     */
+    private static final class Row {
+        final String name;
+        final int health;
+        final int flammability;
+        final int reactivity;
+        final int specials;
+
+        Row(String name, int health, int flammability, int reactivity, int specials) {
+            this.name = name;
+            this.health = health;
+            this.flammability = flammability;
+            this.reactivity = reactivity;
+            this.specials = specials;
+        }
+    }
+
+    // --------------------
+    // VARIABLES AND DATA
+    // --------------------
+
+    private static final int BATCH_SIZE = 1024;
+    private static final int MAX_PENDING = 4;
+
+    // Marks the end of the input; compared by reference
+    private static final List<Row> END = new ArrayList<>(0);
+
+    private final ChemSink target;
+    private final BlockingQueue<List<Row>> queue = new ArrayBlockingQueue<>(MAX_PENDING);
+    private final Thread worker;
+
+    private List<Row> batch = new ArrayList<>(BATCH_SIZE);
+    private volatile RuntimeException failure;
+    private boolean closed;
+
+
+
+    // --------------------
+    // CONSTRUCTORS
+    // --------------------
+
+    /**
+     * Constructs a <tt>ChemBulkSink</tt> and starts its thread.
+     *
+     * @param target the <tt>ChemSink</tt> that stores the chemicals
+     */
+    ChemBulkSink(ChemSink target) {
+        this.target = target;
+        this.worker = new Thread(this::drain, "ChemBulkSink");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+
+
+    // --------------------
+    // PUBLIC UTILITY METHODS
+    // --------------------
+
+    /**
+     * Queues a chemical to be stored.
+     * <p>
+     *     Unlike most sinks, a chemical that cannot be stored is only reported once its batch is stored.
+     * </p>
+     *
+     * @throws IllegalStateException if the sink is closed or the thread is interrupted while waiting
+     */
+    @Override
+    public void add(String name, int health, int flammability, int reactivity, int specials) {
+        if(closed) {
+            throw new IllegalStateException("ChemBulkSink is closed");
+        }
+        batch.add(new Row(name, health, flammability, reactivity, specials));
+        if(batch.size() == BATCH_SIZE) {
+            put(batch);
+            batch = new ArrayList<>(BATCH_SIZE);
+        }
+    }
+
+    /**
+     * Stores the remaining chemicals and stops the thread.
+     *
+     * @throws IOException if the target sink failed or the thread is interrupted while waiting
+     */
+    @Override
+    public void close() throws IOException {
+        if(closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if(!batch.isEmpty()) {
+                queue.put(batch);
+            }
+            batch = null;
+            queue.put(END);
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            worker.interrupt();
+            throw new IOException("interrupted while storing chemicals", e);
+        }
+        if(failure != null) {
+            throw new IOException("chemicals could not be stored", failure);
+        }
+    }
+
+
+
+    // --------------------
+    // PRIVATE UTILITY METHODS
+    // --------------------
+
+    private void put(List<Row> rows) {
+        try {
+            queue.put(rows);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while queueing chemicals", e);
+        }
+    }
+
+    /**
+     * Stores batches until the end marker arrives. After an unexpected failure the remaining batches are
+     * still taken off the queue, so the loader is never left waiting.
+     */
+    private void drain() {
+        try {
+            List<Row> rows;
+            while((rows = queue.take()) != END) {
+                if(failure != null) {
+                    continue;
+                }
+                for(Row row : rows) {
+                    try {
+                        target.add(row.name, row.health, row.flammability, row.reactivity, row.specials);
+                    } catch (IllegalArgumentException e) {
+                        System.out.println(e + " - chemical could not be properly loaded");
+                    } catch (RuntimeException e) {
+                        failure = e;
+                        break;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            // Interrupted by close(); nothing else is waiting on the queue
+        }
+    }
+
+}
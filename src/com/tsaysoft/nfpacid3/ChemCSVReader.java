@@ -0,0 +1,282 @@
+package com.tsaysoft.nfpacid3;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streams a CSV dataset into a {@link ChemSink}.
+ * <p>
+ *     Each record holds the name, health, flammability and reactivity ratings and (optionally) the special
+ *     symbols of a chemical, in that order (see the data sets in <tt>STORAGE/DEPRECIATED</tt>).
+ *     A first record whose second field is <tt>HEALTH</tt> is taken as a header and skipped.
+ *     Fields are parsed as described by RFC 4180: fields containing commas, quotes or line breaks are
+ *     enclosed in double quotes (e.g. <tt>"Ammonia, Anhydrous"</tt>) and quotes inside of them are doubled.
+ *     Records may end with CRLF, LF or CR.
+ * </p>
+ * <p>
+ *     The text is read one record at a time and decoded straight into the sink, so memory use does not
+ *     depend on the size of the file. Large files can also be split into chunks that are parsed in
+ *     parallel with {@link ChemCSVReader#readParallel(Path, ChemSink, int)}.
+ * </p>
+ *
+ * @author Clay Tsay
+ * @version 00.02.00
+ */
+class ChemCSVReader {
+
+    // --------------------
+    // VARIABLES AND DATA
+    // --------------------
+
+    private static final int EOF = -1;
+
+    private final Reader reader;
+    private final ChemSink sink;
+
+    /**
+     * Whether the first record may be a header (only true for the start of a file).
+     */
+    private final boolean headerAllowed;
+
+    private final char[] buffer = new char[8192];
+    private int position = 0;
+    private int limit = 0;
+
+    private int line;
+    private final List<String> fields = new ArrayList<>();
+    private final StringBuilder field = new StringBuilder();
+
+
+
+    // --------------------
+    // CONSTRUCTORS
+    // --------------------
+
+    /**
+     * Constructs a <tt>ChemCSVReader</tt> that reads from a <tt>Reader</tt> into a <tt>ChemSink</tt>.
+     *
+     * @param reader the <tt>Reader</tt> supplying the CSV text
+     * @param sink the <tt>ChemSink</tt> receiving the chemicals
+     */
+    ChemCSVReader(Reader reader, ChemSink sink) {
+        this(reader, sink, true, 1);
+    }
+
+    /**
+     * Constructs a <tt>ChemCSVReader</tt> for a chunk of a file.
+     *
+     * @param firstLine the line number of the chunk's first record, for error messages
+     */
+    private ChemCSVReader(Reader reader, ChemSink sink, boolean headerAllowed, int firstLine) {
+        this.reader = reader;
+        this.sink = sink;
+        this.headerAllowed = headerAllowed;
+        this.line = firstLine;
+    }
+
+
+
+    // --------------------
+    // PUBLIC UTILITY METHODS
+    // --------------------
+
+    /**
+     * Reads every record.
+     * <p>
+     *     Chemicals that cannot be loaded (e.g. because of a non-numeric rating or missing fields) are reported
+     *     to the console and skipped. Blank lines are ignored.
+     * </p>
+     *
+     * @return the number of chemicals added to the sink
+     * @throws IOException if the text cannot be read or a quoted field is never closed
+     */
+    int readAll() throws IOException {
+        int count = 0;
+        boolean first = true;
+
+        if(peek() == '\uFEFF') {
+            // Byte order mark
+            position++;
+        }
+
+        while(true) {
+            int recordLine = line;
+            if(!readRecord()) {
+                return count;
+            }
+            if(fields.size() == 1 && fields.get(0).isEmpty()) {
+                continue;
+            }
+            if(first && headerAllowed && fields.size() > 1 && fields.get(1).trim().equalsIgnoreCase("HEALTH")) {
+                first = false;
+                continue;
+            }
+            first = false;
+
+            try {
+                if(fields.size() < 4) {
+                    throw new IllegalArgumentException("expected at least 4 fields on line " + recordLine);
+                }
+                sink.add(fields.get(0),
+                        Integer.parseInt(fields.get(1).trim()),
+                        Integer.parseInt(fields.get(2).trim()),
+                        Integer.parseInt(fields.get(3).trim()),
+                        fields.size() > 4 ? ChemSignature.specialMask(fields.get(4)) : 0);
+                count++;
+            } catch (IllegalArgumentException e) {
+                // Includes NumberFormatException
+                System.out.println(e + " - chemical could not be properly loaded");
+            }
+        }
+    }
+
+    /**
+     * Reads a CSV file by splitting it into chunks that are parsed in parallel.
+     * <p>
+     *     The file is memory-mapped and split on record boundaries (line breaks outside of quoted fields)
+     *     into about one chunk per thread. The chunks are parsed at the same time, then their chemicals are
+     *     added to the sink on the calling thread, in the same order as in the file, so the sink does not
+     *     need to be thread-safe.
+     * </p>
+     *
+     * @param file the CSV file to be read
+     * @param sink the <tt>ChemSink</tt> receiving the chemicals
+     * @param threads the maximum number of chunks to be parsed at the same time
+     * @return the number of chemicals added to the sink
+     * @throws IOException if the file cannot be read or a quoted field is never closed
+     */
+    static int readParallel(Path file, ChemSink sink, int threads) throws IOException {
+        ByteBuffer text = ChemChunks.map(file);
+        int[][] chunks = split(text, Math.max(1, threads));
+        return ChemChunks.parse(text, chunks,
+                (reader, rows, chunk) -> new ChemCSVReader(reader, rows, chunk[0] == 0, chunk[2]).readAll(), sink);
+    }
+
+
+
+    // --------------------
+    // PRIVATE UTILITY METHODS
+    // --------------------
+
+    /**
+     * Reads the fields of the next record into <tt>fields</tt>.
+     *
+     * @return <tt>false</tt> if the end of the text was reached before the record started
+     */
+    private boolean readRecord() throws IOException {
+        fields.clear();
+        if(peek() == EOF) {
+            return false;
+        }
+
+        while(true) {
+            field.setLength(0);
+            int c = next();
+            if(c == '"') {
+                readQuoted();
+                c = next();
+                // Anything between the closing quote and the next separator is kept as it is
+                while(c != ',' && c != '\n' && c != '\r' && c != EOF) {
+                    field.append((char) c);
+                    c = next();
+                }
+            } else {
+                while(c != ',' && c != '\n' && c != '\r' && c != EOF) {
+                    field.append((char) c);
+                    c = next();
+                }
+            }
+            fields.add(field.toString());
+
+            if(c == ',') {
+                continue;
+            }
+            if(c == '\r' && peek() == '\n') {
+                position++;
+            }
+            if(c != EOF) {
+                line++;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Reads the rest of a quoted field (after the opening quote) into <tt>field</tt>.
+     */
+    private void readQuoted() throws IOException {
+        int startLine = line;
+        while(true) {
+            int c = next();
+            if(c == EOF) {
+                throw new IOException("unterminated quoted field starting on line " + startLine);
+            }
+            if(c == '"') {
+                if(peek() != '"') {
+                    return;
+                }
+                position++;
+            } else if(c == '\n' || (c == '\r' && peek() != '\n')) {
+                line++;
+            }
+            field.append((char) c);
+        }
+    }
+
+    private int next() throws IOException {
+        int c = peek();
+        if(c != EOF) {
+            position++;
+        }
+        return c;
+    }
+
+    private int peek() throws IOException {
+        if(position == limit) {
+            limit = reader.read(buffer, 0, buffer.length);
+            position = 0;
+            if(limit <= 0) {
+                limit = 0;
+                return EOF;
+            }
+        }
+        return buffer[position];
+    }
+
+    /**
+     * Splits CSV text into about <tt>count</tt> chunks on record boundaries.
+     * <p>
+     *     Only line feeds outside of quoted fields are boundaries. Quotes are counted byte by byte, which is
+     *     safe for UTF-8 because neither quotes nor line feeds occur inside of multi-byte characters.
+     * </p>
+     *
+     * @return the chunks as <tt>{start, end, first line}</tt>
+     */
+    private static int[][] split(ByteBuffer text, int count) {
+        List<int[]> chunks = new ArrayList<>(count);
+        int start = 0;
+        int startLine = 1;
+        int line = 1;
+        boolean quoted = false;
+        for(int i = 0; i < text.limit(); i++) {
+            if(text.get(i) == '"') {
+                quoted = !quoted;
+            } else if(text.get(i) == '\n') {
+                line++;
+                long target = (long) text.limit() * (chunks.size() + 1) / count;
+                if(!quoted && i + 1 >= target && chunks.size() < count - 1) {
+                    chunks.add(new int[] {start, i + 1, startLine});
+                    start = i + 1;
+                    startLine = line;
+                }
+            }
+        }
+        chunks.add(new int[] {start, text.limit(), startLine});
+        return chunks.toArray(new int[chunks.size()][]);
+    }
+
+}
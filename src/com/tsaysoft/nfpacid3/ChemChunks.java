@@ -0,0 +1,189 @@
+package com.tsaysoft.nfpacid3;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Parses chunks of a dataset file in parallel.
+ * <p>
+ *     Used by the loaders of line-based formats ({@link ChemCSVReader}, {@link ChemJSONReader}), which split
+ *     the file on record boundaries themselves. The file is memory-mapped rather than copied onto the heap.
+ *     Each chunk is parsed into a buffer on the common <tt>ForkJoinPool</tt> (like the parallel queries of
+ *     {@link ChemDBManager}), then the buffers are added to the real sink on the calling thread in file order.
+ * </p>
+ *
+ * @author Clay Tsay
+ * @version 00.02.00
+ */
+final class ChemChunks {
+
+    /**
+     * Parses one chunk of a file.
+     */
+    interface Parser {
+        /**
+         * @param reader the text of the chunk
+         * @param sink the <tt>ChemSink</tt> receiving the chunk's chemicals
+         * @param chunk the chunk as <tt>{start, end, first line}</tt>
+         * @return the number of chemicals added to the sink
+         * @throws IOException if the chunk cannot be read or is malformed
+         */
+        int parse(Reader reader, ChemSink sink, int[] chunk) throws IOException;
+    }
+
+    // --------------------
+    // CONSTRUCTORS
+    // --------------------
+
+    private ChemChunks() {
+        // Utility class - not to be instantiated
+    }
+
+
+
+    // --------------------
+    // PUBLIC UTILITY METHODS
+    // --------------------
+
+    /**
+     * Memory-maps a whole file for reading.
+     *
+     * @param file the file to be mapped
+     * @return the file's bytes
+     * @throws IOException if the file cannot be mapped (e.g. it is larger than 2 GB)
+     */
+    static ByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if(channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("file too large to be mapped: " + file);
+            }
+            // The mapping stays valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * Parses chunks of UTF-8 text in parallel and adds their chemicals to a sink in order.
+     *
+     * @param text the whole file (see {@link ChemChunks#map(Path)})
+     * @param chunks the chunks as <tt>{start, end, first line}</tt>, in file order
+     * @param parser parses a single chunk
+     * @param sink the <tt>ChemSink</tt> receiving the chemicals; only used from the calling thread
+     * @return the number of chemicals the sink accepted
+     * @throws IOException if any chunk cannot be parsed
+     */
+    static int parse(ByteBuffer text, int[][] chunks, Parser parser, ChemSink sink) throws IOException {
+        List<CompletableFuture<RowBuffer>> futures = new ArrayList<>(chunks.length);
+        for(int[] chunk : chunks) {
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                RowBuffer rows = new RowBuffer();
+                ByteBuffer bytes = text.duplicate();
+                bytes.limit(chunk[1]).position(chunk[0]);
+                Reader reader = new InputStreamReader(new BufferInputStream(bytes), StandardCharsets.UTF_8);
+                try {
+                    parser.parse(reader, rows, chunk);
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+                return rows;
+            }));
+        }
+
+        int count = 0;
+        for(CompletableFuture<RowBuffer> future : futures) {
+            RowBuffer rows;
+            try {
+                rows = future.join();
+            } catch (CompletionException e) {
+                if(e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw e;
+            }
+            count += rows.replay(sink);
+        }
+        return count;
+    }
+
+
+
+    // --------------------
+    // PRIVATE UTILITY METHODS
+    // --------------------
+
+    /**
+     * Reads the remaining bytes of a <tt>ByteBuffer</tt>.
+     */
+    private static final class BufferInputStream extends InputStream {
+        private final ByteBuffer bytes;
+
+        BufferInputStream(ByteBuffer bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public int read() {
+            return bytes.hasRemaining() ? bytes.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            if(length == 0) {
+                return 0;
+            }
+            if(!bytes.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, bytes.remaining());
+            bytes.get(buffer, offset, count);
+            return count;
+        }
+    }
+
+    /**
+     * Holds the chemicals parsed from a chunk until they can be added to the real sink in order.
+     */
+    private static final class RowBuffer implements ChemSink {
+        private final List<String> names = new ArrayList<>();
+        private int[] values = new int[64];
+
+        @Override
+        public void add(String name, int health, int flammability, int reactivity, int specials) {
+            int offset = names.size() * 4;
+            if(offset + 4 > values.length) {
+                values = Arrays.copyOf(values, values.length * 2);
+            }
+            names.add(name);
+            values[offset] = health;
+            values[offset + 1] = flammability;
+            values[offset + 2] = reactivity;
+            values[offset + 3] = specials;
+        }
+
+        int replay(ChemSink sink) {
+            int count = 0;
+            for(int i = 0; i < names.size(); i++) {
+                try {
+                    sink.add(names.get(i), values[i * 4], values[i * 4 + 1], values[i * 4 + 2], values[i * 4 + 3]);
+                    count++;
+                } catch (IllegalArgumentException e) {
+                    System.out.println(e + " - chemical could not be properly loaded");
+                }
+            }
+            return count;
+        }
+    }
+
+}
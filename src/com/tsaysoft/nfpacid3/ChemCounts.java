@@ -0,0 +1,148 @@
+package com.tsaysoft.nfpacid3;
+
+import java.util.EnumMap;
+
+/**
+ * Counts of chemicals by their NFPA 704 information.
+ * <p>
+ *     Holds one count per {@link ChemSignature}, from which every other aggregate (totals, counts per rating
+ *     level or special symbol, health &times; flammability &times; reactivity histograms) is derived
+ *     without looking at a single <tt>Chemical</tt>.
+ *     Immutable once returned by a query.
+ * </p>
+ *
+ * @see com.tsaysoft.nfpacid3.ChemDBInterface#countNFPA(ChemQuery)
+ *
+ * @author Clay Tsay
+ * @version 00.02.00
+ */
+public final class ChemCounts {
+
+    // --------------------
+    // VARIABLES AND DATA
+    // --------------------
+
+    private final int[] counts = new int[ChemSignature.COUNT];
+
+
+
+    // --------------------
+    // CONSTRUCTORS
+    // --------------------
+
+    /**
+     * Constructs a <tt>ChemCounts</tt> with every count at zero.
+     */
+    ChemCounts() {
+        super();
+    }
+
+
+
+    // --------------------
+    // GETTERS AND SETTERS
+    // --------------------
+
+    /**
+     * Gets the total number of chemicals.
+     * @return the total as an <tt>int</tt>
+     *
+     * @since 00.02.00
+     */
+    public int getTotal() {
+        int total = 0;
+        for(int count : counts) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * Gets the number of chemicals with a signature.
+     * @param signature a valid signature
+     * @return the count as an <tt>int</tt>
+     *
+     * @since 00.02.00
+     */
+    public int getCount(int signature) {
+        return counts[signature];
+    }
+
+    /**
+     * Gets the number of chemicals at each level of a hazard rating.
+     * @param prop the <tt>ChemProp</tt> rating
+     * @return a new <tt>int[]</tt> indexed by rating (0 - 4)
+     *
+     * @since 00.02.00
+     */
+    public int[] getRatingCounts(ChemProp prop) {
+        int[] ratingCounts = new int[ChemSignature.RATING_LEVELS];
+        for(int signature = 0; signature < ChemSignature.COUNT; signature++) {
+            ratingCounts[ChemSignature.getProp(signature, prop)] += counts[signature];
+        }
+        return ratingCounts;
+    }
+
+    /**
+     * Gets the number of chemicals with each special symbol.
+     * <p>
+     *     A chemical with several special symbols is counted once for each of them.
+     * </p>
+     * @return a new <tt>EnumMap</tt> with all of the <tt>ChemSpecial</tt>s
+     *
+     * @since 00.02.00
+     */
+    public EnumMap<ChemSpecial, Integer> getSpecialCounts() {
+        EnumMap<ChemSpecial, Integer> specialCounts = new EnumMap<>(ChemSpecial.class);
+        for(ChemSpecial symbol : ChemSpecial.values()) {
+            int count = 0;
+            for(int signature = 0; signature < ChemSignature.COUNT; signature++) {
+                if((ChemSignature.getSpecials(signature) & (1 << symbol.ordinal())) != 0) {
+                    count += counts[signature];
+                }
+            }
+            specialCounts.put(symbol, count);
+        }
+        return specialCounts;
+    }
+
+    /**
+     * Gets the number of chemicals with each combination of hazard ratings, ignoring special symbols.
+     * @return a new <tt>int[][][]</tt> indexed by health, flammability and reactivity rating
+     *
+     * @since 00.02.00
+     */
+    public int[][][] getHistogram() {
+        int levels = ChemSignature.RATING_LEVELS;
+        int[][][] histogram = new int[levels][levels][levels];
+        for(int signature = 0; signature < ChemSignature.COUNT; signature++) {
+            histogram[ChemSignature.getProp(signature, ChemProp.HEALTH)]
+                    [ChemSignature.getProp(signature, ChemProp.FLAMMABILITY)]
+                    [ChemSignature.getProp(signature, ChemProp.REACTIVITY)] += counts[signature];
+        }
+        return histogram;
+    }
+
+
+
+    // --------------------
+    // PUBLIC UTILITY METHODS
+    // --------------------
+
+    /**
+     * Adds to the count of a signature while the <tt>ChemCounts</tt> is being built.
+     */
+    void add(int signature, int count) {
+        counts[signature] += count;
+    }
+
+    /**
+     * Adds all of the counts of another <tt>ChemCounts</tt> while this one is being built.
+     */
+    void addAll(ChemCounts other) {
+        for(int signature = 0; signature < ChemSignature.COUNT; signature++) {
+            counts[signature] += other.counts[signature];
+        }
+    }
+
+}
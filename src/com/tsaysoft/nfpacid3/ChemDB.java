@@ -1,19 +1,34 @@
 package com.tsaysoft.nfpacid3;
 
-import org.json.JSONArray;
 import org.json.JSONObject;
 
-import java.io.BufferedReader;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.Writer;
 
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import static com.tsaysoft.nfpacid3.ChemProp.*;
 import static com.tsaysoft.nfpacid3.ChemSpecial.*;
@@ -22,10 +37,20 @@ import static com.tsaysoft.nfpacid3.ChemSpecial.*;
  * A database to store {@link Chemical}s.
  * <p>
  *     The fundamental unit of the database side of the program.
- *     Takes in a file name (currently, can only handle JSON),  opens that file, and uses the file's information
+ *     Takes in a file name (JSON, JSON Lines, CSV or XML; see {@link ChemLoaders}),  opens that file, and uses the file's information
  *     to create a list of <tt>Chemicals</tt> with names, properties, and identifiers.
  *     Supports queries based on NFPA 704 hazard ratings (and special symbols).
  * </p>
+ * <p>
+ *     Chemicals are indexed by their {@link ChemSignature} as they are loaded, so exact-match queries
+ *     are a single bucket lookup instead of a scan over the whole database.
+ *     Only chemicals with ratings inside of the NFPA 704 scale (0 - 4) are loaded.
+ *     How the chemicals are kept in memory is determined by a {@link ChemStorage} mode.
+ * </p>
+ * <p>
+ *     A <tt>ChemDB</tt> can be queried and changed (see {@link ChemDB#insertChemical(Chemical)}) from several
+ *     threads at once. Queries never take a lock and each one sees a single, consistent version of the data.
+ * </p>
  * @see com.tsaysoft.nfpacid3.ChemDBInterface
  * @see com.tsaysoft.nfpacid3.ChemDBManager
  *
@@ -34,19 +59,74 @@ import static com.tsaysoft.nfpacid3.ChemSpecial.*;
  */
 public class ChemDB implements ChemDBInterface{
 
+    /**
+     * The chemicals of a <tt>ChemDB</tt> together with their indexes.
+     * <p>
+     *     Only filled in while the <tt>ChemDB</tt> is being constructed or before a change is swapped in;
+     *     afterwards it is never changed, so a query that reads the <tt>state</tt> field once sees a consistent
+     *     snapshot even if the <tt>ChemDB</tt> is changed or reloaded in the meantime. Changes fork the
+     *     current <tt>State</tt> instead of copying it, sharing its rows and buckets (see {@link ChemStore#fork()}).
+     *     Rows are never changed once shared: removed rows stay in the store and are only taken out of the
+     *     indexes, until so many have piled up that the <tt>State</tt> is compacted.
+     * </p>
+     */
+    private static final class State {
+        final ChemStore store;
+        final SignatureIndex index;
+        final BitmapIndex bitmaps;
+
+        State(ChemStore store, SignatureIndex index, BitmapIndex bitmaps) {
+            this.store = store;
+            this.index = index;
+            this.bitmaps = bitmaps;
+        }
+
+        State fork() {
+            return new State(store.fork(), index.fork(), bitmaps.fork());
+        }
+
+        void remove(int row) {
+            index.remove(row, store.getSignature(row));
+            bitmaps.remove(row);
+        }
+    }
+
     // --------------------
     // VARIABLES AND DATA
     // --------------------
 
     /**
-     * Stores the chemicals contained in the <tt>ChemDB</tt>'s database.
+     * The chemicals and their indexes. Replaced as a whole when the <tt>ChemDB</tt> is reloaded,
+     * so that queries read it once and see a consistent snapshot.
+     */
+    private volatile State state;
+
+    /**
+     * The file the <tt>ChemDB</tt> was loaded from, or <tt>null</tt> if it was built in memory.
+     */
+    private String fileName = null;
+
+    /**
+     * How the chemicals are kept in memory, or <tt>null</tt> for a memory-mapped snapshot.
+     */
+    private ChemStorage storage = null;
+
+    /**
+     * Called after every change to the chemicals (insertions, updates, removals and reloads).
+     */
+    private final List<Runnable> changeListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Whether the chemicals were changed in memory since they were loaded, in a way their file does not hold.
      */
-    private Collection<Chemical> chemList = new ArrayList<>();
+    private volatile boolean unsaved = false;
 
     /**
-     * Temporary storage utilized in the processing of the database files.
+     * The rows of the current <tt>State</tt> holding each normalized name, so that changes need not scan every
+     * row. Only used while holding the <tt>ChemDB</tt>'s lock; built on the first change after the
+     * <tt>State</tt> was replaced as a whole (<tt>null</tt> until then).
      */
-    private Collection<String[]> chemArray = new ArrayList<>();
+    private Map<String, List<Integer>> rowsByName = null;
 
 
 
@@ -62,11 +142,171 @@ public class ChemDB implements ChemDBInterface{
      * </p>
      * @param fileName the name of the file to be read
      *
+     * @see ChemDB#ChemDB(String, ChemStorage)
      * @since 00.01.00
      */
     public ChemDB(String fileName) {
-        //readCSV(fileName);
-        readJSON(fileName);
+        this(fileName, ChemStorage.OBJECT);
+    }
+
+    /**
+     * Constructs a <tt>ChemDB</tt> that takes information from the specified file
+     * and keeps it in memory as specified by the <tt>ChemStorage</tt> mode.
+     *
+     * @param fileName the name of the file to be read
+     * @param storage how the chemicals should be kept in memory
+     *
+     * @see ChemDB#ChemDB(String)
+     * @since 00.02.00
+     */
+    public ChemDB(String fileName, ChemStorage storage) {
+        this(storage);
+        this.fileName = fileName;
+        try {
+            read(fileName);
+        } catch (IOException e) {
+            System.out.println(e + " - database could not be properly loaded");
+        }
+    }
+
+    /**
+     * Constructs a <tt>ChemDB</tt> that holds copies of the given <tt>Chemical</tt>s.
+     * <p>
+     *     The names, NFPA 704 information and generated IDs of the <tt>Chemical</tt>s are copied, so
+     *     later changes to them do not affect the database.
+     *     <tt>Chemical</tt>s with ratings outside of the NFPA 704 scale are reported to the console and left out.
+     * </p>
+     * @param chems the <tt>Chemical</tt>s to be stored
+     * @param storage how the chemicals should be kept in memory
+     *
+     * @see ChemDB#ChemDB(String, ChemStorage)
+     * @since 00.02.00
+     */
+    public ChemDB(Collection<Chemical> chems, ChemStorage storage) {
+        this(storage);
+        for(Chemical chem : chems) {
+            try {
+                addChemical(chem);
+            } catch (IllegalArgumentException e) {
+                System.out.println(e + " - chemical could not be properly loaded");
+            }
+        }
+    }
+
+    /**
+     * Constructs an empty <tt>ChemDB</tt> with the given <tt>ChemStorage</tt> mode.
+     */
+    private ChemDB(ChemStorage storage) {
+        this.storage = storage;
+        this.state = emptyState(storage);
+    }
+
+    /**
+     * Constructs a <tt>ChemDB</tt> around an already populated store and its indexes.
+     */
+    private ChemDB(ChemStore store, SignatureIndex index, BitmapIndex bitmaps) {
+        this.state = new State(store, index, bitmaps);
+    }
+
+    /**
+     * Opens a <tt>ChemDB</tt> from a binary snapshot written by {@link ChemDB#writeSnapshot(String)}.
+     * <p>
+     *     The file is memory-mapped rather than parsed, so opening even a large snapshot is nearly instant.
+     *     Queries return new <tt>Chemical</tt>s (with any IDs that were stored in the snapshot) and
+     *     the resulting <tt>ChemDB</tt> is read-only.
+     * </p>
+     * @param fileName the name of the snapshot file
+     * @return the <tt>ChemDB</tt> backed by the snapshot
+     * @throws IOException if the file cannot be mapped or is not a valid snapshot
+     *
+     * @see com.tsaysoft.nfpacid3.ChemSnapshot
+     * @since 00.02.00
+     */
+    public static ChemDB openSnapshot(String fileName) throws IOException {
+        ChemSnapshot snapshot = ChemSnapshot.open(fileName);
+        ChemDB chemDB = new ChemDB(snapshot.store, snapshot.index, snapshot.bitmaps);
+        chemDB.fileName = fileName;
+        return chemDB;
+    }
+
+    /**
+     * Loads a <tt>ChemDB</tt> from the specified file, reporting failures to the caller.
+     * <p>
+     *     Unlike the constructors, which print a message and leave the <tt>ChemDB</tt> (partially) empty,
+     *     throws if the file cannot be read or is malformed.
+     *     Individual chemicals that cannot be loaded are still reported to the console and skipped.
+     * </p>
+     * @param fileName the name of the file to be read
+     * @param storage how the chemicals should be kept in memory
+     * @return the loaded <tt>ChemDB</tt>
+     * @throws IOException if the file cannot be read or is malformed
+     *
+     * @see ChemDB#ChemDB(String, ChemStorage)
+     * @since 00.02.00
+     */
+    public static ChemDB load(String fileName, ChemStorage storage) throws IOException {
+        ChemDB chemDB = new ChemDB(storage);
+        chemDB.fileName = fileName;
+        chemDB.read(fileName);
+        return chemDB;
+    }
+
+    /**
+     * Loads a <tt>ChemDB</tt> from the specified file, parsing chunks of the file in parallel.
+     * <p>
+     *     Meant for large files. Line-based formats (CSV and JSON Lines) are memory-mapped, split on record
+     *     boundaries into up to <tt>threads</tt> chunks and parsed on the common <tt>ForkJoinPool</tt>; other
+     *     formats are read on the calling thread. Either way, the chemicals are stored on the calling thread,
+     *     in the same order as in the file.
+     *     Otherwise works like {@link ChemDB#load(String, ChemStorage)}.
+     * </p>
+     * @param fileName the name of the file to be read
+     * @param storage how the chemicals should be kept in memory
+     * @param threads the maximum number of chunks to be parsed at the same time
+     * @return the loaded <tt>ChemDB</tt>
+     * @throws IOException if the file cannot be read, is in an unknown format or is malformed
+     *
+     * @see ChemLoader#load(Path, ChemSink, int)
+     * @since 00.02.00
+     */
+    public static ChemDB load(String fileName, ChemStorage storage, int threads) throws IOException {
+        ChemDB chemDB = new ChemDB(storage);
+        chemDB.fileName = fileName;
+        chemDB.read(fileName, threads);
+        return chemDB;
+    }
+
+
+
+    // --------------------
+    // GETTERS AND SETTERS
+    // --------------------
+
+    /**
+     * Gets the name of the file the <tt>ChemDB</tt> was loaded from.
+     * @return the file name, or <tt>null</tt> if the <tt>ChemDB</tt> was built from <tt>Chemical</tt>s in memory
+     *
+     * @see ChemDB#reload()
+     * @since 00.02.00
+     */
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * Checks whether the <tt>ChemDB</tt> was changed in memory in a way its file does not hold.
+     * <p>
+     *     Insertions, updates, removals and IDs (e.g. from {@link ChemDB#enrichIDs(ChemID, ChemQuery, ChemIDEnricher)})
+     *     count as unsaved changes; chemicals appended with {@link ChemDB#appendChemicals(Collection)} do not,
+     *     since they are written to the file. Such a <tt>ChemDB</tt> is not reloaded unless its changes are
+     *     explicitly discarded (see {@link ChemDB#reload(boolean)}).
+     * </p>
+     * @return <tt>true</tt> if reloading would lose changes
+     *
+     * @since 00.02.00
+     */
+    public boolean hasUnsavedChanges() {
+        return unsaved;
     }
 
 
@@ -89,11 +329,48 @@ public class ChemDB implements ChemDBInterface{
      */
     @Override
     public Collection<Chemical> queryChemNFPA(Chemical query, boolean special) {
-        ArrayList<Chemical> results = new ArrayList<>();
-        for(Chemical chem : chemList) {
-            if(chem.equalsNFPA(query, special)) {
-                results.add(chem);
-            }
+        // Every stored chemical has a signature, so a query without one cannot match anything
+        int signature = ChemSignature.of(query.getProps(), special ? query.getSpecials() : null);
+        if(signature == ChemSignature.NONE) {
+            return new ArrayList<>();
+        }
+
+        State state = this.state;
+        int[] rows = state.index.rows(signature, special);
+        int size = state.index.size(signature, special);
+        ArrayList<Chemical> results = new ArrayList<>(size);
+        for(int i = 0; i < size; i++) {
+            results.add(state.store.get(rows[i]));
+        }
+        return results;
+    }
+
+    /**
+     * Used to query for chemicals that match each other in their NFPA 704 ratings, as immutable
+     * <tt>CompactChemical</tt>s.
+     * <p>
+     *     Works the same as {@link ChemDB#queryChemNFPA(Chemical, boolean)}.
+     *     With {@link ChemStorage#COMPACT} storage the stored objects are returned without copying.
+     * </p>
+     * @param query the chemical with properties to be queried
+     * @param special whether the special symbols should be taken into account in comparisons
+     * @return a <tt>List</tt> of <tt>CompactChemical</tt>s matching the properties and/or specials
+     *
+     * @see com.tsaysoft.nfpacid3.CompactChemical
+     * @since 00.02.00
+     */
+    public List<CompactChemical> queryCompactNFPA(Chemical query, boolean special) {
+        int signature = ChemSignature.of(query.getProps(), special ? query.getSpecials() : null);
+        if(signature == ChemSignature.NONE) {
+            return new ArrayList<>();
+        }
+
+        State state = this.state;
+        int[] rows = state.index.rows(signature, special);
+        int size = state.index.size(signature, special);
+        List<CompactChemical> results = new ArrayList<>(size);
+        for(int i = 0; i < size; i++) {
+            results.add(state.store.getCompact(rows[i]));
         }
         return results;
     }
@@ -135,159 +412,927 @@ public class ChemDB implements ChemDBInterface{
 
 
 
+    /**
+     * Used to count the <tt>Chemical</tt>s whose NFPA 704 information falls inside of the given ranges.
+     * <p>
+     *     Reads the size of each matching signature bucket, so it takes the same (constant) time
+     *     however many chemicals are stored.
+     * </p>
+     * @param query the <tt>ChemQuery</tt> describing the ranges and special symbols to be matched
+     * @return the <tt>ChemCounts</tt> of the matching chemicals
+     *
+     * @see ChemDBInterface#countNFPA(ChemQuery)
+     * @since 00.02.00
+     */
+    @Override
+    public ChemCounts countNFPA(ChemQuery query) {
+        SignatureIndex index = state.index;
+        ChemCounts counts = new ChemCounts();
+        for(int signature = 0; signature < ChemSignature.COUNT; signature++) {
+            if(query.matches(signature)) {
+                counts.add(signature, index.size(signature, true));
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Used to find the <tt>Chemical</tt>s whose NFPA 704 information is closest to a query's.
+     * <p>
+     *     Walks the signature buckets outward from the query in order of distance and stops once
+     *     <tt>k</tt> chemicals have been found, so only the (at most 1000) distinct signatures are ever sorted,
+     *     never the chemicals themselves.
+     * </p>
+     * @param query the chemical with properties and special symbols to be queried
+     * @param k the maximum number of <tt>Chemical</tt>s to be returned
+     * @param distance the <tt>ChemDistance</tt> used to weigh the differences
+     * @return a <tt>List</tt> of at most <tt>k</tt> <tt>Chemical</tt>s, nearest first
+     *
+     * @see ChemDBInterface#queryNearestNFPA(Chemical, int, ChemDistance)
+     * @since 00.02.00
+     */
+    @Override
+    public List<Chemical> queryNearestNFPA(Chemical query, int k, ChemDistance distance) {
+        return queryNearestNFPA(Collections.singletonList(this), query, k, distance);
+    }
+
+    /**
+     * Used to answer many NFPA 704 queries at once.
+     * <p>
+     *     Each distinct signature among the queries is a single bucket lookup.
+     * </p>
+     * @param queries the chemicals with properties to be queried
+     * @param special whether the special symbols should be taken into account in comparisons
+     * @return a <tt>Map</tt> from each query to the <tt>Chemical</tt>s matching it, in the order of the queries
+     *
+     * @see ChemDBInterface#queryBatchNFPA(Collection, boolean)
+     * @since 00.02.00
+     */
+    @Override
+    public Map<Chemical, Collection<Chemical>> queryBatchNFPA(Collection<Chemical> queries, boolean special) {
+        return queryBatchNFPA(Collections.singletonList(this), queries, special);
+    }
+
+    /**
+     * Used to pass each <tt>Chemical</tt> matching the given NFPA 704 ratings to a consumer.
+     * <p>
+     *     A single bucket lookup, like {@link ChemDB#queryChemNFPA(Chemical, boolean)}, but without
+     *     building a query <tt>Chemical</tt> or a result <tt>Collection</tt>.
+     *     With {@link ChemStorage#OBJECT} storage no objects are allocated; other storage modes build
+     *     a <tt>Chemical</tt> for each match.
+     * </p>
+     * @param health the health rating to be matched
+     * @param flammability the flammability rating to be matched
+     * @param reactivity the reactivity rating to be matched
+     * @param specials the special symbols to be matched, as a bit mask
+     * @param special whether the special symbols should be taken into account in comparisons
+     * @param action the <tt>Consumer</tt> receiving each matching <tt>Chemical</tt>
+     * @return the number of matching <tt>Chemical</tt>s
+     *
+     * @since 00.02.00
+     */
+    @Override
+    public int forEachNFPA(int health, int flammability, int reactivity, int specials, boolean special,
+                           Consumer<? super Chemical> action) {
+        int signature = ChemSignature.pack(health, flammability, reactivity, special ? specials : 0);
+        if(signature == ChemSignature.NONE) {
+            return 0;
+        }
+
+        State state = this.state;
+        int[] rows = state.index.rows(signature, special);
+        int size = state.index.size(signature, special);
+        for(int i = 0; i < size; i++) {
+            action.accept(state.store.get(rows[i]));
+        }
+        return size;
+    }
+
+    /**
+     * Used to add each <tt>Chemical</tt> matching the given NFPA 704 ratings to a caller-supplied buffer.
+     * <p>
+     *     See {@link ChemDB#forEachNFPA(int, int, int, int, boolean, Consumer)}.
+     * </p>
+     * @param health the health rating to be matched
+     * @param flammability the flammability rating to be matched
+     * @param reactivity the reactivity rating to be matched
+     * @param specials the special symbols to be matched, as a bit mask
+     * @param special whether the special symbols should be taken into account in comparisons
+     * @param results the <tt>Collection</tt> the matching <tt>Chemical</tt>s are added to
+     * @return the number of matching <tt>Chemical</tt>s
+     *
+     * @since 00.02.00
+     */
+    @Override
+    public int queryNFPA(int health, int flammability, int reactivity, int specials, boolean special,
+                         Collection<? super Chemical> results) {
+        int signature = ChemSignature.pack(health, flammability, reactivity, special ? specials : 0);
+        if(signature == ChemSignature.NONE) {
+            return 0;
+        }
+
+        // Written out rather than delegating with results::add, which would allocate a lambda per call
+        State state = this.state;
+        int[] rows = state.index.rows(signature, special);
+        int size = state.index.size(signature, special);
+        for(int i = 0; i < size; i++) {
+            results.add(state.store.get(rows[i]));
+        }
+        return size;
+    }
+
+    /**
+     * Used to query for <tt>Chemical</tt>s whose NFPA 704 information falls inside of the given ranges.
+     * <p>
+     *     Answered from bitmap indexes rather than by comparing every <tt>Chemical</tt>.
+     * </p>
+     * @param query the <tt>ChemQuery</tt> describing the ranges and special symbols to be matched
+     * @return a <tt>Collection</tt> of <tt>Chemical</tt>s matching the query
+     *
+     * @see com.tsaysoft.nfpacid3.ChemQuery
+     * @since 00.02.00
+     */
+    @Override
+    public Collection<Chemical> queryRangeNFPA(ChemQuery query) {
+        State state = this.state;
+        BitSet rows = state.bitmaps.evaluate(query, state.store.size());
+        ArrayList<Chemical> results = new ArrayList<>(rows.cardinality());
+        for(int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+            results.add(state.store.get(row));
+        }
+        return results;
+    }
+
+
+
+    /**
+     * Used to stream the <tt>Chemical</tt>s that match each other in their NFPA 704 ratings.
+     * <p>
+     *     Streams the matching signature bucket; <tt>Chemical</tt>s are only fetched from the store
+     *     as the stream consumes them.
+     * </p>
+     * @param query the chemical with properties to be queried
+     * @param special whether the special symbols should be taken into account in comparisons
+     * @return a <tt>Stream</tt> of <tt>Chemical</tt>s matching the properties and/or specials
+     *
+     * @since 00.02.00
+     */
+    @Override
+    public Stream<Chemical> streamChemNFPA(Chemical query, boolean special) {
+        int signature = ChemSignature.of(query.getProps(), special ? query.getSpecials() : null);
+        if(signature == ChemSignature.NONE) {
+            return Stream.empty();
+        }
+        return StreamSupport.stream(spliterator(signature, special), false);
+    }
+
+    /**
+     * Used to stream the <tt>Chemical</tt>s whose NFPA 704 information falls inside of the given ranges.
+     * <p>
+     *     The bitmap indexes are evaluated up front (which is cheap); <tt>Chemical</tt>s are only fetched
+     *     from the store as the stream consumes them.
+     * </p>
+     * @param query the <tt>ChemQuery</tt> describing the ranges and special symbols to be matched
+     * @return a <tt>Stream</tt> of <tt>Chemical</tt>s matching the query
+     *
+     * @since 00.02.00
+     */
+    @Override
+    public Stream<Chemical> streamRangeNFPA(ChemQuery query) {
+        return StreamSupport.stream(spliterator(query), false);
+    }
+
+    /**
+     * Compiles the <tt>ChemDB</tt> into a versioned binary snapshot file.
+     * <p>
+     *     The snapshot holds the ratings, special symbols, names, generated IDs and indexes of the
+     *     database and can be opened again with {@link ChemDB#openSnapshot(String)}. The snapshot is written to
+     *     a temporary file that is then renamed over the given one, so opened snapshots of the old file are
+     *     not disturbed.
+     * </p>
+     * @param fileName the name of the snapshot file to be (over)written
+     * @throws IOException if the file cannot be written
+     *
+     * @see com.tsaysoft.nfpacid3.ChemSnapshot
+     * @since 00.02.00
+     */
+    public void writeSnapshot(String fileName) throws IOException {
+        State state = this.state;
+        if(state.bitmaps.removedCount() > 0) {
+            state = compact(state);
+        }
+        ChemSnapshot.write(fileName, state.store, state.index, state.bitmaps);
+    }
+
+    /**
+     * Writes the chemicals of the <tt>ChemDB</tt> to a JSON Lines file.
+     * <p>
+     *     Each line holds one chemical as a JSON object with the same fields as the JSON data sets.
+     *     Unlike a JSON array, the file can be split for parallel loading
+     *     (see {@link ChemDB#load(String, ChemStorage, int)}) and extended with
+     *     {@link ChemDB#appendChemicals(Collection)} without being rewritten. IDs are not written.
+     * </p>
+     * @param fileName the name of the JSON Lines file to be (over)written
+     * @throws IOException if the file cannot be written
+     *
+     * @since 00.02.00
+     */
+    public void writeJSONLines(String fileName) throws IOException {
+        State state = this.state;
+        try (Writer out = Files.newBufferedWriter(Paths.get(fileName), StandardCharsets.UTF_8)) {
+            for(int row = 0; row < state.store.size(); row++) {
+                if(!state.bitmaps.isRemoved(row)) {
+                    out.write(toJSONLine(state.store.getName(row), state.store.getSignature(row)));
+                }
+            }
+        }
+    }
+
+    /**
+     * Inserts copies of several <tt>Chemical</tt>s into the <tt>ChemDB</tt> and appends them to its file.
+     * <p>
+     *     The <tt>ChemDB</tt> must have been loaded from a JSON Lines file (see
+     *     {@link ChemDB#writeJSONLines(String)}). The chemicals are written as new lines at the end of the
+     *     file, so the cost does not depend on the size of the file. The file is written first: if that fails,
+     *     the <tt>ChemDB</tt> is left unchanged. Otherwise works like {@link ChemDB#insertChemicals(Collection)}.
+     * </p>
+     * <p>
+     *     If the <tt>ChemDB</tt> is being watched for changes (see {@link ChemDBWatcher}), appending also
+     *     causes it to be reloaded from the file, which leaves it with the same chemicals (unless it has
+     *     unsaved changes, in which case it is not reloaded).
+     * </p>
+     * @param chems the <tt>Chemical</tt>s to be appended
+     * @return the number of <tt>Chemical</tt>s appended
+     * @throws IOException if the file cannot be written
+     * @throws UnsupportedOperationException if the <tt>ChemDB</tt> was not loaded from a JSON Lines file
+     *
+     * @since 00.02.00
+     */
+    public int appendChemicals(Collection<Chemical> chems) throws IOException {
+        if(fileName == null || storage == null) {
+            throw new UnsupportedOperationException("ChemDB was not loaded from a JSON Lines file");
+        }
+        Path path = Paths.get(fileName);
+        int appended = 0;
+        synchronized(this) {
+            if(ChemLoaders.find(path) != ChemFormat.JSON_LINES) {
+                throw new UnsupportedOperationException("ChemDB was not loaded from a JSON Lines file");
+            }
+            // Discarded if the file cannot be written
+            State next = state.fork();
+            StringBuilder lines = new StringBuilder();
+            for(Chemical chem : chems) {
+                try {
+                    addChemical(next, chem);
+                    lines.append(toJSONLine(chem.getName(), ChemSignature.of(chem)));
+                    appended++;
+                } catch (IllegalArgumentException e) {
+                    System.out.println(e + " - chemical could not be properly loaded");
+                }
+            }
+            appendLines(path, lines);
+            indexNames(next, state.store.size());
+            state = next;
+        }
+        fireChanged();
+        return appended;
+    }
+
+    /**
+     * Requests an ID type for the chemicals that match a query and do not have one yet.
+     * <p>
+     *     See {@link ChemIDEnricher#enrich(List, ChemID, ChemQuery)}. The IDs are added in batches as they
+     *     arrive, each batch as a single change (see {@link ChemDB#insertChemical(Chemical)}).
+     * </p>
+     * @param idType the ID type to be requested
+     * @param query the ranges the chemicals must match, or <tt>null</tt> for all chemicals
+     * @param enricher the <tt>ChemIDEnricher</tt> that makes the requests
+     * @return a <tt>CompletableFuture</tt> with the number of chemicals given an ID
+     * @throws UnsupportedOperationException if the <tt>ChemDB</tt> is an opened snapshot
+     *
+     * @see ChemDBManager#enrichIDs(ChemID, ChemQuery, ChemIDEnricher)
+     * @since 00.02.00
+     */
+    public CompletableFuture<Integer> enrichIDs(ChemID idType, ChemQuery query, ChemIDEnricher enricher) {
+        return enricher.enrich(Collections.singletonList(this), idType, query);
+    }
+
+    /**
+     * Reloads the <tt>ChemDB</tt> from the file it was loaded from, unless that would lose unsaved changes.
+     * <p>
+     *     The file is read into a new store and indexes in the calling thread, which are then swapped in
+     *     atomically. Queries already running finish on the old data, later queries see the new data and
+     *     neither ever waits for the reload. If the file cannot be read or is malformed, the old data is kept.
+     *     Snapshot files are opened again rather than parsed; they should be replaced by renaming a new file
+     *     over the old one, not rewritten in place, since the old one may still be mapped.
+     * </p>
+     * <p>
+     *     The file replaces everything in memory, so a <tt>ChemDB</tt> with unsaved changes
+     *     (see {@link ChemDB#hasUnsavedChanges()}) is not reloaded.
+     * </p>
+     * @throws IOException if the file cannot be read or is malformed
+     * @throws IllegalStateException if the <tt>ChemDB</tt> has unsaved changes (also if they were made while
+     *     the file was being read)
+     * @throws UnsupportedOperationException if the <tt>ChemDB</tt> was not loaded from a file
+     *
+     * @see ChemDBWatcher
+     * @since 00.02.00
+     */
+    public void reload() throws IOException {
+        reload(false);
+    }
+
+    /**
+     * Reloads the <tt>ChemDB</tt> from the file it was loaded from, possibly discarding unsaved changes.
+     * <p>
+     *     See {@link ChemDB#reload()}.
+     * </p>
+     * @param discardChanges <tt>true</tt> to replace unsaved changes (e.g. IDs) with the contents of the file
+     * @throws IOException if the file cannot be read or is malformed
+     * @throws IllegalStateException if the <tt>ChemDB</tt> has unsaved changes and they are not to be discarded
+     * @throws UnsupportedOperationException if the <tt>ChemDB</tt> was not loaded from a file
+     *
+     * @since 00.02.00
+     */
+    public void reload(boolean discardChanges) throws IOException {
+        if(fileName == null) {
+            throw new UnsupportedOperationException("ChemDB was not loaded from a file");
+        }
+        if(unsaved && !discardChanges) {
+            throw new IllegalStateException("ChemDB has unsaved changes: " + fileName);
+        }
+        ChemDB fresh = storage == null ? openSnapshot(fileName) : load(fileName, storage);
+        synchronized(this) {
+            // Checked again, since changes may have been made while the file was being read
+            if(unsaved && !discardChanges) {
+                throw new IllegalStateException("ChemDB has unsaved changes: " + fileName);
+            }
+            state = fresh.state;
+            rowsByName = null;
+            unsaved = false;
+        }
+        fireChanged();
+    }
+
+
+
+    /**
+     * Inserts a copy of a <tt>Chemical</tt> into the <tt>ChemDB</tt>.
+     * <p>
+     *     Safe to call while other threads are querying the <tt>ChemDB</tt>.
+     *     Changes are copy-on-write: a new version of the chemicals and indexes is made with the change applied
+     *     and then swapped in atomically, so queries never block and each query sees the <tt>ChemDB</tt> either
+     *     entirely before or entirely after a change. Changes are applied one at a time.
+     *     Each version shares the chemicals and index buckets of the previous one and only copies the buckets
+     *     (and pages of IDs) it changes, so the cost of a change does not depend on the size of the
+     *     <tt>ChemDB</tt>. Removed chemicals keep taking up memory until they outnumber the others, at which
+     *     point the <tt>ChemDB</tt> is compacted once.
+     * </p>
+     * @param chem the <tt>Chemical</tt> to be inserted
+     * @throws IllegalArgumentException if the <tt>Chemical</tt>'s NFPA information cannot be packed
+     * @throws UnsupportedOperationException if the <tt>ChemDB</tt> is an opened snapshot
+     *
+     * @see ChemDB#insertChemicals(Collection)
+     * @see ChemDB#updateChemical(String, Chemical)
+     * @see ChemDB#removeChemical(String)
+     * @since 00.02.00
+     */
+    public void insertChemical(Chemical chem) {
+        if(ChemSignature.of(chem) == ChemSignature.NONE) {
+            throw new IllegalArgumentException("NFPA 704 information out of range for " + chem.getName());
+        }
+        insertChemicals(Collections.singletonList(chem));
+    }
+
+    /**
+     * Inserts copies of several <tt>Chemical</tt>s into the <tt>ChemDB</tt> as a single change.
+     * <p>
+     *     See {@link ChemDB#insertChemical(Chemical)}.
+     *     <tt>Chemical</tt>s with ratings outside of the NFPA 704 scale are reported to the console and left out.
+     * </p>
+     * @param chems the <tt>Chemical</tt>s to be inserted
+     * @return the number of <tt>Chemical</tt>s inserted
+     * @throws UnsupportedOperationException if the <tt>ChemDB</tt> is an opened snapshot
+     *
+     * @since 00.02.00
+     */
+    public int insertChemicals(Collection<Chemical> chems) {
+        if(storage == null) {
+            throw new UnsupportedOperationException("snapshots are read-only");
+        }
+        int inserted = 0;
+        synchronized(this) {
+            State next = state.fork();
+            for(Chemical chem : chems) {
+                try {
+                    addChemical(next, chem);
+                    inserted++;
+                } catch (IllegalArgumentException e) {
+                    System.out.println(e + " - chemical could not be properly loaded");
+                }
+            }
+            indexNames(next, state.store.size());
+            state = next;
+            unsaved = true;
+        }
+        fireChanged();
+        return inserted;
+    }
+
+    /**
+     * Replaces every chemical with the given name by a copy of a <tt>Chemical</tt>.
+     * <p>
+     *     Names are compared after normalization (see {@link Chemical#normalizeName(String)}).
+     *     The matching chemicals are removed and the replacement is added after all other chemicals.
+     *     See {@link ChemDB#insertChemical(Chemical)} for how changes are applied.
+     * </p>
+     * @param name the name of the chemical to be replaced
+     * @param replacement the <tt>Chemical</tt> to replace it with
+     * @return the number of chemicals replaced
+     * @throws IllegalArgumentException if the replacement's NFPA information cannot be packed
+     * @throws UnsupportedOperationException if the <tt>ChemDB</tt> is an opened snapshot
+     *
+     * @since 00.02.00
+     */
+    public int updateChemical(String name, Chemical replacement) {
+        if(ChemSignature.of(replacement) == ChemSignature.NONE) {
+            throw new IllegalArgumentException("NFPA 704 information out of range for " + replacement.getName());
+        }
+        return change(name, replacement);
+    }
+
+    /**
+     * Removes every chemical with the given name.
+     * <p>
+     *     Names are compared after normalization (see {@link Chemical#normalizeName(String)}).
+     *     See {@link ChemDB#insertChemical(Chemical)} for how changes are applied.
+     * </p>
+     * @param name the name of the chemical to be removed
+     * @return the number of chemicals removed
+     * @throws UnsupportedOperationException if the <tt>ChemDB</tt> is an opened snapshot
+     *
+     * @since 00.02.00
+     */
+    public int removeChemical(String name) {
+        return change(name, null);
+    }
+
+
+
     // --------------------
     // PRIVATE UTILITY METHODS
     // --------------------
 
     /**
-     * NON-FUNCTIONAL - Takes a CSV file and converts it into an <tt>ArrayList</tt> of <tt>Chemical</tt>s.
+     * Reads a database file into the store.
      * <p>
-     *     TODO: Fix this so that it works.
-     *     Then again, does this really need to work?
+     *     The format is detected by {@link ChemLoaders#find(Path)}. The loader decodes the file on this thread
+     *     while a {@link ChemBulkSink} stores and indexes the chemicals on another one.
      * </p>
      *
-     * @param fileName the name of the CSV file to be read
+     * @param fileName the name of the file to be read
+     * @throws IOException if the file cannot be read, is in an unknown format or is malformed
      */
-    private void readCSV(String fileName) {
-        // TODO: Fix this method: it cannot differentiate commas inside quotes and outside quotes.
-        String line = "";
-        String cvsSplitBy = ",";
+    private void read(String fileName) throws IOException {
+        read(fileName, 1);
+    }
 
-        // Convert individual CSV lines into a 2D string array
-        try (BufferedReader br = new BufferedReader(new FileReader(fileName))) {
-            while ((line = br.readLine()) != null) {
-                // Use a comma as separator
-                String[] chemDataTemp = line.split(cvsSplitBy);
-                chemArray.add(chemDataTemp);
+    /**
+     * Reads a database file into the store, letting the loader use up to <tt>threads</tt> threads.
+     * <p>
+     *     With more than one thread the loader is given the store itself: a loader that splits the file already
+     *     stores one chunk while parsing the next ones, and the number of chemicals it returns is then the
+     *     number the store accepted rather than the number queued for a {@link ChemBulkSink}.
+     * </p>
+     *
+     * @see ChemDB#read(String)
+     */
+    private void read(String fileName, int threads) throws IOException {
+        Path path = Paths.get(fileName);
+        ChemLoader loader = ChemLoaders.find(path);
+        if(threads > 1) {
+            loader.load(path, this::addChemical, threads);
+            return;
+        }
+        try (ChemBulkSink sink = new ChemBulkSink(this::addChemical)) {
+            loader.load(path, sink);
+        }
+    }
+
+    /**
+     * Converts a chemical into a line of a JSON Lines file, including the line feed.
+     */
+    private static String toJSONLine(String name, int signature) {
+        return "{\"NAME\":" + JSONObject.quote(name)
+                + ",\"HEALTH\":\"" + ChemSignature.getProp(signature, HEALTH)
+                + "\",\"FLAMMABILITY\":\"" + ChemSignature.getProp(signature, FLAMMABILITY)
+                + "\",\"REACTIVITY\":\"" + ChemSignature.getProp(signature, REACTIVITY)
+                + "\",\"SPECIAL\":\"" + ChemSignature.specialString(ChemSignature.getSpecials(signature))
+                + "\"}\n";
+    }
+
+    /**
+     * Appends text to the end of a file, first ending its last line if it was left unterminated.
+     */
+    private static void appendLines(Path path, CharSequence lines) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            ByteBuffer last = ByteBuffer.allocate(1);
+            boolean terminated = size == 0 || channel.read(last, size - 1) == 1 && last.get(0) == '\n';
+
+            ByteBuffer bytes = StandardCharsets.UTF_8.encode((terminated ? "" : "\n") + lines);
+            long position = size;
+            while(bytes.hasRemaining()) {
+                position += channel.write(bytes, position);
             }
+        }
+    }
 
-        } catch (IOException e) {
-            System.out.println("IOException has occurred in reading the CSV.");
-            //e.printStackTrace();
-        }
-
-        // Convert the 2D array into Chemicals and put them into the ArrayList
-        String specialTempString = "";
-        String[] specialTempSArray;
-        boolean[] specialTempBArray = {false, false, false};
-        for(String[] chemData : chemArray) {
-            // Access the special symbols string and put individual symbols into array spots
-            if (chemData.length == 5) {
-                chemData[4] = specialTempString;
-                specialTempSArray = specialTempString.split(", ");
-
-                // Convert the presence of the symbols into the boolean array taken by the Chemical() constructor
-                for(String str : specialTempSArray) {
-                    if(str.equalsIgnoreCase("ox")) {
-                        specialTempBArray[0] = true;
-                    }
-                    if(str.equalsIgnoreCase("sa")) {
-                        specialTempBArray[1] = true;
-                    }
-                    if(str.equalsIgnoreCase("w")) {
-                        specialTempBArray[2] = true;
+    /**
+     * Answers a batch of queries against several <tt>ChemDB</tt>s.
+     * <p>
+     *     The queries are grouped by signature first; then each <tt>ChemDB</tt> is visited once and
+     *     the bucket of every distinct signature is appended to that signature's results.
+     *     Results are in the same order as separate calls to {@link ChemDB#queryChemNFPA(Chemical, boolean)}.
+     * </p>
+     */
+    static Map<Chemical, Collection<Chemical>> queryBatchNFPA(List<ChemDB> chemDBs, Collection<Chemical> queries,
+                                                             boolean special) {
+        int[] signatures = new int[queries.size()];
+        int[] distinct = new int[Math.min(queries.size(), ChemSignature.COUNT)];
+        int distinctCount = 0;
+        List<List<Chemical>> bySignature = new ArrayList<>(Collections.nCopies(ChemSignature.COUNT, null));
+        int i = 0;
+        for(Chemical query : queries) {
+            int signature = ChemSignature.of(query.getProps(), special ? query.getSpecials() : null);
+            signatures[i++] = signature;
+            if(signature != ChemSignature.NONE && bySignature.get(signature) == null) {
+                bySignature.set(signature, new ArrayList<>());
+                distinct[distinctCount++] = signature;
+            }
+        }
+
+        for(ChemDB chemDB : chemDBs) {
+            // Read once, so that the whole batch sees the same version of each ChemDB
+            State state = chemDB.state;
+            for(int j = 0; j < distinctCount; j++) {
+                collect(state, distinct[j], special, bySignature.get(distinct[j]));
+            }
+        }
+        for(int j = 0; j < distinctCount; j++) {
+            bySignature.set(distinct[j], Collections.unmodifiableList(bySignature.get(distinct[j])));
+        }
+
+        Map<Chemical, Collection<Chemical>> results = new LinkedHashMap<>(queries.size() * 4 / 3 + 1);
+        i = 0;
+        for(Chemical query : queries) {
+            int signature = signatures[i++];
+            results.put(query, signature == ChemSignature.NONE ?
+                    Collections.<Chemical>emptyList() : bySignature.get(signature));
+        }
+        return results;
+    }
+
+    /**
+     * Finds the <tt>Chemical</tt>s in several <tt>ChemDB</tt>s that are nearest to a query.
+     * <p>
+     *     Orders the signatures that occur in any of the <tt>ChemDB</tt>s by their distance from the query,
+     *     then takes whole buckets (in <tt>ChemDB</tt> order) until <tt>k</tt> chemicals have been found.
+     * </p>
+     */
+    static List<Chemical> queryNearestNFPA(List<ChemDB> chemDBs, Chemical query, int k, ChemDistance distance) {
+        List<Chemical> results = new ArrayList<>();
+        int target = ChemSignature.of(query);
+        if(target == ChemSignature.NONE || k <= 0) {
+            return results;
+        }
+
+        // Read once, so that the whole search sees the same version of each ChemDB
+        List<State> states = new ArrayList<>(chemDBs.size());
+        for(ChemDB chemDB : chemDBs) {
+            states.add(chemDB.state);
+        }
+
+        double[] distances = new double[ChemSignature.COUNT];
+        List<Integer> signatures = new ArrayList<>();
+        for(int signature = 0; signature < ChemSignature.COUNT; signature++) {
+            for(State state : states) {
+                if(state.index.size(signature, true) > 0) {
+                    distances[signature] = distance.distance(target, signature);
+                    signatures.add(signature);
+                    break;
+                }
+            }
+        }
+        signatures.sort((a, b) -> distances[a] != distances[b] ?
+                Double.compare(distances[a], distances[b]) : Integer.compare(a, b));
+
+        for(int signature : signatures) {
+            for(State state : states) {
+                int[] rows = state.index.rows(signature, true);
+                int size = state.index.size(signature, true);
+                for(int i = 0; i < size; i++) {
+                    results.add(state.store.get(rows[i]));
+                    if(results.size() == k) {
+                        return results;
                     }
                 }
             }
+        }
+        return results;
+    }
+
+    /**
+     * Adds the <tt>Chemical</tt>s in a signature bucket to a <tt>Collection</tt>.
+     */
+    private static void collect(State state, int signature, boolean special, Collection<? super Chemical> results) {
+        int[] rows = state.index.rows(signature, special);
+        int size = state.index.size(signature, special);
+        for(int i = 0; i < size; i++) {
+            results.add(state.store.get(rows[i]));
+        }
+    }
 
-            // Add the new Chemical() to the list
-            chemList.add(new Chemical(chemData[0],
-                    Integer.parseInt(chemData[1]),
-                    Integer.parseInt(chemData[2]),
-                    Integer.parseInt(chemData[3]),
-                    specialTempBArray));
+    /**
+     * Registers a callback to be run after every change to the chemicals of the <tt>ChemDB</tt>.
+     */
+    void addChangeListener(Runnable listener) {
+        changeListeners.add(listener);
+    }
 
-            // Reset the temporary boolean array
-            for(int i=0; i<3; i++) {
-                specialTempBArray[i] = false;
+    /**
+     * Unregisters a callback added by {@link ChemDB#addChangeListener(Runnable)}.
+     */
+    void removeChangeListener(Runnable listener) {
+        changeListeners.remove(listener);
+    }
+
+    /**
+     * Gets the names of the chemicals that match a query but do not have an ID yet.
+     *
+     * @param idType the ID type
+     * @param query the ranges the chemicals must match
+     * @return the names, in store order (may contain duplicates)
+     * @throws UnsupportedOperationException if the <tt>ChemDB</tt> is an opened snapshot
+     *
+     * @see ChemIDEnricher
+     */
+    List<String> namesWithoutID(ChemID idType, ChemQuery query) {
+        if(storage == null) {
+            throw new UnsupportedOperationException("snapshots are read-only");
+        }
+        State state = this.state;
+        BitSet rows = state.bitmaps.evaluate(query, state.store.size());
+        List<String> names = new ArrayList<>(rows.cardinality());
+        for(int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+            if(state.store.getID(row, idType) == null && state.store.getName(row) != null) {
+                names.add(state.store.getName(row));
             }
         }
+        return names;
+    }
 
+    /**
+     * Gives IDs to the chemicals that do not have one yet, as a single change.
+     *
+     * @param idType the ID type
+     * @param ids the IDs by normalized chemical name (see {@link Chemical#normalizeName(String)})
+     * @return the number of chemicals given an ID
+     * @throws UnsupportedOperationException if the <tt>ChemDB</tt> is an opened snapshot
+     *
+     * @see ChemIDEnricher
+     */
+    int setIDs(ChemID idType, Map<String, String> ids) {
+        if(storage == null) {
+            throw new UnsupportedOperationException("snapshots are read-only");
+        }
+        int updated = 0;
+        synchronized(this) {
+            Map<String, List<Integer>> names = rowsByName();
+            State next = null;
+            for(Map.Entry<String, String> entry : ids.entrySet()) {
+                for(int row : names.getOrDefault(entry.getKey(), Collections.<Integer>emptyList())) {
+                    if(state.store.getID(row, idType) == null) {
+                        if(next == null) {
+                            next = state.fork();
+                        }
+                        next.store.setID(row, idType, entry.getValue());
+                        updated++;
+                    }
+                }
+            }
+            if(updated == 0) {
+                return 0;
+            }
+            state = next;
+            unsaved = true;
+        }
+        fireChanged();
+        return updated;
     }
 
     /**
-     * Reads a JSON database to convert its stored information into a list.
+     * Creates a <tt>Spliterator</tt> over a signature bucket.
      * <p>
-     *     Takes a very specific type of JSON file.
-     *     See existing databases for JSON formatting information.
+     *     Buckets are never changed below the size a version sees, so the array can be shared once the size is read.
      * </p>
-     * @param fileName name of the file to be accessed, as a <tt>String</tt>
      */
-    private void readJSON(String fileName) {
-        // Declaring variables
-        JSONArray chemJSONArray;
-        JSONObject chemJSONObject;
+    Spliterator<Chemical> spliterator(int signature, boolean special) {
+        State state = this.state;
+        return new RowSpliterator(state.store, state.index.rows(signature, special), 0,
+                state.index.size(signature, special));
+    }
 
-        String nameTemp = "";
-        String specialTempString = "";
-        EnumMap<ChemProp, Integer> propsTemp = new EnumMap<>(ChemProp.class);
-        EnumMap<ChemSpecial, Boolean> specsTemp = new EnumMap<>(ChemSpecial.class);
-        Chemical chemTemp;
+    /**
+     * Creates a <tt>Spliterator</tt> over the rows matching a <tt>ChemQuery</tt>.
+     */
+    Spliterator<Chemical> spliterator(ChemQuery query) {
+        State state = this.state;
+        int[] rows = state.bitmaps.evaluate(query, state.store.size()).stream().toArray();
+        return new RowSpliterator(state.store, rows, 0, rows.length);
+    }
 
-        // Reading the actual file and processing the information.
-        try {
-            // Read the file and convert it into a JSONArray.
-            String content = new String(Files.readAllBytes(Paths.get(fileName)));
-            chemJSONArray = new JSONArray(content);
-            //JSONParser parser = new JSONParser();
-            //chemJSONArray = new JSONArray(new FileReader(fileName));
-
-            // Put fields into private instance variables.
-            for(Object obj : chemJSONArray) {
-                try {
-                    chemJSONObject = (JSONObject) obj;
-
-                    // Convert the JSON information to processable information
-                    nameTemp = chemJSONObject.get("NAME").toString();
-                    propsTemp.put(HEALTH, Integer.parseInt(chemJSONObject.get("HEALTH").toString()));
-                    propsTemp.put(FLAMMABILITY, Integer.parseInt(chemJSONObject.get("FLAMMABILITY").toString()));
-                    propsTemp.put(REACTIVITY, Integer.parseInt(chemJSONObject.get("REACTIVITY").toString()));
-                    specialTempString = chemJSONObject.get("SPECIAL").toString().toUpperCase();
-
-                    // Access the special symbols string and put individual symbols into array spots
-                    if (!specialTempString.equals("")) {
-                        specsTemp = convertSpecialString(specialTempString);
-                        chemTemp = new Chemical(nameTemp, propsTemp, specsTemp);
-
-                    } else {
-                        chemTemp = new Chemical(nameTemp, propsTemp);
-                    }
+    /**
+     * Adds a <tt>Chemical</tt> to the store and indexes it by its <tt>ChemSignature</tt>.
+     *
+     * @param chem the <tt>Chemical</tt> to be added
+     * @throws IllegalArgumentException if the <tt>Chemical</tt>'s NFPA information cannot be packed
+     */
+    private void addChemical(Chemical chem) throws IllegalArgumentException {
+        addChemical(state, chem);
+    }
 
-                    // Add the new Chemical() to the list
-                    chemList.add(chemTemp);
+    private static void addChemical(State state, Chemical chem) throws IllegalArgumentException {
+        int row = state.store.size();
+        addChemical(state, chem.getName(), ChemSignature.of(chem));
+        for(ChemID idType : ChemID.values()) {
+            String id = chem.getID(idType);
+            if(id != null) {
+                state.store.setID(row, idType, id);
+            }
+        }
+    }
+
+    /**
+     * Adds a chemical to the store and indexes it by its <tt>ChemSignature</tt>.
+     *
+     * @param name the name of the chemical
+     * @param health the health rating
+     * @param flammability the flammability rating
+     * @param reactivity the reactivity rating
+     * @param specials the special symbols as a bit mask
+     * @throws IllegalArgumentException if the NFPA information cannot be packed
+     *
+     * @see ChemSink#add(String, int, int, int, int)
+     */
+    private void addChemical(String name, int health, int flammability, int reactivity, int specials)
+            throws IllegalArgumentException {
+        addChemical(state, name, ChemSignature.pack(health, flammability, reactivity, specials));
+    }
 
-                    // Reset the EnumMaps
-                    propsTemp.clear();
-                    specsTemp.clear();
+    private static void addChemical(State state, String name, int signature) throws IllegalArgumentException {
+        if(signature == ChemSignature.NONE) {
+            throw new IllegalArgumentException("NFPA 704 information out of range for " + name);
+        }
+        int row = state.store.size();
+        state.index.add(row, signature);
+        state.bitmaps.add(row, signature);
+        state.store.add(name, signature);
+    }
 
-                } catch (NumberFormatException e){
-                    System.out.println(e + " - chemical could not be properly loaded");
+    /**
+     * Creates an empty <tt>State</tt> with the given <tt>ChemStorage</tt> mode.
+     */
+    private static State emptyState(ChemStorage storage) {
+        ChemStore store;
+        switch(storage) {
+            case COLUMNAR:
+                store = new ColumnarChemStore();
+                break;
+            case COMPACT:
+                store = new CompactChemStore();
+                break;
+            default:
+                store = new ObjectChemStore();
+                break;
+        }
+        return new State(store, new SignatureIndex(), new BitmapIndex());
+    }
+
+    /**
+     * Copies the rows of a <tt>State</tt> that have not been removed into a new one.
+     *
+     * @param from the <tt>State</tt> to be compacted
+     * @return the new <tt>State</tt>
+     */
+    private State compact(State from) {
+        State to = emptyState(storage);
+        for(int row = 0; row < from.store.size(); row++) {
+            if(from.bitmaps.isRemoved(row)) {
+                continue;
+            }
+            int copy = to.store.size();
+            addChemical(to, from.store.getName(row), from.store.getSignature(row));
+            for(ChemID idType : ChemID.values()) {
+                String id = from.store.getID(row, idType);
+                if(id != null) {
+                    to.store.setID(copy, idType, id);
                 }
             }
+        }
+        return to;
+    }
 
-        } catch (IOException e) {
-            System.out.println(e + " - database could not be properly loaded");
+    /**
+     * Gets the rows of the current <tt>State</tt> by normalized name, building the map if necessary.
+     * <p>
+     *     Must be called while holding the <tt>ChemDB</tt>'s lock.
+     * </p>
+     */
+    private Map<String, List<Integer>> rowsByName() {
+        if(rowsByName == null) {
+            rowsByName = new HashMap<>();
+            State state = this.state;
+            for(int row = 0; row < state.store.size(); row++) {
+                if(!state.bitmaps.isRemoved(row)) {
+                    indexName(row, state.store.getName(row));
+                }
+            }
+        }
+        return rowsByName;
+    }
+
+    /**
+     * Adds the rows of a new <tt>State</tt> from the given row on to the rows by name, if they are being kept.
+     * <p>
+     *     Must be called while holding the <tt>ChemDB</tt>'s lock.
+     * </p>
+     */
+    private void indexNames(State next, int from) {
+        if(rowsByName != null) {
+            for(int row = from; row < next.store.size(); row++) {
+                indexName(row, next.store.getName(row));
+            }
         }
+    }
 
+    private void indexName(int row, String name) {
+        String normalized = Chemical.normalizeName(name);
+        if(normalized != null) {
+            rowsByName.computeIfAbsent(normalized, n -> new ArrayList<>(1)).add(row);
+        }
     }
 
     /**
-     * Converts a <tt>String</tt> with special symbol information into an <tt>EnumMap</tt>.
-     * <P>
-     *     Note that the input <tt>String</tt> <b>must</b> be capitalised (i.e. <tt>toUpperCase()</tt>)
-     *     for the method to work correctly.
-     * </P>
-     * @param specialString the <tt>String</tt> with the capitalised symbols
-     * @return an <tt>EnumMap</tt> with the proper symbols in <tt>enum</tt> format
+     * Replaces or removes the chemicals with the given name and swaps in the result.
+     *
+     * @return the number of matching chemicals
      */
-    private static EnumMap<ChemSpecial, Boolean> convertSpecialString(String specialString) {
-        EnumMap<ChemSpecial, Boolean> results = new EnumMap<>(ChemSpecial.class);
+    private int change(String name, Chemical replacement) {
+        if(storage == null) {
+            throw new UnsupportedOperationException("snapshots are read-only");
+        }
+        String normalized = Chemical.normalizeName(name);
+        if(normalized == null) {
+            return 0;
+        }
+        int matched;
+        synchronized(this) {
+            List<Integer> rows = rowsByName().get(normalized);
+            if(rows == null) {
+                return 0;
+            }
+            State next = state.fork();
+            for(int row : rows) {
+                next.remove(row);
+            }
+            if(replacement != null) {
+                addChemical(next, replacement);
+            }
+            matched = rows.size();
 
-        results.put(OXIDIZER, specialString.contains("OX"));
-        results.put(SIMPLE_ASPHYXIANT, specialString.contains("SA"));
-        results.put(WATER_REACT, specialString.contains("W"));
+            if(next.bitmaps.removedCount() > next.store.size() / 2) {
+                // Removed rows are never reused, so copy the others once they are outnumbered
+                next = compact(next);
+                rowsByName = null;
+            } else {
+                rowsByName.remove(normalized);
+                indexNames(next, state.store.size());
+            }
+            state = next;
+            unsaved = true;
+        }
+        fireChanged();
+        return matched;
+    }
 
-        return results;
+    /**
+     * Runs the change listeners.
+     */
+    private void fireChanged() {
+        for(Runnable listener : changeListeners) {
+            listener.run();
+        }
     }
 
 }
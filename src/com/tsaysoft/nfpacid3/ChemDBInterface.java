@@ -2,6 +2,10 @@ package com.tsaysoft.nfpacid3;
 
 import java.util.Collection;
 import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * An interface specifying the functions of {@link Chemical} databases.
@@ -59,4 +63,140 @@ public interface ChemDBInterface {
     Collection<Chemical> queryEnumMapNFPA(EnumMap<ChemProp, Integer> properties,
                                          EnumMap<ChemSpecial, Boolean> specials);
 
+    /**
+     * Used to query for <tt>Chemical</tt>s whose NFPA 704 information falls inside of the given ranges.
+     * <p>
+     *     Unlike the other queries, ratings can be matched against ranges (e.g. health &ge; 3) and special
+     *     symbols can be required to be present or absent.
+     * </p>
+     * @param query the <tt>ChemQuery</tt> describing the ranges and special symbols to be matched
+     * @return a <tt>Collection</tt> of <tt>Chemical</tt>s matching the query
+     *
+     * @see com.tsaysoft.nfpacid3.ChemQuery
+     * @since 00.02.00
+     */
+    Collection<Chemical> queryRangeNFPA(ChemQuery query);
+
+    /**
+     * Used to count the <tt>Chemical</tt>s whose NFPA 704 information falls inside of the given ranges.
+     * <p>
+     *     Answered from the number of chemicals with each {@link ChemSignature}, so no <tt>Chemical</tt>s
+     *     are built. The result can be broken down by rating level or special symbol, or turned into a
+     *     histogram; pass a new <tt>ChemQuery</tt> to count every chemical.
+     * </p>
+     * @param query the <tt>ChemQuery</tt> describing the ranges and special symbols to be matched
+     * @return the <tt>ChemCounts</tt> of the matching chemicals
+     *
+     * @see com.tsaysoft.nfpacid3.ChemCounts
+     * @since 00.02.00
+     */
+    ChemCounts countNFPA(ChemQuery query);
+
+    /**
+     * Used to find the <tt>Chemical</tt>s whose NFPA 704 information is closest to a query's.
+     * <p>
+     *     Useful when an exact query does not match anything.
+     *     The results are ordered from nearest to farthest, as measured by the <tt>ChemDistance</tt>;
+     *     chemicals the same distance away are ordered by their ratings and special symbols.
+     *     The query's special symbols are always taken into account (through their weights).
+     * </p>
+     * @param query the chemical with properties and special symbols to be queried
+     * @param k the maximum number of <tt>Chemical</tt>s to be returned
+     * @param distance the <tt>ChemDistance</tt> used to weigh the differences
+     * @return a <tt>List</tt> of at most <tt>k</tt> <tt>Chemical</tt>s, nearest first
+     *     (empty if the query's NFPA information cannot be packed)
+     *
+     * @see com.tsaysoft.nfpacid3.ChemDistance
+     * @since 00.02.00
+     */
+    List<Chemical> queryNearestNFPA(Chemical query, int k, ChemDistance distance);
+
+    /**
+     * Used to answer many NFPA 704 queries at once.
+     * <p>
+     *     Works like calling {@link ChemDBInterface#queryChemNFPA(Chemical, boolean)} for each query,
+     *     but queries with the same NFPA 704 information are grouped and each distinct group is looked up
+     *     only once, so the cost grows with the number of queries and results rather than their product.
+     *     Queries sharing NFPA 704 information share the same (unmodifiable) result <tt>Collection</tt>.
+     * </p>
+     * @param queries the chemicals with properties to be queried
+     * @param special whether the special symbols should be taken into account in comparisons
+     * @return a <tt>Map</tt> from each query to the <tt>Chemical</tt>s matching it, in the order of the queries
+     *
+     * @see ChemDBInterface#queryChemNFPA(Chemical, boolean)
+     * @since 00.02.00
+     */
+    Map<Chemical, Collection<Chemical>> queryBatchNFPA(Collection<Chemical> queries, boolean special);
+
+    /**
+     * Used to pass each <tt>Chemical</tt> matching the given NFPA 704 ratings to a consumer.
+     * <p>
+     *     A primitive alternative to {@link ChemDBInterface#queryEnumMapNFPA(EnumMap, EnumMap)}: no query
+     *     <tt>Chemical</tt>, <tt>EnumMap</tt>s or result <tt>Collection</tt> are built, so with
+     *     {@link ChemStorage#OBJECT} storage and a reused consumer the query does not allocate at all.
+     *     Ratings outside of the NFPA 704 scale never match.
+     * </p>
+     * @param health the health rating to be matched
+     * @param flammability the flammability rating to be matched
+     * @param reactivity the reactivity rating to be matched
+     * @param specials the special symbols to be matched, as a bit mask (see {@link ChemSignature#specialMask(EnumMap)})
+     * @param special whether the special symbols should be taken into account in comparisons
+     * @param action the <tt>Consumer</tt> receiving each matching <tt>Chemical</tt>
+     * @return the number of matching <tt>Chemical</tt>s
+     *
+     * @see ChemDBInterface#queryNFPA(int, int, int, int, boolean, Collection)
+     * @since 00.02.00
+     */
+    int forEachNFPA(int health, int flammability, int reactivity, int specials, boolean special,
+                    Consumer<? super Chemical> action);
+
+    /**
+     * Used to add each <tt>Chemical</tt> matching the given NFPA 704 ratings to a caller-supplied buffer.
+     * <p>
+     *     Works like {@link ChemDBInterface#forEachNFPA(int, int, int, int, boolean, Consumer)}.
+     *     The buffer is not cleared first, so a single (e.g. <tt>ArrayList</tt>) buffer can be cleared and
+     *     reused between queries without allocating once it has grown large enough.
+     * </p>
+     * @param health the health rating to be matched
+     * @param flammability the flammability rating to be matched
+     * @param reactivity the reactivity rating to be matched
+     * @param specials the special symbols to be matched, as a bit mask (see {@link ChemSignature#specialMask(EnumMap)})
+     * @param special whether the special symbols should be taken into account in comparisons
+     * @param results the <tt>Collection</tt> the matching <tt>Chemical</tt>s are added to
+     * @return the number of matching <tt>Chemical</tt>s
+     *
+     * @since 00.02.00
+     */
+    int queryNFPA(int health, int flammability, int reactivity, int specials, boolean special,
+                  Collection<? super Chemical> results);
+
+    /**
+     * Used to stream the <tt>Chemical</tt>s that match each other in their NFPA 704 ratings.
+     * <p>
+     *     Matches the same <tt>Chemical</tt>s as {@link ChemDBInterface#queryChemNFPA(Chemical, boolean)},
+     *     but lazily: nothing is collected up front, short-circuiting operations (e.g. <tt>findFirst</tt>,
+     *     <tt>limit</tt>, <tt>anyMatch</tt>) stop early and <tt>parallel()</tt> splits the work across cores.
+     * </p>
+     * @param query the chemical with properties to be queried
+     * @param special whether the special symbols should be taken into account in comparisons
+     * @return a <tt>Stream</tt> of <tt>Chemical</tt>s matching the properties and/or specials
+     *
+     * @see ChemDBInterface#streamRangeNFPA(ChemQuery)
+     * @since 00.02.00
+     */
+    Stream<Chemical> streamChemNFPA(Chemical query, boolean special);
+
+    /**
+     * Used to stream the <tt>Chemical</tt>s whose NFPA 704 information falls inside of the given ranges.
+     * <p>
+     *     The lazy counterpart of {@link ChemDBInterface#queryRangeNFPA(ChemQuery)}.
+     * </p>
+     * @param query the <tt>ChemQuery</tt> describing the ranges and special symbols to be matched
+     * @return a <tt>Stream</tt> of <tt>Chemical</tt>s matching the query
+     *
+     * @see ChemDBInterface#streamChemNFPA(Chemical, boolean)
+     * @since 00.02.00
+     */
+    Stream<Chemical> streamRangeNFPA(ChemQuery query);
+
 }
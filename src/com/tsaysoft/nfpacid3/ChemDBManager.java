@@ -1,15 +1,36 @@
 package com.tsaysoft.nfpacid3;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Manages multiple chemical databases.
  * <p>
  *     In essence, has the same functionality as a {@link ChemDB}.
  * </p>
+ * <p>
+ *     Databases can be loaded one after another by the constructors or concurrently by
+ *     {@link ChemDBManager#addDatabasesAsync(Collection, int)}; queries always see the databases
+ *     that have finished loading so far.
+ * </p>
  *
  * @see com.tsaysoft.nfpacid3.ChemDBInterface
  * @see com.tsaysoft.nfpacid3.ChemDB
@@ -22,7 +43,37 @@ public class ChemDBManager implements ChemDBInterface{
     // VARIABLES AND DATA
     // --------------------
 
-    private List<ChemDB> databases = new ArrayList<>();
+    /**
+     * The managed databases. Copy-on-write so that databases can be added while queries are running;
+     * replaced as a whole when the databases are merged.
+     */
+    private volatile List<ChemDB> databases = new CopyOnWriteArrayList<>();
+
+    /**
+     * The managed databases as an array, replaced whenever <tt>databases</tt> changes, so that the primitive
+     * queries can loop over them without allocating an iterator.
+     */
+    private volatile ChemDB[] databaseArray = new ChemDB[0];
+
+    /**
+     * Whether queries fan out to the databases in parallel.
+     */
+    private volatile boolean parallelQueries = false;
+
+    /**
+     * Caches exact-match query results; <tt>null</tt> if caching is disabled.
+     */
+    private volatile ChemQueryCache queryCache = null;
+
+    /**
+     * Reloads the databases when their files change; <tt>null</tt> if live reload is disabled.
+     */
+    private ChemDBWatcher watcher = null;
+
+    /**
+     * Registered with every managed database, so that changes to it invalidate the query cache.
+     */
+    private final Runnable onChange = this::invalidateCache;
 
 
 
@@ -58,7 +109,7 @@ public class ChemDBManager implements ChemDBInterface{
      */
     public ChemDBManager(String fileName) {
         super();
-        databases.add(new ChemDB(fileName));
+        addDatabase(new ChemDB(fileName));
     }
 
     /**
@@ -78,7 +129,7 @@ public class ChemDBManager implements ChemDBInterface{
     public ChemDBManager(Collection<String> fileNames) {
         super();
         for(String s : fileNames) {
-            databases.add(new ChemDB(s));
+            addDatabase(new ChemDB(s));
         }
     }
 
@@ -99,7 +150,150 @@ public class ChemDBManager implements ChemDBInterface{
     public ChemDBManager(String[] fileNames) {
         super();
         for(String s : fileNames) {
-            databases.add(new ChemDB(s));
+            addDatabase(new ChemDB(s));
+        }
+    }
+
+
+
+    /**
+     * Constructs a <tt>ChemDBManager</tt> which loads data from specified files in parallel.
+     * <p>
+     *     Builds the <tt>ChemDB</tt>s on up to <tt>threads</tt> threads and waits for all of them.
+     *     The databases are kept in the same order as <tt>fileNames</tt>.
+     *     Files that cannot be loaded are reported to the console and left out.
+     * </p>
+     *
+     * @param fileNames a <tt>Collection</tt> of file names to be turned into <tt>ChemDB</tt>s
+     * @param threads the maximum number of files to be loaded at the same time
+     *
+     * @see ChemDBManager#addDatabasesAsync(Collection, int)
+     * @since 00.02.00
+     */
+    public ChemDBManager(Collection<String> fileNames, int threads) {
+        super();
+        Map<String, CompletableFuture<ChemDB>> futures = loadAsync(fileNames, threads);
+        for(Map.Entry<String, CompletableFuture<ChemDB>> entry : futures.entrySet()) {
+            try {
+                addDatabase(entry.getValue().join());
+            } catch (CompletionException e) {
+                System.out.println(e.getCause() + " - database could not be properly loaded");
+            }
+        }
+    }
+
+
+
+    // --------------------
+    // GETTERS AND SETTERS
+    // --------------------
+
+    /**
+     * Gets whether queries are run on the managed databases in parallel.
+     * @return <tt>true</tt> if queries fan out in parallel, <tt>false</tt> if they run one database at a time
+     *
+     * @see ChemDBManager#setParallelQueries(boolean)
+     * @since 00.02.00
+     */
+    public boolean isParallelQueries() {
+        return parallelQueries;
+    }
+
+    /**
+     * Sets whether queries are run on the managed databases in parallel.
+     * <p>
+     *     When enabled, every query is scattered to the <tt>ChemDB</tt>s as fork/join tasks on the common pool
+     *     and the per-database results are gathered afterwards, so query latency follows the slowest
+     *     database rather than the sum of all of them.
+     *     Results are returned in the same order either way.
+     * </p>
+     * @param parallel <tt>true</tt> to fan out queries in parallel, <tt>false</tt> to run them one at a time
+     *
+     * @since 00.02.00
+     */
+    public void setParallelQueries(boolean parallel) {
+        parallelQueries = parallel;
+    }
+
+
+
+    /**
+     * Gets the cache used for exact-match NFPA 704 queries.
+     * @return the <tt>ChemQueryCache</tt>, or <tt>null</tt> if caching is disabled
+     *
+     * @see ChemDBManager#setQueryCache(ChemQueryCache)
+     * @since 00.02.00
+     */
+    public ChemQueryCache getQueryCache() {
+        return queryCache;
+    }
+
+    /**
+     * Sets the cache used for exact-match NFPA 704 queries.
+     * <p>
+     *     While a cache is set, {@link ChemDBManager#queryChemNFPA(Chemical, boolean)} and
+     *     the <tt>queryEnumMapNFPA</tt> methods return unmodifiable <tt>List</tt>s that are shared between callers.
+     *     The cache is invalidated automatically whenever databases are added, merged or reloaded.
+     * </p>
+     * @param cache the <tt>ChemQueryCache</tt> to be used, or <tt>null</tt> to disable caching
+     *
+     * @since 00.02.00
+     */
+    public void setQueryCache(ChemQueryCache cache) {
+        if(cache != null) {
+            cache.invalidate();
+        }
+        queryCache = cache;
+    }
+
+
+
+    /**
+     * Gets whether the databases are reloaded when their files change.
+     * @return <tt>true</tt> if live reload is enabled, <tt>false</tt> if not
+     *
+     * @see ChemDBManager#setLiveReload(boolean)
+     * @since 00.02.00
+     */
+    public synchronized boolean isLiveReload() {
+        return watcher != null;
+    }
+
+    /**
+     * Sets whether the databases are reloaded when their files change.
+     * <p>
+     *     When enabled, the files of all loaded databases (including ones added later) are watched by a
+     *     {@link ChemDBWatcher}. A changed file is rebuilt in the background and swapped in atomically,
+     *     so queries keep running on the old data until the new data is ready and never block on a reload.
+     *     The query cache is invalidated after every reload.
+     *     Databases changed in memory (e.g. given IDs by {@link ChemDBManager#enrichIDs(ChemID, ChemQuery,
+     *     ChemIDEnricher)}) are not reloaded, so that the file does not wipe out their changes
+     *     (see {@link ChemDB#hasUnsavedChanges()}).
+     *     Databases built in memory (e.g. by {@link ChemDBManager#mergeDatabases(ChemID, ChemStorage)})
+     *     are not watched.
+     * </p>
+     * @param enabled <tt>true</tt> to watch the files, <tt>false</tt> to stop watching them
+     * @throws IOException if the files cannot be watched
+     *
+     * @since 00.02.00
+     */
+    public synchronized void setLiveReload(boolean enabled) throws IOException {
+        if(enabled && watcher == null) {
+            ChemDBWatcher newWatcher = new ChemDBWatcher(null);
+            try {
+                for(ChemDB chemDB : databases) {
+                    if(chemDB.getFileName() != null) {
+                        newWatcher.watch(chemDB);
+                    }
+                }
+            } catch (IOException e) {
+                newWatcher.close();
+                throw e;
+            }
+            watcher = newWatcher;
+        } else if(!enabled && watcher != null) {
+            watcher.close();
+            watcher = null;
         }
     }
 
@@ -109,6 +303,123 @@ public class ChemDBManager implements ChemDBInterface{
     // PUBLIC UTILITY METHODS
     // --------------------
 
+    /**
+     * Adds an already constructed <tt>ChemDB</tt> to the <tt>ChemDBManager</tt>'s "jurisdiction."
+     * <p>
+     *     Safe to call while queries are running; queries see the databases either before or after the change.
+     * </p>
+     *
+     * @param chemDB the <tt>ChemDB</tt> to be added
+     *
+     * @see ChemDBManager#removeDatabase(ChemDB)
+     * @since 00.02.00
+     */
+    public synchronized void addDatabase(ChemDB chemDB) {
+        databases.add(chemDB);
+        databaseArray = databases.toArray(new ChemDB[0]);
+        chemDB.addChangeListener(onChange);
+        invalidateCache();
+        if(watcher != null && chemDB.getFileName() != null) {
+            try {
+                watcher.watch(chemDB);
+            } catch (IOException e) {
+                System.out.println(e + " - database could not be watched for changes");
+            }
+        }
+    }
+
+    /**
+     * Removes a <tt>ChemDB</tt> from the <tt>ChemDBManager</tt>'s "jurisdiction."
+     * <p>
+     *     Safe to call while queries are running; queries see the databases either before or after the change.
+     * </p>
+     *
+     * @param chemDB the <tt>ChemDB</tt> to be removed
+     * @return <tt>true</tt> if the <tt>ChemDB</tt> was managed, <tt>false</tt> if not
+     *
+     * @see ChemDBManager#addDatabase(ChemDB)
+     * @since 00.02.00
+     */
+    public synchronized boolean removeDatabase(ChemDB chemDB) {
+        if(!databases.remove(chemDB)) {
+            return false;
+        }
+        databaseArray = databases.toArray(new ChemDB[0]);
+        chemDB.removeChangeListener(onChange);
+        if(watcher != null) {
+            watcher.unwatch(chemDB);
+        }
+        invalidateCache();
+        return true;
+    }
+
+    /**
+     * Merges all of the managed databases into a single database without duplicates.
+     * <p>
+     *     Duplicates are removed once, as by {@link ChemDBManager#removeDuplicates(Collection, ChemID)},
+     *     so that later queries do not have to.
+     *     Chemicals from earlier databases are kept over their duplicates in later ones.
+     *     The merged database replaces the existing ones atomically; queries see either all of the old
+     *     databases or the merged one.
+     * </p>
+     *
+     * @param id the <tt>ChemID</tt> type to be used for duplicate determination, or <tt>null</tt> for names only
+     * @param storage how the merged database should keep its chemicals in memory
+     * @return the merged <tt>ChemDB</tt>
+     *
+     * @since 00.02.00
+     */
+    public synchronized ChemDB mergeDatabases(ChemID id, ChemStorage storage) {
+        List<Chemical> all = new ArrayList<>();
+        ChemQuery everything = new ChemQuery();
+        for(ChemDB chemDB : databases) {
+            all.addAll(chemDB.queryRangeNFPA(everything));
+        }
+
+        ChemDB merged = new ChemDB(removeDuplicates(all, id), storage);
+        for(ChemDB chemDB : databases) {
+            chemDB.removeChangeListener(onChange);
+            if(watcher != null) {
+                watcher.unwatch(chemDB);
+            }
+        }
+        merged.addChangeListener(onChange);
+        List<ChemDB> replacement = new CopyOnWriteArrayList<>();
+        replacement.add(merged);
+        databases = replacement;
+        databaseArray = new ChemDB[] {merged};
+        invalidateCache();
+        return merged;
+    }
+
+    /**
+     * Loads files into <tt>ChemDB</tt>s in the background and adds each one as soon as it is ready.
+     * <p>
+     *     The files are loaded on a pool of at most <tt>threads</tt> threads.
+     *     Each file gets a <tt>CompletableFuture</tt>, keyed by file name in the order given, which
+     *     completes with the <tt>ChemDB</tt> once it has been added, or completes exceptionally with the
+     *     <tt>IOException</tt> explaining why the file could not be loaded.
+     *     Queries issued in the meantime see the databases that have been added so far.
+     * </p>
+     *
+     * @param fileNames a <tt>Collection</tt> of file names to be turned into <tt>ChemDB</tt>s
+     * @param threads the maximum number of files to be loaded at the same time
+     * @return a <tt>Map</tt> from each file name to the <tt>CompletableFuture</tt> of its <tt>ChemDB</tt>
+     *
+     * @see ChemDBManager#ChemDBManager(Collection, int)
+     * @since 00.02.00
+     */
+    public Map<String, CompletableFuture<ChemDB>> addDatabasesAsync(Collection<String> fileNames, int threads) {
+        Map<String, CompletableFuture<ChemDB>> futures = new LinkedHashMap<>();
+        for(Map.Entry<String, CompletableFuture<ChemDB>> entry : loadAsync(fileNames, threads).entrySet()) {
+            futures.put(entry.getKey(), entry.getValue().thenApply(chemDB -> {
+                addDatabase(chemDB);
+                return chemDB;
+            }));
+        }
+        return futures;
+    }
+
     /**
      * Used to query for <tt>Chemical</tt>s that match each other in their NFPA 704 ratings.
      * <p>
@@ -123,13 +434,19 @@ public class ChemDBManager implements ChemDBInterface{
      */
     @Override
     public Collection<Chemical> queryChemNFPA(Chemical query, boolean special) {
-        List<Chemical> results = new ArrayList<>();
-        for(ChemDB chemDB : databases) {
-            results.addAll(chemDB.queryChemNFPA(query, special));
+        ChemQueryCache cache = queryCache;
+        int signature = ChemSignature.of(query.getProps(), special ? query.getSpecials() : null);
+        if(cache == null || signature == ChemSignature.NONE) {
+            return gather(chemDB -> chemDB.queryChemNFPA(query, special));
         }
 
+        List<Chemical> results = cache.get(signature, special);
+        if(results == null) {
+            long generation = cache.getGeneration();
+            results = cache.put(signature, special, generation,
+                    gather(chemDB -> chemDB.queryChemNFPA(query, special)));
+        }
         return results;
-        //return removeDuplicates(results, CID);
     }
 
     /**
@@ -170,53 +487,347 @@ public class ChemDBManager implements ChemDBInterface{
     }
 
 
+    /**
+     * Used to pass each <tt>Chemical</tt> matching the given NFPA 704 ratings to a consumer.
+     * <p>
+     * Visits the managed <tt>ChemDB</tt>s one after another (even if parallel queries are enabled) and
+     * bypasses the query cache, so that the query allocates nothing.
+     * </p>
+     *
+     * @param health the health rating to be matched
+     * @param flammability the flammability rating to be matched
+     * @param reactivity the reactivity rating to be matched
+     * @param specials the special symbols to be matched, as a bit mask
+     * @param special whether the special symbols should be taken into account in comparisons
+     * @param action the <tt>Consumer</tt> receiving each matching <tt>Chemical</tt>
+     * @return the number of matching <tt>Chemical</tt>s
+     *
+     * @since 00.02.00
+     */
+    @Override
+    public int forEachNFPA(int health, int flammability, int reactivity, int specials, boolean special,
+                           Consumer<? super Chemical> action) {
+        // The array is never changed once published, so databases removed meanwhile are neither
+        // skipped nor visited twice
+        ChemDB[] snapshot = databaseArray;
+        int count = 0;
+        for(int i = 0; i < snapshot.length; i++) {
+            count += snapshot[i].forEachNFPA(health, flammability, reactivity, specials, special, action);
+        }
+        return count;
+    }
+
+    /**
+     * Used to add each <tt>Chemical</tt> matching the given NFPA 704 ratings to a caller-supplied buffer.
+     * <p>
+     * See {@link ChemDBManager#forEachNFPA(int, int, int, int, boolean, Consumer)}.
+     * </p>
+     *
+     * @param health the health rating to be matched
+     * @param flammability the flammability rating to be matched
+     * @param reactivity the reactivity rating to be matched
+     * @param specials the special symbols to be matched, as a bit mask
+     * @param special whether the special symbols should be taken into account in comparisons
+     * @param results the <tt>Collection</tt> the matching <tt>Chemical</tt>s are added to
+     * @return the number of matching <tt>Chemical</tt>s
+     *
+     * @since 00.02.00
+     */
+    @Override
+    public int queryNFPA(int health, int flammability, int reactivity, int specials, boolean special,
+                         Collection<? super Chemical> results) {
+        ChemDB[] snapshot = databaseArray;
+        int count = 0;
+        for(int i = 0; i < snapshot.length; i++) {
+            count += snapshot[i].queryNFPA(health, flammability, reactivity, specials, special, results);
+        }
+        return count;
+    }
+
+    /**
+     * Used to query for <tt>Chemical</tt>s whose NFPA 704 information falls inside of the given ranges.
+     * <p>
+     * Combines the results of all of the managed <tt>ChemDB</tt>s.
+     * </p>
+     *
+     * @param query the <tt>ChemQuery</tt> describing the ranges and special symbols to be matched
+     * @return a <tt>Collection</tt> of <tt>Chemical</tt>s matching the query
+     *
+     * @see com.tsaysoft.nfpacid3.ChemQuery
+     * @since 00.02.00
+     */
+    @Override
+    public Collection<Chemical> queryRangeNFPA(ChemQuery query) {
+        return gather(chemDB -> chemDB.queryRangeNFPA(query));
+    }
+
+
+    /**
+     * Used to count the <tt>Chemical</tt>s whose NFPA 704 information falls inside of the given ranges.
+     * <p>
+     * Adds up the counts of all of the managed <tt>ChemDB</tt>s; duplicates across databases are counted
+     * once per database.
+     * </p>
+     *
+     * @param query the <tt>ChemQuery</tt> describing the ranges and special symbols to be matched
+     * @return the <tt>ChemCounts</tt> of the matching chemicals
+     *
+     * @see ChemDBManager#countNFPAByDatabase(ChemQuery)
+     * @since 00.02.00
+     */
+    @Override
+    public ChemCounts countNFPA(ChemQuery query) {
+        ChemCounts counts = new ChemCounts();
+        for(ChemDB chemDB : databases) {
+            counts.addAll(chemDB.countNFPA(query));
+        }
+        return counts;
+    }
+
+    /**
+     * Used to count the <tt>Chemical</tt>s whose NFPA 704 information falls inside of the given ranges,
+     * separately for each managed database.
+     *
+     * @param query the <tt>ChemQuery</tt> describing the ranges and special symbols to be matched
+     * @return a <tt>Map</tt> from each <tt>ChemDB</tt> to the <tt>ChemCounts</tt> of its matching chemicals,
+     *     in database order
+     *
+     * @see ChemDBManager#countNFPA(ChemQuery)
+     * @since 00.02.00
+     */
+    public Map<ChemDB, ChemCounts> countNFPAByDatabase(ChemQuery query) {
+        Map<ChemDB, ChemCounts> counts = new LinkedHashMap<>();
+        for(ChemDB chemDB : databases) {
+            counts.put(chemDB, chemDB.countNFPA(query));
+        }
+        return counts;
+    }
+
+    /**
+     * Requests an ID type for the chemicals of all managed databases that match a query and do not have
+     * one yet.
+     * <p>
+     *     Names shared by several databases are only requested once.
+     *     See {@link ChemIDEnricher#enrich(List, ChemID, ChemQuery)}.
+     * </p>
+     *
+     * @param idType the ID type to be requested
+     * @param query the ranges the chemicals must match, or <tt>null</tt> for all chemicals
+     * @param enricher the <tt>ChemIDEnricher</tt> that makes the requests
+     * @return a <tt>CompletableFuture</tt> with the number of chemicals given an ID
+     * @throws UnsupportedOperationException if any of the managed databases is an opened snapshot
+     *
+     * @see ChemDB#enrichIDs(ChemID, ChemQuery, ChemIDEnricher)
+     * @since 00.02.00
+     */
+    public CompletableFuture<Integer> enrichIDs(ChemID idType, ChemQuery query, ChemIDEnricher enricher) {
+        return enricher.enrich(databases, idType, query);
+    }
+
+    /**
+     * Used to find the <tt>Chemical</tt>s whose NFPA 704 information is closest to a query's.
+     * <p>
+     * Searches all of the managed <tt>ChemDB</tt>s together; chemicals the same distance away are
+     * returned in database order.
+     * </p>
+     *
+     * @param query the chemical with properties and special symbols to be queried
+     * @param k the maximum number of <tt>Chemical</tt>s to be returned
+     * @param distance the <tt>ChemDistance</tt> used to weigh the differences
+     * @return a <tt>List</tt> of at most <tt>k</tt> <tt>Chemical</tt>s, nearest first
+     *
+     * @see ChemDBInterface#queryNearestNFPA(Chemical, int, ChemDistance)
+     * @since 00.02.00
+     */
+    @Override
+    public List<Chemical> queryNearestNFPA(Chemical query, int k, ChemDistance distance) {
+        return ChemDB.queryNearestNFPA(databases, query, k, distance);
+    }
+
+    /**
+     * Used to answer many NFPA 704 queries at once.
+     * <p>
+     * Each managed <tt>ChemDB</tt> is visited once for the whole batch, and each distinct signature among
+     * the queries is a single bucket lookup per <tt>ChemDB</tt>.
+     * </p>
+     *
+     * @param queries the chemicals with properties to be queried
+     * @param special whether the special symbols should be taken into account in comparisons
+     * @return a <tt>Map</tt> from each query to the <tt>Chemical</tt>s matching it, in the order of the queries
+     *
+     * @see ChemDBInterface#queryBatchNFPA(Collection, boolean)
+     * @since 00.02.00
+     */
+    @Override
+    public Map<Chemical, Collection<Chemical>> queryBatchNFPA(Collection<Chemical> queries, boolean special) {
+        return ChemDB.queryBatchNFPA(databases, queries, special);
+    }
+
+    /**
+     * Used to stream the <tt>Chemical</tt>s that match each other in their NFPA 704 ratings.
+     * <p>
+     * Streams the results of the managed <tt>ChemDB</tt>s one after another; a parallel stream splits
+     * the work across databases first and then within them.
+     * </p>
+     *
+     * @param query the chemical with properties to be queried
+     * @param special whether the special symbols should be taken into account in comparisons
+     * @return a <tt>Stream</tt> of <tt>Chemical</tt>s matching the properties and/or specials
+     *
+     * @since 00.02.00
+     */
+    @Override
+    public Stream<Chemical> streamChemNFPA(Chemical query, boolean special) {
+        int signature = ChemSignature.of(query.getProps(), special ? query.getSpecials() : null);
+        if(signature == ChemSignature.NONE) {
+            return Stream.empty();
+        }
+        return concat(chemDB -> chemDB.spliterator(signature, special));
+    }
+
+    /**
+     * Used to stream the <tt>Chemical</tt>s whose NFPA 704 information falls inside of the given ranges.
+     * <p>
+     * See {@link ChemDBManager#streamChemNFPA(Chemical, boolean)}.
+     * </p>
+     *
+     * @param query the <tt>ChemQuery</tt> describing the ranges and special symbols to be matched
+     * @return a <tt>Stream</tt> of <tt>Chemical</tt>s matching the query
+     *
+     * @since 00.02.00
+     */
+    @Override
+    public Stream<Chemical> streamRangeNFPA(ChemQuery query) {
+        return concat(chemDB -> chemDB.spliterator(query));
+    }
+
+
     // --------------------
     // PRIVATE UTILITY METHODS
     // --------------------
 
     /**
-     * TODO: Fix this so that it works. As of now, will fail if chemical IDs cannot be obtained.
-     * Removes duplicate <tt>Chemical</tt>s from an <tt>ArrayList</tt>.
+     * Streams the <tt>Spliterator</tt>s of every managed <tt>ChemDB</tt> one after another.
+     */
+    private Stream<Chemical> concat(Function<ChemDB, Spliterator<Chemical>> spliterator) {
+        List<Spliterator<Chemical>> parts = new ArrayList<>();
+        for(ChemDB chemDB : databases) {
+            parts.add(spliterator.apply(chemDB));
+        }
+        return StreamSupport.stream(new ConcatSpliterator<>(parts, 0, parts.size()), false);
+    }
+
+    /**
+     * Drops any cached query results after the databases have changed.
+     */
+    private void invalidateCache() {
+        ChemQueryCache cache = queryCache;
+        if(cache != null) {
+            cache.invalidate();
+        }
+    }
+
+    /**
+     * Runs a query on every managed <tt>ChemDB</tt> and merges the results.
      * <p>
-     *     Duplication is determined by comparing chemical ID tokens.
-     *     The type of <tt>ChemID</tt> compared is determined by a method argument.
+     *     Each database's results are collected separately (in parallel if enabled), so no lock is needed,
+     *     and are then copied into a single <tt>List</tt> sized to fit all of them.
      * </p>
-     * @param chemList the <tt>List</tt> of <tt>Chemical</tt>s to be cleaned
-     * @param id the <tt>ChemID</tt> type to be used for duplicate determination
-     * @return the cleaned <tt>Collection</tt> of <tt>Chemical</tt>s, free from duplicates
-     *
-     * @since N/A
+     * @param query the query to be run on each <tt>ChemDB</tt>
+     * @return the merged results, in database order
      */
-    private Collection<Chemical> removeDuplicates(List<Chemical> chemList, ChemID id) {
-        // Declare variables
-        Chemical tempOrigin;
-        Chemical tempInsertion;
+    private List<Chemical> gather(Function<ChemDB, Collection<Chemical>> query) {
+        List<ChemDB> snapshot = new ArrayList<>(databases);
+        List<Collection<Chemical>> parts;
+        if(parallelQueries && snapshot.size() > 1) {
+            parts = snapshot.parallelStream().map(query).collect(Collectors.toList());
+        } else {
+            parts = new ArrayList<>(snapshot.size());
+            for(ChemDB chemDB : snapshot) {
+                parts.add(query.apply(chemDB));
+            }
+        }
 
-        // Generate IDs for each of the chemicals in the list
-        for(Chemical c : chemList) {
-            c.genChemID(id);
+        int total = 0;
+        for(Collection<Chemical> part : parts) {
+            total += part.size();
+        }
+        List<Chemical> results = new ArrayList<>(total);
+        for(Collection<Chemical> part : parts) {
+            results.addAll(part);
         }
+        return results;
+    }
 
-        // Set the chemicals that match each other in ID to have null names
-        for(int i = 0; i < chemList.size()-1; i++) {
-            tempOrigin = chemList.get(i);
-            for (int j = i+1; j < chemList.size(); j++) {
-                tempInsertion = chemList.get(j);
-                if(tempInsertion.getName() != null &&
-                        tempInsertion.getID(id).equals(tempOrigin.getID(id))) {
-                    tempInsertion.setName(null);
-                }
+    /**
+     * Starts loading files into <tt>ChemDB</tt>s on a bounded pool of threads.
+     * <p>
+     *     The pool is shut down once every file has been submitted, so its threads exit after the last load.
+     * </p>
+     * @param fileNames the names of the files to be loaded
+     * @param threads the maximum number of files to be loaded at the same time
+     * @return a <tt>Map</tt> from each file name to the <tt>CompletableFuture</tt> of its <tt>ChemDB</tt>
+     */
+    private static Map<String, CompletableFuture<ChemDB>> loadAsync(Collection<String> fileNames, int threads) {
+        Map<String, CompletableFuture<ChemDB>> futures = new LinkedHashMap<>();
+        if(fileNames.isEmpty()) {
+            return futures;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, fileNames.size())));
+        try {
+            for(String fileName : fileNames) {
+                futures.put(fileName, CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return ChemDB.load(fileName, ChemStorage.OBJECT);
+                    } catch (IOException e) {
+                        throw new CompletionException(e);
+                    }
+                }, executor));
             }
+        } finally {
+            executor.shutdown();
         }
+        return futures;
+    }
+
+    /**
+     * Removes duplicate <tt>Chemical</tt>s from a <tt>Collection</tt> in linear time.
+     * <p>
+     *     A <tt>Chemical</tt> is a duplicate if an earlier one has the same normalized name
+     *     (see {@link Chemical#normalizeName(String)}) or the same already generated ID of the given type.
+     *     IDs are <b>not</b> generated, so this never waits on the network; <tt>Chemical</tt>s without an ID
+     *     are compared by name only. The first of each group of duplicates is kept.
+     * </p>
+     * @param chemList the <tt>Collection</tt> of <tt>Chemical</tt>s to be cleaned (not modified)
+     * @param id the <tt>ChemID</tt> type to be used for duplicate determination, or <tt>null</tt> for names only
+     * @return a new <tt>List</tt> of the <tt>Chemical</tt>s, free from duplicates
+     *
+     * @since 00.02.00
+     */
+    public static List<Chemical> removeDuplicates(Collection<Chemical> chemList, ChemID id) {
+        Set<String> names = new HashSet<>();
+        Set<String> ids = new HashSet<>();
+        List<Chemical> results = new ArrayList<>(chemList.size());
 
-        // Remove all chemicals that have null names
-        for(int i = chemList.size()-1; i >= 0; i--) {
-            if(chemList.get(i).getName() == null) {
-                chemList.remove(i);
+        for(Chemical chem : chemList) {
+            String name = Chemical.normalizeName(chem.getName());
+            String chemID = id == null ? null : chem.getID(id);
+            boolean duplicate = false;
+
+            // Record the keys even for duplicates so that chains of matches are caught
+            if(name != null && !name.isEmpty() && !names.add(name)) {
+                duplicate = true;
+            }
+            if(chemID != null && !ids.add(chemID)) {
+                duplicate = true;
+            }
+            if(!duplicate) {
+                results.add(chem);
             }
         }
 
-        return chemList;
+        return results;
     }
 
 }
@@ -0,0 +1,229 @@
+package com.tsaysoft.nfpacid3;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+/**
+ * Watches the files backing {@link ChemDB}s and reloads them when they change.
+ * <p>
+ *     The directories of the watched files are registered with a <tt>WatchService</tt>, which is polled
+ *     by a single background (daemon) thread. Once a file has stopped changing for a short quiet period,
+ *     every <tt>ChemDB</tt> loaded from it is rebuilt with {@link ChemDB#reload()} on that thread and swapped
+ *     in atomically, so queries never block on a reload.
+ *     Files that cannot be reloaded (e.g. because they are only partially written) are reported to the
+ *     console and the <tt>ChemDB</tt> keeps its old data until the next change. So does a <tt>ChemDB</tt>
+ *     with unsaved changes (see {@link ChemDB#hasUnsavedChanges()}), which the file would overwrite.
+ * </p>
+ *
+ * @see com.tsaysoft.nfpacid3.ChemDBManager#setLiveReload(boolean)
+ *
+ * @author Clay Tsay
+ * @version 00.02.00
+ */
+public class ChemDBWatcher implements Closeable {
+
+    // --------------------
+    // VARIABLES AND DATA
+    // --------------------
+
+    /**
+     * How long a file has to stay unchanged before it is reloaded, in milliseconds.
+     */
+    private static final long QUIET_MILLIS = 200;
+
+    private final WatchService watchService;
+
+    /**
+     * The watched <tt>ChemDB</tt>s, by the absolute path of their files.
+     */
+    private final Map<Path, List<ChemDB>> watched = new HashMap<>();
+
+    /**
+     * The directories already registered with the <tt>WatchService</tt>.
+     */
+    private final Set<Path> directories = new LinkedHashSet<>();
+
+    /**
+     * Called on the watcher thread after each successful reload.
+     */
+    private final Consumer<ChemDB> onReload;
+
+    private final Thread thread;
+
+
+
+    // --------------------
+    // CONSTRUCTORS
+    // --------------------
+
+    /**
+     * Constructs a <tt>ChemDBWatcher</tt> and starts its background thread.
+     *
+     * @param onReload called with each <tt>ChemDB</tt> after it has been reloaded (may be <tt>null</tt>)
+     * @throws IOException if the <tt>WatchService</tt> cannot be created
+     *
+     * @since 00.02.00
+     */
+    public ChemDBWatcher(Consumer<ChemDB> onReload) throws IOException {
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.onReload = onReload;
+        this.thread = new Thread(this::run, "ChemDBWatcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+
+
+    // --------------------
+    // PUBLIC UTILITY METHODS
+    // --------------------
+
+    /**
+     * Starts watching the file a <tt>ChemDB</tt> was loaded from.
+     *
+     * @param chemDB the <tt>ChemDB</tt> to be reloaded when its file changes
+     * @throws IOException if the file's directory cannot be watched
+     * @throws UnsupportedOperationException if the <tt>ChemDB</tt> was not loaded from a file
+     *
+     * @since 00.02.00
+     */
+    public synchronized void watch(ChemDB chemDB) throws IOException {
+        if(chemDB.getFileName() == null) {
+            throw new UnsupportedOperationException("ChemDB was not loaded from a file");
+        }
+        Path file = Paths.get(chemDB.getFileName()).toAbsolutePath().normalize();
+        Path directory = file.getParent();
+        if(directories.add(directory)) {
+            try {
+                directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+            } catch (IOException e) {
+                directories.remove(directory);
+                throw e;
+            }
+        }
+        watched.computeIfAbsent(file, f -> new ArrayList<>()).add(chemDB);
+    }
+
+    /**
+     * Stops watching the file of a <tt>ChemDB</tt>.
+     *
+     * @param chemDB the <tt>ChemDB</tt> to no longer be reloaded
+     *
+     * @since 00.02.00
+     */
+    public synchronized void unwatch(ChemDB chemDB) {
+        if(chemDB.getFileName() == null) {
+            return;
+        }
+        Path file = Paths.get(chemDB.getFileName()).toAbsolutePath().normalize();
+        List<ChemDB> chemDBs = watched.get(file);
+        if(chemDBs != null) {
+            chemDBs.removeIf(c -> c == chemDB);
+            if(chemDBs.isEmpty()) {
+                watched.remove(file);
+            }
+        }
+    }
+
+    /**
+     * Stops the background thread and releases the <tt>WatchService</tt>.
+     *
+     * @throws IOException if the <tt>WatchService</tt> cannot be closed
+     *
+     * @since 00.02.00
+     */
+    @Override
+    public void close() throws IOException {
+        thread.interrupt();
+        watchService.close();
+    }
+
+
+
+    // --------------------
+    // PRIVATE UTILITY METHODS
+    // --------------------
+
+    /**
+     * Waits for changes and reloads the affected <tt>ChemDB</tt>s until the watcher is closed.
+     */
+    private void run() {
+        try {
+            while(true) {
+                Set<Path> changed = new LinkedHashSet<>();
+                collect(watchService.take(), changed);
+
+                // Editors often write a file in several steps; wait until it has been quiet for a while
+                WatchKey key;
+                while((key = watchService.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    collect(key, changed);
+                }
+
+                for(Path file : changed) {
+                    reload(file);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // The watcher has been closed
+        }
+    }
+
+    /**
+     * Adds the files named by a <tt>WatchKey</tt>'s events to a <tt>Set</tt> and resets the key.
+     */
+    private void collect(WatchKey key, Set<Path> changed) {
+        Path directory = (Path) key.watchable();
+        for(WatchEvent<?> event : key.pollEvents()) {
+            if(event.context() instanceof Path) {
+                changed.add(directory.resolve((Path) event.context()).toAbsolutePath().normalize());
+            }
+        }
+        key.reset();
+    }
+
+    /**
+     * Reloads every <tt>ChemDB</tt> watching a file.
+     */
+    private void reload(Path file) {
+        List<ChemDB> chemDBs;
+        synchronized(this) {
+            List<ChemDB> current = watched.get(file);
+            if(current == null) {
+                return;
+            }
+            chemDBs = new ArrayList<>(current);
+        }
+
+        for(ChemDB chemDB : chemDBs) {
+            try {
+                chemDB.reload();
+                if(onReload != null) {
+                    onReload.accept(chemDB);
+                }
+            } catch (IOException | RuntimeException e) {
+                // Databases with unsaved changes (e.g. new IDs) are left alone rather than overwritten, and a
+                // malformed file (e.g. a JSONException) must not stop the reloading of the other databases
+                System.out.println(e + " - database could not be properly reloaded");
+            }
+        }
+    }
+
+}
@@ -0,0 +1,171 @@
+package com.tsaysoft.nfpacid3;
+
+import java.util.EnumMap;
+
+/**
+ * Describes how far apart two chemicals' NFPA 704 information is.
+ * <p>
+ *     The distance is a weighted sum: each {@link ChemProp} contributes its weight times the difference
+ *     between the two ratings, and each {@link ChemSpecial} contributes its weight if only one of the
+ *     two chemicals has the symbol.
+ *     A newly constructed <tt>ChemDistance</tt> weighs everything equally (a weight of 1).
+ * </p>
+ * <p>
+ *     For example, to care twice as much about health as about the other ratings and to ignore whether
+ *     a chemical is a simple asphyxiant:
+ *     <pre>
+ *     ChemDistance distance = new ChemDistance();
+ *     distance.setWeight(ChemProp.HEALTH, 2);
+ *     distance.setWeight(ChemSpecial.SIMPLE_ASPHYXIANT, 0);
+ *     </pre>
+ * </p>
+ *
+ * @see com.tsaysoft.nfpacid3.ChemDBInterface#queryNearestNFPA(Chemical, int, ChemDistance)
+ *
+ * @author Clay Tsay
+ * @version 00.02.00
+ */
+public class ChemDistance {
+
+    // --------------------
+    // VARIABLES AND DATA
+    // --------------------
+
+    private EnumMap<ChemProp, Double> propWeights = new EnumMap<>(ChemProp.class);
+    private EnumMap<ChemSpecial, Double> specialWeights = new EnumMap<>(ChemSpecial.class);
+
+
+
+    // --------------------
+    // CONSTRUCTORS
+    // --------------------
+
+    /**
+     * Constructs a <tt>ChemDistance</tt> that weighs every rating and special symbol equally.
+     *
+     * @since 00.02.00
+     */
+    public ChemDistance() {
+        super();
+        for(ChemProp prop : ChemProp.values()) {
+            propWeights.put(prop, 1.0);
+        }
+        for(ChemSpecial symbol : ChemSpecial.values()) {
+            specialWeights.put(symbol, 1.0);
+        }
+    }
+
+
+
+    // --------------------
+    // GETTERS AND SETTERS
+    // --------------------
+
+    /**
+     * Gets the weight of a difference of one in a hazard rating.
+     * @param prop the <tt>ChemProp</tt> rating
+     * @return the weight as a <tt>double</tt>
+     *
+     * @since 00.02.00
+     */
+    public double getWeight(ChemProp prop) {
+        return propWeights.get(prop);
+    }
+
+    /**
+     * Sets the weight of a difference of one in a hazard rating.
+     * @param prop the <tt>ChemProp</tt> rating
+     * @param weight the new weight (not negative)
+     * @throws IllegalArgumentException if the weight is negative or not a number
+     *
+     * @since 00.02.00
+     */
+    public void setWeight(ChemProp prop, double weight) {
+        propWeights.put(prop, checkWeight(weight));
+    }
+
+    /**
+     * Gets the weight of a special symbol that only one of two chemicals has.
+     * @param symbol the <tt>ChemSpecial</tt> symbol
+     * @return the weight as a <tt>double</tt>
+     *
+     * @since 00.02.00
+     */
+    public double getWeight(ChemSpecial symbol) {
+        return specialWeights.get(symbol);
+    }
+
+    /**
+     * Sets the weight of a special symbol that only one of two chemicals has.
+     * @param symbol the <tt>ChemSpecial</tt> symbol
+     * @param weight the new weight (not negative)
+     * @throws IllegalArgumentException if the weight is negative or not a number
+     *
+     * @since 00.02.00
+     */
+    public void setWeight(ChemSpecial symbol, double weight) {
+        specialWeights.put(symbol, checkWeight(weight));
+    }
+
+
+
+    // --------------------
+    // PUBLIC UTILITY METHODS
+    // --------------------
+
+    /**
+     * Calculates the distance between two <tt>Chemical</tt>s.
+     *
+     * @param a one <tt>Chemical</tt>
+     * @param b the other <tt>Chemical</tt>
+     * @return the distance, or <tt>Double.NaN</tt> if either <tt>Chemical</tt>'s NFPA information cannot be packed
+     *
+     * @since 00.02.00
+     */
+    public double distance(Chemical a, Chemical b) {
+        int sigA = ChemSignature.of(a);
+        int sigB = ChemSignature.of(b);
+        if(sigA == ChemSignature.NONE || sigB == ChemSignature.NONE) {
+            return Double.NaN;
+        }
+        return distance(sigA, sigB);
+    }
+
+    /**
+     * Calculates the distance between two {@link ChemSignature}s.
+     *
+     * @param sigA one valid signature
+     * @param sigB the other valid signature
+     * @return the distance as a <tt>double</tt>
+     *
+     * @since 00.02.00
+     */
+    public double distance(int sigA, int sigB) {
+        double distance = 0;
+        for(ChemProp prop : ChemProp.values()) {
+            int difference = ChemSignature.getProp(sigA, prop) - ChemSignature.getProp(sigB, prop);
+            distance += propWeights.get(prop) * Math.abs(difference);
+        }
+        int differentSpecials = ChemSignature.getSpecials(sigA) ^ ChemSignature.getSpecials(sigB);
+        for(ChemSpecial symbol : ChemSpecial.values()) {
+            if((differentSpecials & (1 << symbol.ordinal())) != 0) {
+                distance += specialWeights.get(symbol);
+            }
+        }
+        return distance;
+    }
+
+
+
+    // --------------------
+    // PRIVATE UTILITY METHODS
+    // --------------------
+
+    private static double checkWeight(double weight) {
+        if(!(weight >= 0)) {
+            throw new IllegalArgumentException("weight must not be negative: " + weight);
+        }
+        return weight;
+    }
+
+}
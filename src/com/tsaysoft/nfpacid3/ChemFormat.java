@@ -0,0 +1,247 @@
+package com.tsaysoft.nfpacid3;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * The built-in {@link ChemLoader}s.
+ *
+ * @see com.tsaysoft.nfpacid3.ChemLoaders
+ *
+ * @author Clay Tsay
+ * @version 00.02.00
+ */
+enum ChemFormat implements ChemLoader {
+
+    /**
+     * Binary snapshots written by {@link ChemDB#writeSnapshot(String)}, detected by their magic bytes.
+     * <p>
+     *     Only the names and NFPA 704 information are loaded; use {@link ChemDB#openSnapshot(String)} to keep
+     *     the stored IDs and to map the snapshot instead of copying it.
+     * </p>
+     */
+    SNAPSHOT("Snapshot") {
+        @Override
+        public boolean accepts(String fileName, byte[] head) {
+            return startsWith(head, ChemSnapshot.MAGIC);
+        }
+
+        @Override
+        public int load(Path file, ChemSink sink) throws IOException {
+            ChemStore store = ChemSnapshot.open(file.toString()).store;
+            int count = 0;
+            for(int row = 0; row < store.size(); row++) {
+                int signature = store.getSignature(row);
+                sink.add(store.getName(row),
+                        ChemSignature.getProp(signature, ChemProp.HEALTH),
+                        ChemSignature.getProp(signature, ChemProp.FLAMMABILITY),
+                        ChemSignature.getProp(signature, ChemProp.REACTIVITY),
+                        ChemSignature.getSpecials(signature));
+                count++;
+            }
+            return count;
+        }
+    },
+
+    /**
+     * RFC 4180 CSV files (see {@link ChemCSVReader}), detected by the <tt>.csv</tt> extension.
+     */
+    CSV("CSV") {
+        @Override
+        public boolean accepts(String fileName, byte[] head) {
+            return hasExtension(fileName, ".csv");
+        }
+
+        @Override
+        public int load(Path file, ChemSink sink) throws IOException {
+            try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                return new ChemCSVReader(reader, sink).readAll();
+            }
+        }
+
+        @Override
+        public int load(Path file, ChemSink sink, int threads) throws IOException {
+            return ChemCSVReader.readParallel(file, sink, threads);
+        }
+    },
+
+    /**
+     * XML files with one element per chemical, holding <tt>NAME</tt>, <tt>HEALTH</tt>, <tt>FLAMMABILITY</tt>,
+     * <tt>REACTIVITY</tt> and <tt>SPECIAL</tt> elements; detected by the <tt>.xml</tt> extension or a leading
+     * <tt>&lt;</tt>.
+     * <p>
+     *     Converted with {@link org.json.XML#toJSONObject(String, boolean)}, so the whole file is read into memory.
+     *     The chemical elements can be nested at any depth.
+     * </p>
+     */
+    XML("XML") {
+        @Override
+        public boolean accepts(String fileName, byte[] head) {
+            return hasExtension(fileName, ".xml") || firstChar(head) == '<';
+        }
+
+        @Override
+        public int load(Path file, ChemSink sink) throws IOException {
+            String text = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+            try {
+                return addRecords(org.json.XML.toJSONObject(text, true), sink);
+            } catch (JSONException e) {
+                throw new IOException("malformed XML dataset " + file, e);
+            }
+        }
+    },
+
+    /**
+     * JSON Lines files with one chemical object per line, detected by the <tt>.jsonl</tt> or <tt>.ndjson</tt>
+     * extensions or a leading <tt>{</tt>.
+     */
+    JSON_LINES("JSON Lines") {
+        @Override
+        public boolean accepts(String fileName, byte[] head) {
+            return hasExtension(fileName, ".jsonl") || hasExtension(fileName, ".ndjson") || firstChar(head) == '{';
+        }
+
+        @Override
+        public int load(Path file, ChemSink sink) throws IOException {
+            try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                return new ChemJSONReader(reader, sink).readLines();
+            } catch (JSONException e) {
+                throw new IOException("malformed JSON Lines dataset " + file, e);
+            }
+        }
+
+        @Override
+        public int load(Path file, ChemSink sink, int threads) throws IOException {
+            return ChemJSONReader.readParallel(file, sink, threads);
+        }
+    },
+
+    /**
+     * JSON arrays of chemical objects (see {@link ChemJSONReader}), detected by the <tt>.json</tt> extension
+     * or a leading <tt>[</tt>.
+     */
+    JSON("JSON") {
+        @Override
+        public boolean accepts(String fileName, byte[] head) {
+            return hasExtension(fileName, ".json") || firstChar(head) == '[';
+        }
+
+        @Override
+        public int load(Path file, ChemSink sink) throws IOException {
+            try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                return new ChemJSONReader(reader, sink).readAll();
+            } catch (JSONException e) {
+                throw new IOException("malformed JSON dataset " + file, e);
+            }
+        }
+    };
+
+
+
+    // --------------------
+    // VARIABLES AND DATA
+    // --------------------
+
+    private final String name;
+
+
+
+    // --------------------
+    // CONSTRUCTORS
+    // --------------------
+
+    ChemFormat(String name) {
+        this.name = name;
+    }
+
+
+
+    // --------------------
+    // GETTERS AND SETTERS
+    // --------------------
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+
+
+    // --------------------
+    // PRIVATE UTILITY METHODS
+    // --------------------
+
+    private static boolean hasExtension(String fileName, String extension) {
+        return fileName.toLowerCase(Locale.ROOT).endsWith(extension);
+    }
+
+    private static boolean startsWith(byte[] head, byte[] prefix) {
+        if(head.length < prefix.length) {
+            return false;
+        }
+        for(int i = 0; i < prefix.length; i++) {
+            if(head[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the first character of a file that is not whitespace or a UTF-8 byte order mark.
+     *
+     * @return the character, or <tt>0</tt> if there is none among the given bytes
+     */
+    private static char firstChar(byte[] head) {
+        int i = startsWith(head, new byte[] {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF}) ? 3 : 0;
+        for(; i < head.length; i++) {
+            if(head[i] > ' ') {
+                return (char) head[i];
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Adds every chemical object found in a converted XML document to a sink.
+     *
+     * @return the number of chemicals added
+     */
+    private static int addRecords(Object value, ChemSink sink) {
+        int count = 0;
+        if(value instanceof JSONArray) {
+            for(Object element : (JSONArray) value) {
+                count += addRecords(element, sink);
+            }
+        } else if(value instanceof JSONObject) {
+            JSONObject object = (JSONObject) value;
+            if(!object.has("NAME")) {
+                for(String key : object.keySet()) {
+                    count += addRecords(object.get(key), sink);
+                }
+                return count;
+            }
+            try {
+                sink.add(object.getString("NAME"),
+                        Integer.parseInt(object.get("HEALTH").toString().trim()),
+                        Integer.parseInt(object.get("FLAMMABILITY").toString().trim()),
+                        Integer.parseInt(object.get("REACTIVITY").toString().trim()),
+                        ChemSignature.specialMask(object.get("SPECIAL").toString()));
+                count++;
+            } catch (IllegalArgumentException | JSONException e) {
+                // Includes NumberFormatException
+                System.out.println(e + " - chemical could not be properly loaded");
+            }
+        }
+        return count;
+    }
+
+}
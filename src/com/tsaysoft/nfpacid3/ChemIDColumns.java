@@ -0,0 +1,115 @@
+package com.tsaysoft.nfpacid3;
+
+import java.util.Arrays;
+
+/**
+ * The generated IDs of the rows of a {@link ChemStore}, one sparse column per {@link ChemID}.
+ * <p>
+ *     Each column is split into pages of {@link ChemIDColumns#PAGE_SIZE} rows; pages without any IDs are
+ *     never allocated. A fork (see {@link ChemIDColumns#fork()}) shares the pages and copies one only when it
+ *     first sets an ID in it, so IDs can be given to any row of a fork without changing the store it was
+ *     forked from, at a cost that does not depend on the number of rows.
+ * </p>
+ *
+ * @author Clay Tsay
+ * @version 00.02.00
+ */
+class ChemIDColumns {
+
+    // --------------------
+    // VARIABLES AND DATA
+    // --------------------
+
+    private static final int PAGE_BITS = 10;
+
+    /**
+     * The number of rows in a page.
+     */
+    static final int PAGE_SIZE = 1 << PAGE_BITS;
+
+    /**
+     * The pages of every column, indexed by ID type, page and row within the page.
+     */
+    private final String[][][] pages;
+
+    /**
+     * Whether each page was made by this instance, and may thus be changed in place.
+     */
+    private final boolean[][] owned;
+
+
+
+    // --------------------
+    // CONSTRUCTORS
+    // --------------------
+
+    ChemIDColumns() {
+        this(new String[ChemID.values().length][0][], new boolean[ChemID.values().length][0]);
+    }
+
+    private ChemIDColumns(String[][][] pages, boolean[][] owned) {
+        this.pages = pages;
+        this.owned = owned;
+    }
+
+
+
+    // --------------------
+    // PUBLIC UTILITY METHODS
+    // --------------------
+
+    /**
+     * Gets the ID of a row.
+     *
+     * @param row the row to be accessed
+     * @param idType the ID type requested
+     * @return the ID, or <tt>null</tt> if none is stored
+     */
+    String get(int row, ChemID idType) {
+        String[][] column = pages[idType.ordinal()];
+        int page = row >>> PAGE_BITS;
+        return page < column.length && column[page] != null ? column[page][row & (PAGE_SIZE - 1)] : null;
+    }
+
+    /**
+     * Sets the ID of a row, first copying its page if it is shared with another instance.
+     *
+     * @param row the row to be accessed
+     * @param idType the ID type to be set
+     * @param id the ID
+     */
+    void set(int row, ChemID idType, String id) {
+        int type = idType.ordinal();
+        int page = row >>> PAGE_BITS;
+        if(page >= pages[type].length) {
+            int length = Math.max(page + 1, pages[type].length * 2);
+            pages[type] = Arrays.copyOf(pages[type], length);
+            owned[type] = Arrays.copyOf(owned[type], length);
+        }
+        if(!owned[type][page]) {
+            String[] shared = pages[type][page];
+            pages[type][page] = shared == null ? new String[PAGE_SIZE] : shared.clone();
+            owned[type][page] = true;
+        }
+        pages[type][page][row & (PAGE_SIZE - 1)] = id;
+    }
+
+    /**
+     * Creates columns holding the same IDs that can be changed without changing these ones.
+     * <p>
+     *     Only the tables of pages are copied; the pages themselves are shared until they are changed.
+     * </p>
+     *
+     * @return the new columns
+     */
+    ChemIDColumns fork() {
+        String[][][] pagesCopy = new String[pages.length][][];
+        boolean[][] ownedCopy = new boolean[pages.length][];
+        for(int type = 0; type < pages.length; type++) {
+            pagesCopy[type] = pages[type].clone();
+            ownedCopy[type] = new boolean[pages[type].length];
+        }
+        return new ChemIDColumns(pagesCopy, ownedCopy);
+    }
+
+}
@@ -0,0 +1,393 @@
+package com.tsaysoft.nfpacid3;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Requests the IDs of every chemical in one or more {@link ChemDB}s.
+ * <p>
+ *     Generating IDs one <tt>Chemical</tt> at a time (see {@link Chemical#genChemID(ChemID)}) costs a full
+ *     network round trip per chemical. A <tt>ChemIDEnricher</tt> instead keeps several requests in flight at
+ *     once through {@link IDGInterface#fetchIDAsync(String, ChemID)}, asks for every distinct name only once,
+ *     retries failed requests with exponential backoff and reports its progress as it goes.
+ * </p>
+ * <p>
+ *     The IDs are written into the databases in batches while the run goes on, and chemicals that already have
+ *     an ID are skipped, so an interrupted or cancelled run can simply be started again and will continue where
+ *     it stopped. Putting an {@link IDGCache} in front of the ID getter also keeps the answers across restarts.
+ *     Rate limits are set per service on the ID getters themselves (see {@link IDGAbstract#setRateLimit(double)}).
+ * </p>
+ *
+ * @see com.tsaysoft.nfpacid3.ChemDB#enrichIDs(ChemID, ChemQuery, ChemIDEnricher)
+ * @see com.tsaysoft.nfpacid3.ChemDBManager#enrichIDs(ChemID, ChemQuery, ChemIDEnricher)
+ *
+ * @author Clay Tsay
+ * @version 00.02.00
+ */
+public class ChemIDEnricher {
+
+    /**
+     * Receives the progress of a run.
+     * <p>
+     *     Called after every name, from the threads the requests complete on (one at a time).
+     * </p>
+     *
+     * @since 00.02.00
+     */
+    public interface ProgressListener {
+        /**
+         * @param done the number of names finished so far (with or without an ID)
+         * @param total the number of names in the run
+         * @param found the number of names an ID was found for so far
+         */
+        void progress(int done, int total, int found);
+    }
+
+    /**
+     * The state of a single run.
+     */
+    private static final class Run {
+        final List<ChemDB> databases;
+        final ChemID idType;
+        final Iterator<String> names;
+        final int total;
+        final ProgressListener listener;
+        final CompletableFuture<Integer> result = new CompletableFuture<>();
+
+        final AtomicInteger inFlight = new AtomicInteger();
+        int done = 0;
+        int found = 0;
+        int updated = 0;
+        Map<String, String> pending = new HashMap<>();
+
+        Run(List<ChemDB> databases, ChemID idType, Collection<String> names, ProgressListener listener) {
+            this.databases = databases;
+            this.idType = idType;
+            this.names = names.iterator();
+            this.total = names.size();
+            this.listener = listener;
+        }
+    }
+
+    // --------------------
+    // VARIABLES AND DATA
+    // --------------------
+
+    /**
+     * The default maximum number of requests in flight.
+     */
+    public static final int DEFAULT_CONCURRENCY = 8;
+
+    /**
+     * The default number of times a failed request is retried.
+     */
+    public static final int DEFAULT_RETRIES = 3;
+
+    /**
+     * The default wait before the first retry, in milliseconds; it doubles with every further retry.
+     */
+    public static final long DEFAULT_BACKOFF = 500;
+
+    private static final long MAX_BACKOFF = TimeUnit.SECONDS.toMillis(30);
+
+    // The number of found IDs collected before they are written into the databases
+    private static final int BATCH_SIZE = 256;
+
+    private final IDGInterface idg;
+
+    private volatile int concurrency = DEFAULT_CONCURRENCY;
+    private volatile int retries = DEFAULT_RETRIES;
+    private volatile long backoff = DEFAULT_BACKOFF;
+    private volatile ProgressListener listener;
+
+
+
+    // --------------------
+    // CONSTRUCTORS
+    // --------------------
+
+    /**
+     * Constructs a <tt>ChemIDEnricher</tt> that requests IDs from an ID getter.
+     *
+     * @param idg the ID getter (e.g. a {@link FiehnIDG}, possibly behind an {@link IDGCache})
+     *
+     * @since 00.02.00
+     */
+    public ChemIDEnricher(IDGInterface idg) {
+        this.idg = idg;
+    }
+
+
+
+    // --------------------
+    // GETTERS AND SETTERS
+    // --------------------
+
+    /**
+     * Gets the maximum number of requests in flight.
+     * @return the number of requests
+     *
+     * @since 00.02.00
+     */
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    /**
+     * Sets the maximum number of requests in flight, for runs started from now on.
+     * <p>
+     *     Requests are also bounded by the pool of the {@link IDGHttpClient}.
+     * </p>
+     * @param concurrency the number of requests
+     * @throws IllegalArgumentException if <tt>concurrency</tt> is not positive
+     *
+     * @since 00.02.00
+     */
+    public void setConcurrency(int concurrency) {
+        if(concurrency <= 0) {
+            throw new IllegalArgumentException("concurrency must be positive: " + concurrency);
+        }
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * Gets the number of times a failed request is retried.
+     * @return the number of retries
+     *
+     * @since 00.02.00
+     */
+    public int getRetries() {
+        return retries;
+    }
+
+    /**
+     * Sets the number of times a failed request is retried.
+     * <p>
+     *     Only failures that may go away are retried: timeouts, connection problems, <tt>429</tt> and server
+     *     errors. A service answering that it has no such ID is not a failure.
+     * </p>
+     * @param retries the number of retries
+     * @throws IllegalArgumentException if <tt>retries</tt> is negative
+     *
+     * @since 00.02.00
+     */
+    public void setRetries(int retries) {
+        if(retries < 0) {
+            throw new IllegalArgumentException("negative retries: " + retries);
+        }
+        this.retries = retries;
+    }
+
+    /**
+     * Gets the wait before the first retry.
+     * @return the wait in milliseconds
+     *
+     * @since 00.02.00
+     */
+    public long getBackoff() {
+        return backoff;
+    }
+
+    /**
+     * Sets the wait before the first retry; it doubles with every further retry (up to 30 seconds) and is
+     * randomly shortened by up to half, so that failed requests do not all come back at once.
+     * @param millis the wait in milliseconds
+     * @throws IllegalArgumentException if <tt>millis</tt> is negative
+     *
+     * @since 00.02.00
+     */
+    public void setBackoff(long millis) {
+        if(millis < 0) {
+            throw new IllegalArgumentException("negative backoff: " + millis);
+        }
+        this.backoff = millis;
+    }
+
+    /**
+     * Sets the <tt>ProgressListener</tt> of runs started from now on.
+     * @param listener the <tt>ProgressListener</tt>, or <tt>null</tt> for none
+     *
+     * @since 00.02.00
+     */
+    public void setProgressListener(ProgressListener listener) {
+        this.listener = listener;
+    }
+
+
+
+    // --------------------
+    // PUBLIC UTILITY METHODS
+    // --------------------
+
+    /**
+     * Requests an ID type for the chemicals of several <tt>ChemDB</tt>s that match a query and do not have
+     * one yet.
+     * <p>
+     *     Every distinct name (after normalization, see {@link Chemical#normalizeName(String)}) is requested once,
+     *     and its ID is given to every chemical with that name in all of the <tt>ChemDB</tt>s.
+     *     Names whose requests keep failing are reported to the console and left without an ID.
+     * </p>
+     * <p>
+     *     Cancelling the returned future stops further requests; IDs found by then are still written.
+     * </p>
+     *
+     * @param databases the <tt>ChemDB</tt>s to be enriched
+     * @param idType the ID type to be requested
+     * @param query the ranges the chemicals must match, or <tt>null</tt> for all chemicals
+     * @return a <tt>CompletableFuture</tt> with the number of chemicals given an ID
+     * @throws UnsupportedOperationException if any of the <tt>ChemDB</tt>s is an opened snapshot
+     *
+     * @since 00.02.00
+     */
+    public CompletableFuture<Integer> enrich(List<ChemDB> databases, ChemID idType, ChemQuery query) {
+        ChemQuery filter = query == null ? new ChemQuery() : query;
+        Map<String, String> names = new LinkedHashMap<>();
+        for(ChemDB chemDB : databases) {
+            for(String name : chemDB.namesWithoutID(idType, filter)) {
+                names.putIfAbsent(Chemical.normalizeName(name), name);
+            }
+        }
+
+        Run run = new Run(databases, idType, names.values(), listener);
+        int started = 0;
+        String name;
+        while(started < concurrency && (name = next(run)) != null) {
+            run.inFlight.incrementAndGet();
+            request(run, name);
+            started++;
+        }
+        if(started == 0) {
+            finish(run);
+        }
+        return run.result;
+    }
+
+
+
+    // --------------------
+    // PRIVATE UTILITY METHODS
+    // --------------------
+
+    /**
+     * Takes the next name of a run.
+     *
+     * @return the name, or <tt>null</tt> if there are no more names or the run was cancelled
+     */
+    private static String next(Run run) {
+        synchronized(run) {
+            return run.result.isDone() || !run.names.hasNext() ? null : run.names.next();
+        }
+    }
+
+    private void request(Run run, String name) {
+        attempt(name, run.idType, 0).whenCompleteAsync((id, e) -> {
+            if(e != null) {
+                System.out.println((e.getCause() != null ? e.getCause() : e) + " - ID unavailable");
+            }
+            try {
+                record(run, name, id);
+            } catch (RuntimeException failure) {
+                // Stops the run; the remaining requests in flight still finish
+                run.result.completeExceptionally(failure);
+            }
+
+            String nextName = next(run);
+            if(nextName != null) {
+                request(run, nextName);
+            } else if(run.inFlight.decrementAndGet() == 0) {
+                finish(run);
+            }
+        }, IDGHttpClient.getExecutor());
+    }
+
+    /**
+     * Requests an ID, retrying after a backoff if the request fails in a way that may go away.
+     */
+    private CompletableFuture<String> attempt(String name, ChemID idType, int retry) {
+        return idg.fetchIDAsync(name, idType).handle((id, e) -> {
+            if(e == null) {
+                return CompletableFuture.completedFuture(id);
+            }
+            if(retry >= retries || !isTransient(e)) {
+                CompletableFuture<String> failed = new CompletableFuture<>();
+                failed.completeExceptionally(e);
+                return failed;
+            }
+            long wait = Math.min(MAX_BACKOFF, backoff << Math.min(retry, 20));
+            wait -= (long) (ThreadLocalRandom.current().nextDouble() * wait / 2);
+            return CompletableFuture.runAsync(() -> { }, IDGHttpClient.delayedExecutor(wait, TimeUnit.MILLISECONDS))
+                    .thenCompose(ignored -> attempt(name, idType, retry + 1));
+        }).thenCompose(Function.identity());
+    }
+
+    private static boolean isTransient(Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        if(cause instanceof IDGHttpClient.StatusException) {
+            return ((IDGHttpClient.StatusException) cause).isTransient();
+        }
+        return cause instanceof IOException;
+    }
+
+    /**
+     * Records the answer for a name, writing the collected IDs into the databases once there are enough.
+     */
+    private static void record(Run run, String name, String id) {
+        Map<String, String> batch = null;
+        synchronized(run) {
+            run.done++;
+            if(id != null) {
+                run.found++;
+                run.pending.put(Chemical.normalizeName(name), id);
+                if(run.pending.size() >= BATCH_SIZE) {
+                    batch = run.pending;
+                    run.pending = new HashMap<>();
+                }
+            }
+            if(run.listener != null) {
+                run.listener.progress(run.done, run.total, run.found);
+            }
+        }
+        if(batch != null) {
+            write(run, batch);
+        }
+    }
+
+    private static void write(Run run, Map<String, String> batch) {
+        int updated = 0;
+        for(ChemDB chemDB : run.databases) {
+            updated += chemDB.setIDs(run.idType, batch);
+        }
+        synchronized(run) {
+            run.updated += updated;
+        }
+    }
+
+    private static void finish(Run run) {
+        Map<String, String> batch;
+        synchronized(run) {
+            batch = run.pending;
+            run.pending = new HashMap<>();
+        }
+        try {
+            write(run, batch);
+        } catch (RuntimeException e) {
+            run.result.completeExceptionally(e);
+            return;
+        }
+        synchronized(run) {
+            run.result.complete(run.updated);
+        }
+    }
+
+}
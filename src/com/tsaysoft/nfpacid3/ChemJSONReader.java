@@ -0,0 +1,288 @@
+package com.tsaysoft.nfpacid3;
+
+import org.json.JSONException;
+import org.json.JSONTokener;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streams a JSON dataset into a {@link ChemSink}.
+ * <p>
+ *     The dataset must be a JSON array of objects with the fields <tt>NAME</tt>, <tt>HEALTH</tt>,
+ *     <tt>FLAMMABILITY</tt>, <tt>REACTIVITY</tt> and <tt>SPECIAL</tt> (see the existing data sets),
+ *     or the same objects one after another without an array (JSON Lines).
+ *     The file is read through a {@link JSONTokener} one token at a time and every object is decoded
+ *     straight into the sink, so no <tt>JSONArray</tt> or <tt>JSONObject</tt>s are built and memory use
+ *     does not depend on the size of the file.
+ *     JSON Lines files can also be split into chunks that are parsed in parallel with
+ *     {@link ChemJSONReader#readParallel(Path, ChemSink, int)}.
+ * </p>
+ *
+ * @author Clay Tsay
+ * @version 00.02.00
+ */
+class ChemJSONReader {
+
+    // --------------------
+    // VARIABLES AND DATA
+    // --------------------
+
+    private final JSONTokener tokener;
+    private final ChemSink sink;
+
+    // Fields of the object currently being decoded
+    private String name;
+    private String health;
+    private String flammability;
+    private String reactivity;
+    private String special;
+
+
+
+    // --------------------
+    // CONSTRUCTORS
+    // --------------------
+
+    /**
+     * Constructs a <tt>ChemJSONReader</tt> that reads from a <tt>Reader</tt> into a <tt>ChemSink</tt>.
+     *
+     * @param reader the <tt>Reader</tt> supplying the JSON text
+     * @param sink the <tt>ChemSink</tt> receiving the chemicals
+     */
+    ChemJSONReader(Reader reader, ChemSink sink) {
+        this.tokener = new JSONTokener(reader);
+        this.sink = sink;
+    }
+
+
+
+    // --------------------
+    // PUBLIC UTILITY METHODS
+    // --------------------
+
+    /**
+     * Reads the whole JSON array.
+     * <p>
+     *     Chemicals that cannot be loaded (e.g. because of a non-numeric rating) are reported
+     *     to the console and skipped.
+     * </p>
+     *
+     * @return the number of chemicals added to the sink
+     * @throws JSONException if the text is not a JSON array of objects
+     */
+    int readAll() throws JSONException {
+        int count = 0;
+
+        if(tokener.nextClean() != '[') {
+            throw tokener.syntaxError("A JSON array text must start with '['");
+        }
+        if(tokener.nextClean() == ']') {
+            return count;
+        }
+        tokener.back();
+
+        while(true) {
+            readObject();
+            if(addObject()) {
+                count++;
+            }
+
+            switch(tokener.nextClean()) {
+                case ',':
+                    break;
+                case ']':
+                    return count;
+                default:
+                    throw tokener.syntaxError("Expected a ',' or ']'");
+            }
+        }
+    }
+
+
+
+    /**
+     * Reads JSON objects one after another (e.g. JSON Lines, with one object per line) until the end of the text.
+     * <p>
+     *     Chemicals that cannot be loaded are reported to the console and skipped, as in
+     *     {@link ChemJSONReader#readAll()}.
+     * </p>
+     *
+     * @return the number of chemicals added to the sink
+     * @throws JSONException if the text is not a sequence of JSON objects
+     */
+    int readLines() throws JSONException {
+        int count = 0;
+        char first = tokener.next();
+        if(first != 0 && first != '\uFEFF') {
+            // Neither the end of the text nor a byte order mark
+            tokener.back();
+        }
+        while(tokener.nextClean() != 0) {
+            tokener.back();
+            readObject();
+            if(addObject()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+
+
+    /**
+     * Reads a JSON Lines file by splitting it into chunks that are parsed in parallel.
+     * <p>
+     *     JSON strings cannot hold raw line breaks, so every line feed is a record boundary: the file is
+     *     memory-mapped and split at the line feeds closest to one chunk per thread. The chunks are parsed at
+     *     the same time, then their chemicals are added to the sink on the calling thread, in the same order
+     *     as in the file, so the sink does not need to be thread-safe.
+     * </p>
+     *
+     * @param file the JSON Lines file to be read
+     * @param sink the <tt>ChemSink</tt> receiving the chemicals
+     * @param threads the maximum number of chunks to be parsed at the same time
+     * @return the number of chemicals added to the sink
+     * @throws IOException if the file cannot be read or is not a sequence of JSON objects
+     */
+    static int readParallel(Path file, ChemSink sink, int threads) throws IOException {
+        ByteBuffer text = ChemChunks.map(file);
+        int[][] chunks = split(text, Math.max(1, threads));
+        return ChemChunks.parse(text, chunks, (reader, rows, chunk) -> {
+            try {
+                return new ChemJSONReader(reader, rows).readLines();
+            } catch (JSONException e) {
+                throw new IOException("malformed JSON Lines dataset " + file
+                        + " (in the chunk starting at line " + chunk[2] + ")", e);
+            }
+        }, sink);
+    }
+
+
+
+    // --------------------
+    // PRIVATE UTILITY METHODS
+    // --------------------
+
+    /**
+     * Adds the object that was just read to the sink.
+     *
+     * @return <tt>true</tt> if the chemical was added, <tt>false</tt> if it could not be loaded
+     */
+    private boolean addObject() {
+        try {
+            // Convert the JSON information to processable information
+            sink.add(required("NAME", name),
+                    parseRating("HEALTH", health),
+                    parseRating("FLAMMABILITY", flammability),
+                    parseRating("REACTIVITY", reactivity),
+                    ChemSignature.specialMask(required("SPECIAL", special)));
+            return true;
+        } catch (IllegalArgumentException | JSONException e) {
+            // Includes NumberFormatException
+            System.out.println(e + " - chemical could not be properly loaded");
+            return false;
+        }
+    }
+
+    /**
+     * Reads a single JSON object, keeping only the fields of interest.
+     */
+    private void readObject() throws JSONException {
+        name = null;
+        health = null;
+        flammability = null;
+        reactivity = null;
+        special = null;
+
+        if(tokener.nextClean() != '{') {
+            throw tokener.syntaxError("A JSON object text must begin with '{'");
+        }
+        if(tokener.nextClean() == '}') {
+            return;
+        }
+        tokener.back();
+
+        while(true) {
+            String key = tokener.nextValue().toString();
+            if(tokener.nextClean() != ':') {
+                throw tokener.syntaxError("Expected a ':' after a key");
+            }
+            String value = tokener.nextValue().toString();
+
+            switch(key) {
+                case "NAME":
+                    name = value;
+                    break;
+                case "HEALTH":
+                    health = value;
+                    break;
+                case "FLAMMABILITY":
+                    flammability = value;
+                    break;
+                case "REACTIVITY":
+                    reactivity = value;
+                    break;
+                case "SPECIAL":
+                    special = value;
+                    break;
+                default:
+                    // Unknown fields are ignored
+                    break;
+            }
+
+            switch(tokener.nextClean()) {
+                case ',':
+                    break;
+                case '}':
+                    return;
+                default:
+                    throw tokener.syntaxError("Expected a ',' or '}'");
+            }
+        }
+    }
+
+    private static int parseRating(String key, String value) throws JSONException, NumberFormatException {
+        return Integer.parseInt(required(key, value));
+    }
+
+    private static String required(String key, String value) throws JSONException {
+        if(value == null) {
+            throw new JSONException("JSONObject[\"" + key + "\"] not found.");
+        }
+        return value;
+    }
+
+    /**
+     * Splits text into about <tt>count</tt> chunks at line feeds.
+     *
+     * @return the chunks as <tt>{start, end, first line}</tt>
+     */
+    private static int[][] split(ByteBuffer text, int count) {
+        List<int[]> chunks = new ArrayList<>(count);
+        int start = 0;
+        int startLine = 1;
+        int line = 1;
+        for(int i = 0; i < text.limit(); i++) {
+            if(text.get(i) == '\n') {
+                line++;
+                long target = (long) text.limit() * (chunks.size() + 1) / count;
+                if(i + 1 >= target && chunks.size() < count - 1) {
+                    chunks.add(new int[] {start, i + 1, startLine});
+                    start = i + 1;
+                    startLine = line;
+                }
+            }
+        }
+        // The last line feed may end the text; an empty text still gets one (empty) chunk
+        if(start < text.limit() || chunks.isEmpty()) {
+            chunks.add(new int[] {start, text.limit(), startLine});
+        }
+        return chunks.toArray(new int[chunks.size()][]);
+    }
+
+}
@@ -0,0 +1,80 @@
+package com.tsaysoft.nfpacid3;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Decodes one dataset format into a {@link ChemSink}.
+ * <p>
+ *     Every dataset file a {@link ChemDB} reads goes through a <tt>ChemLoader</tt>, picked by
+ *     {@link ChemLoaders#find(Path)} from the file's extension or first bytes.
+ *     Loaders for JSON arrays, JSON Lines, CSV, XML and ChemDB snapshots are built in; further loaders
+ *     can be added with {@link ChemLoaders#register(ChemLoader)} or as <tt>java.util.ServiceLoader</tt>
+ *     providers (listed in <tt>META-INF/services/com.tsaysoft.nfpacid3.ChemLoader</tt>).
+ * </p>
+ * <p>
+ *     Loaders should push each chemical into the sink as soon as it is decoded rather than collecting them
+ *     first. Chemicals that cannot be decoded should be reported to the console and skipped; only problems
+ *     with the file as a whole should be thrown.
+ * </p>
+ *
+ * @see com.tsaysoft.nfpacid3.ChemLoaders
+ *
+ * @author Clay Tsay
+ * @version 00.02.00
+ */
+public interface ChemLoader {
+
+    /**
+     * Gets the name of the format the <tt>ChemLoader</tt> decodes.
+     *
+     * @return the name as a <tt>String</tt> (e.g. <tt>"CSV"</tt>)
+     *
+     * @since 00.02.00
+     */
+    String getName();
+
+    /**
+     * Checks whether the <tt>ChemLoader</tt> can decode a file.
+     *
+     * @param fileName the name of the file
+     * @param head the first bytes of the file (fewer if the file is shorter)
+     * @return <tt>true</tt> if the file looks like it is in this <tt>ChemLoader</tt>'s format
+     *
+     * @since 00.02.00
+     */
+    boolean accepts(String fileName, byte[] head);
+
+    /**
+     * Decodes a file into a <tt>ChemSink</tt>.
+     *
+     * @param file the file to be decoded
+     * @param sink the <tt>ChemSink</tt> receiving the chemicals
+     * @return the number of chemicals added to the sink
+     * @throws IOException if the file cannot be read or is malformed
+     *
+     * @since 00.02.00
+     */
+    int load(Path file, ChemSink sink) throws IOException;
+
+    /**
+     * Decodes a file into a <tt>ChemSink</tt>, using up to <tt>threads</tt> threads.
+     * <p>
+     *     The chemicals must still reach the sink in file order and from the calling thread.
+     *     Loaders for formats that cannot be split just call {@link ChemLoader#load(Path, ChemSink)},
+     *     which is what this method does by default.
+     * </p>
+     *
+     * @param file the file to be decoded
+     * @param sink the <tt>ChemSink</tt> receiving the chemicals
+     * @param threads the maximum number of threads to decode the file with
+     * @return the number of chemicals added to the sink
+     * @throws IOException if the file cannot be read or is malformed
+     *
+     * @since 00.02.00
+     */
+    default int load(Path file, ChemSink sink, int threads) throws IOException {
+        return load(file, sink);
+    }
+
+}
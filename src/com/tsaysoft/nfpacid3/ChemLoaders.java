@@ -0,0 +1,130 @@
+package com.tsaysoft.nfpacid3;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Finds the {@link ChemLoader} for a dataset file.
+ * <p>
+ *     Loaders are tried in order: ones added with {@link ChemLoaders#register(ChemLoader)} (most recent first),
+ *     then <tt>java.util.ServiceLoader</tt> providers, then the built-in loaders. The built-in loaders detect:
+ *     <p> - ChemDB snapshots by their magic bytes </p>
+ *     <p> - CSV by the <tt>.csv</tt> extension </p>
+ *     <p> - XML by the <tt>.xml</tt> extension or a leading <tt>&lt;</tt> </p>
+ *     <p> - JSON Lines by the <tt>.jsonl</tt> or <tt>.ndjson</tt> extensions or a leading <tt>{</tt> </p>
+ *     <p> - JSON arrays by the <tt>.json</tt> extension or a leading <tt>[</tt> </p>
+ * </p>
+ *
+ * @see com.tsaysoft.nfpacid3.ChemLoader
+ *
+ * @author Clay Tsay
+ * @version 00.02.00
+ */
+public final class ChemLoaders {
+
+    // --------------------
+    // VARIABLES AND DATA
+    // --------------------
+
+    /**
+     * The number of bytes passed to {@link ChemLoader#accepts(String, byte[])}.
+     */
+    public static final int HEAD_LENGTH = 64;
+
+    private static final List<ChemLoader> registered = new CopyOnWriteArrayList<>();
+
+    private static final List<ChemLoader> provided = loadProviders();
+
+
+
+    // --------------------
+    // CONSTRUCTORS
+    // --------------------
+
+    private ChemLoaders() {
+        // Utility class - not to be instantiated
+    }
+
+
+
+    // --------------------
+    // PUBLIC UTILITY METHODS
+    // --------------------
+
+    /**
+     * Adds a <tt>ChemLoader</tt>, which is tried before all of the existing ones.
+     *
+     * @param loader the <tt>ChemLoader</tt> to be added
+     *
+     * @since 00.02.00
+     */
+    public static void register(ChemLoader loader) {
+        registered.add(0, loader);
+    }
+
+    /**
+     * Gets every available <tt>ChemLoader</tt>, in the order in which they are tried.
+     *
+     * @return an unmodifiable <tt>List</tt> of the <tt>ChemLoader</tt>s
+     *
+     * @since 00.02.00
+     */
+    public static List<ChemLoader> getLoaders() {
+        List<ChemLoader> loaders = new ArrayList<>(registered);
+        loaders.addAll(provided);
+        loaders.addAll(Arrays.asList(ChemFormat.values()));
+        return Collections.unmodifiableList(loaders);
+    }
+
+    /**
+     * Finds the <tt>ChemLoader</tt> for a file from its name and first bytes.
+     *
+     * @param file the file to be loaded
+     * @return the first <tt>ChemLoader</tt> that accepts the file
+     * @throws IOException if the file cannot be read or no <tt>ChemLoader</tt> accepts it
+     *
+     * @since 00.02.00
+     */
+    public static ChemLoader find(Path file) throws IOException {
+        byte[] head = new byte[HEAD_LENGTH];
+        int length = 0;
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while(length < head.length && (read = in.read(head, length, head.length - length)) > 0) {
+                length += read;
+            }
+        }
+        head = Arrays.copyOf(head, length);
+
+        String fileName = file.getFileName() == null ? "" : file.getFileName().toString();
+        for(ChemLoader loader : getLoaders()) {
+            if(loader.accepts(fileName, head)) {
+                return loader;
+            }
+        }
+        throw new IOException("unrecognized dataset format: " + file);
+    }
+
+
+
+    // --------------------
+    // PRIVATE UTILITY METHODS
+    // --------------------
+
+    private static List<ChemLoader> loadProviders() {
+        List<ChemLoader> loaders = new ArrayList<>();
+        for(ChemLoader loader : ServiceLoader.load(ChemLoader.class)) {
+            loaders.add(loader);
+        }
+        return loaders;
+    }
+
+}
@@ -0,0 +1,208 @@
+package com.tsaysoft.nfpacid3;
+
+import java.util.EnumMap;
+
+/**
+ * Describes a range/predicate query over NFPA 704 information.
+ * <p>
+ *     Each {@link ChemProp} rating can be restricted to an inclusive range and each {@link ChemSpecial}
+ *     symbol can be required to be present, required to be absent, or ignored.
+ *     All of the restrictions must hold for a chemical to match (i.e. they are combined with AND).
+ *     A newly constructed <tt>ChemQuery</tt> matches every chemical.
+ * </p>
+ * <p>
+ *     For example, "health &ge; 3 AND water-reactive" is written as:
+ *     <pre>
+ *     ChemQuery query = new ChemQuery();
+ *     query.setRange(ChemProp.HEALTH, 3, 4);
+ *     query.setSpecial(ChemSpecial.WATER_REACT, true);
+ *     </pre>
+ * </p>
+ *
+ * @see com.tsaysoft.nfpacid3.ChemDBInterface#queryRangeNFPA(ChemQuery)
+ *
+ * @author Clay Tsay
+ * @version 00.02.00
+ */
+public class ChemQuery {
+
+    // --------------------
+    // VARIABLES AND DATA
+    // --------------------
+
+    private static final int MAX_RATING = ChemSignature.RATING_LEVELS - 1;
+
+    private EnumMap<ChemProp, Integer> mins = new EnumMap<>(ChemProp.class);
+    private EnumMap<ChemProp, Integer> maxs = new EnumMap<>(ChemProp.class);
+
+    /**
+     * Bit masks of the special symbols that must be present and absent.
+     */
+    private int required = 0;
+    private int excluded = 0;
+
+
+
+    // --------------------
+    // CONSTRUCTORS
+    // --------------------
+
+    /**
+     * Constructs a <tt>ChemQuery</tt> that matches every chemical.
+     *
+     * @since 00.02.00
+     */
+    public ChemQuery() {
+        super();
+        for(ChemProp prop : ChemProp.values()) {
+            mins.put(prop, 0);
+            maxs.put(prop, MAX_RATING);
+        }
+    }
+
+
+
+    // --------------------
+    // GETTERS AND SETTERS
+    // --------------------
+
+    /**
+     * Restricts a hazard rating to an inclusive range.
+     * <p>
+     *     The range is clamped to the NFPA 704 scale (0 - 4).
+     *     If <tt>min</tt> is greater than <tt>max</tt>, the query will not match anything.
+     * </p>
+     * @param prop the <tt>ChemProp</tt> rating to be restricted
+     * @param min the lowest matching rating
+     * @param max the highest matching rating
+     *
+     * @see ChemQuery#setRating(ChemProp, int)
+     * @since 00.02.00
+     */
+    public void setRange(ChemProp prop, int min, int max) {
+        mins.put(prop, Math.max(min, 0));
+        maxs.put(prop, Math.min(max, MAX_RATING));
+    }
+
+    /**
+     * Restricts a hazard rating to a single value.
+     * @param prop the <tt>ChemProp</tt> rating to be restricted
+     * @param rating the only matching rating
+     *
+     * @see ChemQuery#setRange(ChemProp, int, int)
+     * @since 00.02.00
+     */
+    public void setRating(ChemProp prop, int rating) {
+        setRange(prop, rating, rating);
+    }
+
+    /**
+     * Gets the lowest rating matched for a hazard.
+     * @param prop the <tt>ChemProp</tt> rating being queried
+     * @return the lower bound of the range as an <tt>int</tt>
+     *
+     * @since 00.02.00
+     */
+    public int getMin(ChemProp prop) {
+        return mins.get(prop);
+    }
+
+    /**
+     * Gets the highest rating matched for a hazard.
+     * @param prop the <tt>ChemProp</tt> rating being queried
+     * @return the upper bound of the range as an <tt>int</tt>
+     *
+     * @since 00.02.00
+     */
+    public int getMax(ChemProp prop) {
+        return maxs.get(prop);
+    }
+
+    /**
+     * Requires a special symbol to be present or absent.
+     * @param spec the <tt>ChemSpecial</tt> symbol to be restricted
+     * @param present <tt>true</tt> if the symbol must be present, <tt>false</tt> if it must be absent
+     *
+     * @see ChemQuery#clearSpecial(ChemSpecial)
+     * @since 00.02.00
+     */
+    public void setSpecial(ChemSpecial spec, boolean present) {
+        int bit = 1 << spec.ordinal();
+        if(present) {
+            required |= bit;
+            excluded &= ~bit;
+        } else {
+            excluded |= bit;
+            required &= ~bit;
+        }
+    }
+
+    /**
+     * Removes the restriction on a special symbol.
+     * @param spec the <tt>ChemSpecial</tt> symbol to be ignored
+     *
+     * @see ChemQuery#setSpecial(ChemSpecial, boolean)
+     * @since 00.02.00
+     */
+    public void clearSpecial(ChemSpecial spec) {
+        int bit = 1 << spec.ordinal();
+        required &= ~bit;
+        excluded &= ~bit;
+    }
+
+    /**
+     * Gets the special symbols that must be present.
+     * @return the symbols as a bit mask (see {@link ChemSignature#specialMask(EnumMap)})
+     *
+     * @since 00.02.00
+     */
+    public int getRequiredSpecials() {
+        return required;
+    }
+
+    /**
+     * Gets the special symbols that must be absent.
+     * @return the symbols as a bit mask (see {@link ChemSignature#specialMask(EnumMap)})
+     *
+     * @since 00.02.00
+     */
+    public int getExcludedSpecials() {
+        return excluded;
+    }
+
+
+
+    // --------------------
+    // PUBLIC UTILITY METHODS
+    // --------------------
+
+    /**
+     * Checks whether a chemical with the given <tt>ChemSignature</tt> matches the query.
+     * @param signature a valid signature
+     * @return <tt>true</tt> if the signature matches, <tt>false</tt> if not
+     *
+     * @since 00.02.00
+     */
+    public boolean matches(int signature) {
+        for(ChemProp prop : ChemProp.values()) {
+            int rating = ChemSignature.getProp(signature, prop);
+            if(rating < mins.get(prop) || rating > maxs.get(prop)) {
+                return false;
+            }
+        }
+        int specials = ChemSignature.getSpecials(signature);
+        return (specials & required) == required && (specials & excluded) == 0;
+    }
+
+    /**
+     * Checks whether a hazard rating is restricted at all by the query.
+     * @param prop the <tt>ChemProp</tt> rating being queried
+     * @return <tt>true</tt> if some ratings of the hazard do not match, <tt>false</tt> if all do
+     *
+     * @since 00.02.00
+     */
+    public boolean isRestricted(ChemProp prop) {
+        return mins.get(prop) > 0 || maxs.get(prop) < MAX_RATING;
+    }
+
+}
@@ -0,0 +1,230 @@
+package com.tsaysoft.nfpacid3;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A bounded cache of NFPA 704 query results for a {@link ChemDBManager}.
+ * <p>
+ *     Results are keyed by the {@link ChemSignature} of the query and whether special symbols were taken into
+ *     account, and are stored as unmodifiable <tt>List</tt>s so that they can be handed out to every caller.
+ *     When the cache is full, the entry chosen by its {@link Eviction} policy is dropped.
+ * </p>
+ * <p>
+ *     The cache is invalidated whenever the databases behind it change.
+ *     Results computed while the databases were changing are not stored, so a stale result
+ *     can never be cached.
+ * </p>
+ *
+ * @see com.tsaysoft.nfpacid3.ChemDBManager#setQueryCache(ChemQueryCache)
+ *
+ * @author Clay Tsay
+ * @version 00.02.00
+ */
+public class ChemQueryCache {
+
+    /**
+     * Specifies which entry is dropped when a <tt>ChemQueryCache</tt> is full.
+     *
+     * @since 00.02.00
+     */
+    public enum Eviction {
+        /**
+         * Drops the least recently used entry.
+         */
+        LRU,
+
+        /**
+         * Drops the oldest entry, regardless of how often it is used.
+         */
+        FIFO
+    }
+
+    /**
+     * The cached results, which drop their eldest entry (in access or insertion order) once over capacity.
+     */
+    private static final class Entries extends LinkedHashMap<Integer, List<Chemical>> {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+        private long evictions = 0;
+
+        Entries(int capacity, boolean accessOrder) {
+            super(16, 0.75f, accessOrder);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, List<Chemical>> eldest) {
+            if(size() > capacity) {
+                evictions++;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    // --------------------
+    // VARIABLES AND DATA
+    // --------------------
+
+    private final int capacity;
+    private final Entries entries;
+
+    /**
+     * Incremented by every invalidation; results are only stored if it did not change while computing them.
+     */
+    private long generation = 0;
+
+    private long hits = 0;
+    private long misses = 0;
+
+
+
+    // --------------------
+    // CONSTRUCTORS
+    // --------------------
+
+    /**
+     * Constructs an empty <tt>ChemQueryCache</tt>.
+     *
+     * @param capacity the maximum number of query results to be kept
+     * @param eviction which entry is dropped when the cache is full
+     * @throws IllegalArgumentException if <tt>capacity</tt> is not positive
+     *
+     * @since 00.02.00
+     */
+    public ChemQueryCache(int capacity, Eviction eviction) throws IllegalArgumentException {
+        if(capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive - ChemQueryCache not constructed");
+        }
+        this.capacity = capacity;
+        this.entries = new Entries(capacity, eviction == Eviction.LRU);
+    }
+
+
+
+    // --------------------
+    // GETTERS AND SETTERS
+    // --------------------
+
+    /**
+     * Gets the number of lookups that were answered from the cache.
+     * @return the number of hits
+     *
+     * @since 00.02.00
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Gets the number of lookups that were not answered from the cache.
+     * @return the number of misses
+     *
+     * @since 00.02.00
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Gets the number of entries dropped because the cache was full.
+     * @return the number of evictions
+     *
+     * @since 00.02.00
+     */
+    public synchronized long getEvictions() {
+        return entries.evictions;
+    }
+
+    /**
+     * Gets the number of query results currently kept.
+     * @return the number of entries
+     *
+     * @since 00.02.00
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Gets the maximum number of query results kept.
+     * @return the capacity
+     *
+     * @since 00.02.00
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+
+
+    // --------------------
+    // PUBLIC UTILITY METHODS
+    // --------------------
+
+    /**
+     * Drops every entry. Hit/miss statistics are kept.
+     *
+     * @since 00.02.00
+     */
+    public synchronized void invalidate() {
+        entries.clear();
+        generation++;
+    }
+
+
+
+    // --------------------
+    // PRIVATE UTILITY METHODS
+    // --------------------
+
+    /**
+     * Looks up the results of a query, counting a hit or a miss.
+     *
+     * @param signature the (valid) signature of the query
+     * @param special whether special symbols were taken into account
+     * @return the cached results, or <tt>null</tt> if there are none
+     */
+    synchronized List<Chemical> get(int signature, boolean special) {
+        List<Chemical> results = entries.get(key(signature, special));
+        if(results == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return results;
+    }
+
+    /**
+     * Gets the current generation, to be passed to {@link ChemQueryCache#put(int, boolean, long, List)}.
+     */
+    synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Stores the results of a query, unless the cache was invalidated since <tt>generation</tt>.
+     *
+     * @param signature the (valid) signature of the query
+     * @param special whether special symbols were taken into account
+     * @param generation the generation at the time the results started being computed
+     * @param results the results to be stored
+     * @return the unmodifiable results
+     */
+    synchronized List<Chemical> put(int signature, boolean special, long generation, List<Chemical> results) {
+        List<Chemical> unmodifiable = Collections.unmodifiableList(results);
+        if(generation == this.generation) {
+            entries.put(key(signature, special), unmodifiable);
+        }
+        return unmodifiable;
+    }
+
+    private static int key(int signature, boolean special) {
+        return special ? signature : ChemSignature.COUNT + ChemSignature.propsOf(signature);
+    }
+
+}
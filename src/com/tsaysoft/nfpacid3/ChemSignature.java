@@ -0,0 +1,310 @@
+package com.tsaysoft.nfpacid3;
+
+import java.util.EnumMap;
+
+import static com.tsaysoft.nfpacid3.ChemProp.*;
+
+/**
+ * Packs the NFPA 704 information of a chemical into a single small <tt>int</tt>.
+ * <p>
+ *     Each of the three {@link ChemProp} ratings runs from 0 - 4 and there are only three
+ *     {@link ChemSpecial} symbols, so every possible fire diamond fits into one of
+ *     <tt>5 * 5 * 5 * 8 = 1000</tt> "signatures."
+ *     The signature is laid out as <tt>((health * 5 + flammability) * 5 + reactivity) * 8 + specials</tt>,
+ *     where <tt>specials</tt> is a bit mask with bit <tt>n</tt> set if the <tt>ChemSpecial</tt> with
+ *     ordinal <tt>n</tt> is present.
+ *     Shifting a signature right by {@link ChemSignature#SPECIAL_BITS} gives the "properties signature,"
+ *     which ignores the special symbols.
+ * </p>
+ * <p>
+ *     Fire diamonds that cannot be represented (e.g. ratings outside of 0 - 4) map to
+ *     {@link ChemSignature#NONE}.
+ * </p>
+ *
+ * @see com.tsaysoft.nfpacid3.ChemDB
+ *
+ * @author Clay Tsay
+ * @version 00.02.00
+ */
+public final class ChemSignature {
+
+    // --------------------
+    // VARIABLES AND DATA
+    // --------------------
+
+    /**
+     * The signature of a fire diamond that cannot be packed.
+     */
+    public static final int NONE = -1;
+
+    /**
+     * The number of values each <tt>ChemProp</tt> rating can take (0 - 4).
+     */
+    public static final int RATING_LEVELS = 5;
+
+    /**
+     * The number of bits used by the special symbols mask.
+     */
+    public static final int SPECIAL_BITS = ChemSpecial.values().length;
+
+    /**
+     * The number of distinct special symbol masks.
+     */
+    public static final int SPECIAL_MASKS = 1 << SPECIAL_BITS;
+
+    /**
+     * The number of distinct properties signatures (special symbols not included).
+     */
+    public static final int PROPS_COUNT = RATING_LEVELS * RATING_LEVELS * RATING_LEVELS;
+
+    /**
+     * The number of distinct signatures (special symbols included).
+     */
+    public static final int COUNT = PROPS_COUNT * SPECIAL_MASKS;
+
+
+
+    // --------------------
+    // CONSTRUCTORS
+    // --------------------
+
+    private ChemSignature() {
+        // Utility class - not to be instantiated
+    }
+
+
+
+    // --------------------
+    // PUBLIC UTILITY METHODS
+    // --------------------
+
+    /**
+     * Packs the given ratings and special symbols mask into a signature.
+     *
+     * @param health the health rating
+     * @param flammability the flammability rating
+     * @param reactivity the reactivity rating
+     * @param specials the special symbols as a bit mask (see {@link ChemSignature#specialMask(EnumMap)})
+     * @return the signature, or {@link ChemSignature#NONE} if any of the arguments are out of range
+     *
+     * @since 00.02.00
+     */
+    public static int pack(int health, int flammability, int reactivity, int specials) {
+        if(!isValidRating(health) || !isValidRating(flammability) || !isValidRating(reactivity) ||
+                specials < 0 || specials >= SPECIAL_MASKS) {
+            return NONE;
+        }
+        return (((health * RATING_LEVELS + flammability) * RATING_LEVELS + reactivity) << SPECIAL_BITS) | specials;
+    }
+
+    /**
+     * Gets the signature of a <tt>Chemical</tt>.
+     *
+     * @param chem the <tt>Chemical</tt> to be packed
+     * @return the signature, or {@link ChemSignature#NONE} if the <tt>Chemical</tt> cannot be packed
+     *
+     * @see ChemSignature#of(EnumMap, EnumMap)
+     * @since 00.02.00
+     */
+    public static int of(Chemical chem) {
+        return of(chem.getProps(), chem.getSpecials());
+    }
+
+    /**
+     * Gets the signature of the given properties and special symbols.
+     * <p>
+     *     The properties <tt>EnumMap</tt> must contain all of the <tt>ChemProp</tt>s and the
+     *     specials <tt>EnumMap</tt> must contain all of the <tt>ChemSpecial</tt>s.
+     *     Otherwise, the information cannot be packed.
+     *     As in {@link Chemical}, a <tt>null</tt> specials <tt>EnumMap</tt> means that no special symbols are present.
+     * </p>
+     *
+     * @param properties the <tt>EnumMap</tt> with the properties information
+     * @param specials the <tt>EnumMap</tt> with the special symbols information (may be <tt>null</tt>)
+     * @return the signature, or {@link ChemSignature#NONE} if the information cannot be packed
+     *
+     * @since 00.02.00
+     */
+    public static int of(EnumMap<ChemProp, Integer> properties, EnumMap<ChemSpecial, Boolean> specials) {
+        int mask = specialMask(specials);
+        if(mask == NONE || properties.size() != ChemProp.values().length ||
+                properties.containsValue(null)) {
+            return NONE;
+        }
+        return pack(properties.get(HEALTH), properties.get(FLAMMABILITY), properties.get(REACTIVITY), mask);
+    }
+
+    /**
+     * Converts the special symbols information into a bit mask.
+     * <p>
+     *     A <tt>null</tt> <tt>EnumMap</tt> means that no special symbols are present.
+     * </p>
+     *
+     * @param specials the <tt>EnumMap</tt> with the special symbols information (may be <tt>null</tt>)
+     * @return the bit mask, or {@link ChemSignature#NONE} if not all <tt>ChemSpecial</tt>s are present
+     *
+     * @since 00.02.00
+     */
+    public static int specialMask(EnumMap<ChemSpecial, Boolean> specials) {
+        if(specials == null) {
+            return 0;
+        }
+        if(specials.size() != SPECIAL_BITS || specials.containsValue(null)) {
+            return NONE;
+        }
+        int mask = 0;
+        for(ChemSpecial symbol : ChemSpecial.values()) {
+            if(specials.get(symbol)) {
+                mask |= 1 << symbol.ordinal();
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Converts a <tt>String</tt> with special symbol information (e.g. <tt>"W, OX"</tt>) into a bit mask.
+     * <p>
+     *     The symbols are matched regardless of case: <tt>OX</tt> for {@link ChemSpecial#OXIDIZER},
+     *     <tt>SA</tt> for {@link ChemSpecial#SIMPLE_ASPHYXIANT} and <tt>W</tt> for {@link ChemSpecial#WATER_REACT}.
+     * </p>
+     *
+     * @param specialString the <tt>String</tt> with the symbols (may be blank)
+     * @return the bit mask
+     *
+     * @since 00.02.00
+     */
+    public static int specialMask(String specialString) {
+        String symbols = specialString.toUpperCase();
+        int mask = 0;
+        if(symbols.contains("OX")) {
+            mask |= 1 << ChemSpecial.OXIDIZER.ordinal();
+        }
+        if(symbols.contains("SA")) {
+            mask |= 1 << ChemSpecial.SIMPLE_ASPHYXIANT.ordinal();
+        }
+        if(symbols.contains("W")) {
+            mask |= 1 << ChemSpecial.WATER_REACT.ordinal();
+        }
+        return mask;
+    }
+
+    /**
+     * Converts a special symbols bit mask into a <tt>String</tt> (e.g. <tt>"OX, W"</tt>).
+     * <p>
+     *     The reverse of {@link ChemSignature#specialMask(String)}, in the format of the existing data sets.
+     * </p>
+     *
+     * @param specials the special symbols as a bit mask
+     * @return the symbols separated by <tt>", "</tt>, or an empty <tt>String</tt> if there are none
+     *
+     * @since 00.02.00
+     */
+    public static String specialString(int specials) {
+        StringBuilder symbols = new StringBuilder();
+        if((specials & 1 << ChemSpecial.OXIDIZER.ordinal()) != 0) {
+            symbols.append("OX");
+        }
+        if((specials & 1 << ChemSpecial.SIMPLE_ASPHYXIANT.ordinal()) != 0) {
+            symbols.append(symbols.length() == 0 ? "" : ", ").append("SA");
+        }
+        if((specials & 1 << ChemSpecial.WATER_REACT.ordinal()) != 0) {
+            symbols.append(symbols.length() == 0 ? "" : ", ").append("W");
+        }
+        return symbols.toString();
+    }
+
+    /**
+     * Strips the special symbols from a signature.
+     *
+     * @param signature a valid signature
+     * @return the properties signature, ranging from 0 to {@link ChemSignature#PROPS_COUNT} (exclusive)
+     *
+     * @since 00.02.00
+     */
+    public static int propsOf(int signature) {
+        return signature >>> SPECIAL_BITS;
+    }
+
+    /**
+     * Gets a specific hazard rating from a signature.
+     *
+     * @param signature a valid signature
+     * @param prop the hazard rating to be unpacked
+     * @return the rating as an <tt>int</tt>
+     *
+     * @since 00.02.00
+     */
+    public static int getProp(int signature, ChemProp prop) {
+        int props = propsOf(signature);
+        switch(prop) {
+            case HEALTH:
+                return props / (RATING_LEVELS * RATING_LEVELS);
+            case FLAMMABILITY:
+                return (props / RATING_LEVELS) % RATING_LEVELS;
+            case REACTIVITY:
+                return props % RATING_LEVELS;
+        }
+
+        throw new IllegalArgumentException("unrecognized ChemProp");
+    }
+
+    /**
+     * Gets the special symbols bit mask from a signature.
+     *
+     * @param signature a valid signature
+     * @return the special symbols as a bit mask
+     *
+     * @since 00.02.00
+     */
+    public static int getSpecials(int signature) {
+        return signature & (SPECIAL_MASKS - 1);
+    }
+
+    /**
+     * Unpacks the hazard ratings of a signature into an <tt>EnumMap</tt>.
+     *
+     * @param signature a valid signature
+     * @return a new <tt>EnumMap</tt> with all of the <tt>ChemProp</tt>s
+     *
+     * @see ChemSignature#toSpecials(int)
+     * @since 00.02.00
+     */
+    public static EnumMap<ChemProp, Integer> toProps(int signature) {
+        EnumMap<ChemProp, Integer> props = new EnumMap<>(ChemProp.class);
+        for(ChemProp prop : ChemProp.values()) {
+            props.put(prop, getProp(signature, prop));
+        }
+        return props;
+    }
+
+    /**
+     * Unpacks the special symbols of a signature into an <tt>EnumMap</tt>.
+     *
+     * @param signature a valid signature
+     * @return a new <tt>EnumMap</tt> with all of the <tt>ChemSpecial</tt>s
+     *
+     * @see ChemSignature#toProps(int)
+     * @since 00.02.00
+     */
+    public static EnumMap<ChemSpecial, Boolean> toSpecials(int signature) {
+        EnumMap<ChemSpecial, Boolean> specials = new EnumMap<>(ChemSpecial.class);
+        int mask = getSpecials(signature);
+        for(ChemSpecial symbol : ChemSpecial.values()) {
+            specials.put(symbol, (mask & (1 << symbol.ordinal())) != 0);
+        }
+        return specials;
+    }
+
+    /**
+     * Checks whether a rating lies inside of the NFPA 704 scale (0 - 4).
+     *
+     * @param rating the rating to be checked
+     * @return <tt>true</tt> if the rating can be packed, <tt>false</tt> if not
+     *
+     * @since 00.02.00
+     */
+    public static boolean isValidRating(int rating) {
+        return rating >= 0 && rating < RATING_LEVELS;
+    }
+
+}
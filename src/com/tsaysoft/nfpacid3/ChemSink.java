@@ -0,0 +1,32 @@
+package com.tsaysoft.nfpacid3;
+
+/**
+ * Receives chemicals from a dataset loader.
+ * <p>
+ *     Loaders decode chemicals one at a time and push them straight into a <tt>ChemSink</tt>
+ *     (usually the store of a {@link ChemDB}) instead of building their own temporary collections.
+ * </p>
+ *
+ * @see com.tsaysoft.nfpacid3.ChemLoader
+ *
+ * @author Clay Tsay
+ * @version 00.02.00
+ */
+public interface ChemSink {
+
+    /**
+     * Adds a chemical.
+     *
+     * @param name the name of the chemical
+     * @param health the health rating
+     * @param flammability the flammability rating
+     * @param reactivity the reactivity rating
+     * @param specials the special symbols as a bit mask (see {@link ChemSignature#specialMask(String)})
+     * @throws IllegalArgumentException if the chemical cannot be added (e.g. its ratings are out of range)
+     *
+     * @since 00.02.00
+     */
+    void add(String name, int health, int flammability, int reactivity, int specials)
+            throws IllegalArgumentException;
+
+}
@@ -0,0 +1,258 @@
+package com.tsaysoft.nfpacid3;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compiles a {@link ChemDB} into a binary snapshot file and opens such files through <tt>FileChannel.map</tt>.
+ * <p>
+ *     The snapshot holds everything a <tt>ChemDB</tt> needs (ratings, special symbols, names, generated IDs
+ *     and indexes), so opening one is a memory map and a header check rather than a parse.
+ *     All numbers are big-endian. The layout (version 1) is:
+ *     <ul>
+ *         <li>header: the magic bytes <tt>NFPASNAP</tt>, the format version and the number of rows</li>
+ *         <li>signatures: one <tt>short</tt> {@link ChemSignature} per row</li>
+ *         <li>names: one <tt>int</tt> end offset per row, a bitmap of <tt>null</tt> names and
+ *         the packed UTF-8 names</li>
+ *         <li>IDs: for every {@link ChemID}, the sorted rows that have an ID, one end offset per ID
+ *         and the packed UTF-8 IDs</li>
+ *         <li>indexes: the {@link SignatureIndex} and {@link BitmapIndex}</li>
+ *     </ul>
+ *     Files larger than 2 GB cannot be mapped.
+ * </p>
+ *
+ * @see com.tsaysoft.nfpacid3.ChemDB#writeSnapshot(String)
+ * @see com.tsaysoft.nfpacid3.ChemDB#openSnapshot(String)
+ *
+ * @author Clay Tsay
+ * @version 00.02.00
+ */
+class ChemSnapshot {
+
+    // --------------------
+    // VARIABLES AND DATA
+    // --------------------
+
+    static final byte[] MAGIC = "NFPASNAP".getBytes(StandardCharsets.US_ASCII);
+    static final int VERSION = 1;
+
+    final ChemStore store;
+    final SignatureIndex index;
+    final BitmapIndex bitmaps;
+
+
+
+    // --------------------
+    // CONSTRUCTORS
+    // --------------------
+
+    private ChemSnapshot(ChemStore store, SignatureIndex index, BitmapIndex bitmaps) {
+        this.store = store;
+        this.index = index;
+        this.bitmaps = bitmaps;
+    }
+
+
+
+    // --------------------
+    // PUBLIC UTILITY METHODS
+    // --------------------
+
+    /**
+     * Writes a snapshot of a store and its indexes.
+     * <p>
+     *     A new file is written next to the old one and then renamed over it, so snapshots that still map the
+     *     old file keep reading it unchanged and the file is never left half-written.
+     * </p>
+     *
+     * @param fileName the name of the snapshot file to be (over)written
+     * @param store the <tt>ChemStore</tt> to be written
+     * @param index the <tt>SignatureIndex</tt> of the store
+     * @param bitmaps the <tt>BitmapIndex</tt> of the store
+     * @throws IOException if the file cannot be written
+     */
+    static void write(String fileName, ChemStore store, SignatureIndex index, BitmapIndex bitmaps)
+            throws IOException {
+        Path target = Paths.get(fileName);
+        Path temp = Files.createTempFile(target.toAbsolutePath().getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            writeTo(temp, store, index, bitmaps);
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Opens a snapshot by memory-mapping it.
+     *
+     * @param fileName the name of the snapshot file
+     * @return the opened snapshot
+     * @throws IOException if the file cannot be mapped or is not a valid snapshot
+     */
+    static ChemSnapshot open(String fileName) throws IOException {
+        ByteBuffer in;
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            if(channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("snapshot too large to be mapped: " + fileName);
+            }
+            // The mapping stays valid after the channel is closed
+            in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        try {
+            // Header
+            byte[] magic = new byte[MAGIC.length];
+            in.get(magic);
+            if(!Arrays.equals(magic, MAGIC)) {
+                throw new IOException("not a ChemDB snapshot: " + fileName);
+            }
+            int version = in.getInt();
+            if(version != VERSION) {
+                throw new IOException("unsupported snapshot version " + version + ": " + fileName);
+            }
+            int size = in.getInt();
+
+            // Columns
+            ByteBuffer signatures = section(in, size * Short.BYTES);
+            ByteBuffer nameEnds = section(in, size * Integer.BYTES);
+            ByteBuffer nameArea = section(in, in.getInt());
+            ByteBuffer nullNames = section(in, ((size + 63) >>> 6) * Long.BYTES);
+
+            int idTypes = ChemID.values().length;
+            ByteBuffer[] idRows = new ByteBuffer[idTypes];
+            ByteBuffer[] idEnds = new ByteBuffer[idTypes];
+            ByteBuffer[] idAreas = new ByteBuffer[idTypes];
+            for(int i = 0; i < idTypes; i++) {
+                int count = in.getInt();
+                idRows[i] = section(in, count * Integer.BYTES);
+                idEnds[i] = section(in, count * Integer.BYTES);
+                idAreas[i] = section(in, in.getInt());
+            }
+
+            // Indexes
+            SignatureIndex index = SignatureIndex.read(in);
+            BitmapIndex bitmaps = BitmapIndex.read(in);
+
+            return new ChemSnapshot(
+                    new MappedChemStore(size, signatures, nameEnds, nullNames, nameArea, idRows, idEnds, idAreas),
+                    index, bitmaps);
+
+        } catch (RuntimeException e) {
+            // BufferUnderflowException, IllegalArgumentException, etc. from a truncated or corrupt file
+            throw new IOException("corrupt ChemDB snapshot: " + fileName, e);
+        }
+    }
+
+
+
+    // --------------------
+    // PRIVATE UTILITY METHODS
+    // --------------------
+
+    /**
+     * Writes a snapshot of a store and its indexes to the given file.
+     */
+    private static void writeTo(Path path, ChemStore store, SignatureIndex index, BitmapIndex bitmaps)
+            throws IOException {
+        int size = store.size();
+
+        try (OutputStream file = Files.newOutputStream(path);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file))) {
+            // Header
+            out.write(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(size);
+
+            // Signatures
+            for(int row = 0; row < size; row++) {
+                out.writeShort(store.getSignature(row));
+            }
+
+            // Names
+            List<String> names = new ArrayList<>(size);
+            for(int row = 0; row < size; row++) {
+                names.add(store.getName(row));
+            }
+            long[] nullNames = new long[(size + 63) >>> 6];
+            for(int row = 0; row < size; row++) {
+                if(names.get(row) == null) {
+                    nullNames[row >>> 6] |= 1L << row;
+                }
+            }
+            writeStrings(out, names);
+            for(long word : nullNames) {
+                out.writeLong(word);
+            }
+
+            // IDs
+            for(ChemID idType : ChemID.values()) {
+                List<Integer> rows = new ArrayList<>();
+                List<String> ids = new ArrayList<>();
+                for(int row = 0; row < size; row++) {
+                    String id = store.getID(row, idType);
+                    if(id != null) {
+                        rows.add(row);
+                        ids.add(id);
+                    }
+                }
+                out.writeInt(rows.size());
+                for(int row : rows) {
+                    out.writeInt(row);
+                }
+                writeStrings(out, ids);
+            }
+
+            // Indexes
+            index.write(out);
+            bitmaps.write(out, store.size());
+        }
+    }
+
+    /**
+     * Writes strings as one end offset per string, then the length of the packed area and the area itself.
+     */
+    private static void writeStrings(DataOutputStream out, List<String> strings) throws IOException {
+        List<byte[]> encoded = new ArrayList<>(strings.size());
+        int end = 0;
+        for(String s : strings) {
+            byte[] bytes = s == null ? new byte[0] : s.getBytes(StandardCharsets.UTF_8);
+            encoded.add(bytes);
+            end += bytes.length;
+            out.writeInt(end);
+        }
+        out.writeInt(end);
+        for(byte[] bytes : encoded) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Slices the next <tt>length</tt> bytes off of the buffer.
+     */
+    private static ByteBuffer section(ByteBuffer in, int length) {
+        ByteBuffer slice = in.slice();
+        slice.limit(length);
+        in.position(in.position() + length);
+        return slice;
+    }
+
+}
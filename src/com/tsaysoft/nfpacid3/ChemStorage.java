@@ -0,0 +1,59 @@
+package com.tsaysoft.nfpacid3;
+
+/**
+ * Specifies how a {@link ChemDB} stores its chemicals in memory.
+ * <p>
+ *     The storage modes are as follows:
+ *     <ul>
+ *         <li><tt>OBJECT</tt>: every chemical is kept as a {@link Chemical} (default)</li>
+ *         <li><tt>COLUMNAR</tt>: chemicals are kept in primitive columns and turned into <tt>Chemical</tt>s
+ *         only when they are returned by a query</li>
+ *         <li><tt>COMPACT</tt>: every chemical is kept as an immutable {@link CompactChemical}</li>
+ *     </ul>
+ * </p>
+ *
+ * @see com.tsaysoft.nfpacid3.ChemDB#ChemDB(String, ChemStorage)
+ *
+ * @author Clay Tsay
+ * @version 00.02.00
+ */
+public enum ChemStorage {
+
+    /**
+     * Stores every chemical as a {@link Chemical} object.
+     * <p>
+     *     Queries return the stored <tt>Chemical</tt>s themselves, so IDs generated with
+     *     {@link Chemical#genChemID(ChemID)} are kept between queries.
+     * </p>
+     *
+     * @since 00.02.00
+     */
+    OBJECT,
+
+    /**
+     * Stores chemicals in struct-of-arrays form.
+     * <p>
+     *     Ratings are kept in <tt>byte[]</tt> columns, special symbols in a bit mask column and
+     *     names in a packed UTF-8 area, which takes a few bytes per chemical plus the length of its name.
+     *     Queries return new <tt>Chemical</tt> "views" of the stored rows, so IDs generated on the
+     *     returned <tt>Chemical</tt>s are <b>not</b> kept between queries (IDs stored through the
+     *     <tt>ChemDB</tt> itself are).
+     * </p>
+     *
+     * @since 00.02.00
+     */
+    COLUMNAR,
+
+    /**
+     * Stores every chemical as an immutable {@link CompactChemical}.
+     * <p>
+     *     Each chemical takes a few dozen bytes plus its name, as chemicals with the same fire diamond share
+     *     a single {@link HazardProfile}.
+     *     {@link ChemDB#queryCompactNFPA(Chemical, boolean)} returns the stored objects themselves, which can be
+     *     shared between threads; the other queries return new <tt>Chemical</tt>s.
+     * </p>
+     *
+     * @since 00.02.00
+     */
+    COMPACT;
+}
@@ -0,0 +1,104 @@
+package com.tsaysoft.nfpacid3;
+
+/**
+ * The in-memory storage behind a {@link ChemDB}.
+ * <p>
+ *     Chemicals are addressed by their row, which is the order in which they were added.
+ *     Every stored chemical has a valid {@link ChemSignature}.
+ * </p>
+ *
+ * @see com.tsaysoft.nfpacid3.ChemStorage
+ *
+ * @author Clay Tsay
+ * @version 00.02.00
+ */
+interface ChemStore {
+
+    /**
+     * Gets the number of chemicals in the store.
+     *
+     * @return the number of rows
+     */
+    int size();
+
+    /**
+     * Adds a chemical to the end of the store.
+     *
+     * @param name the name of the chemical
+     * @param signature the (valid) <tt>ChemSignature</tt> of the chemical
+     */
+    void add(String name, int signature);
+
+    /**
+     * Creates a store holding the same rows that more rows can be added to without changing this one.
+     * <p>
+     *     The rows are shared rather than copied, so the cost does not depend on the number of rows.
+     *     Once forked, rows must only be added to the fork. IDs can be set for any row of the fork
+     *     (see {@link ChemIDColumns}).
+     * </p>
+     *
+     * @return the new store
+     * @throws UnsupportedOperationException if the store is read-only
+     */
+    ChemStore fork();
+
+    /**
+     * Gets the chemical stored at a row.
+     *
+     * @param row the row to be accessed
+     * @return the chemical as a new <tt>Chemical</tt>, which can be changed without changing the store
+     */
+    Chemical get(int row);
+
+    /**
+     * Gets the name of the chemical stored at a row.
+     *
+     * @param row the row to be accessed
+     * @return the name as a <tt>String</tt>
+     */
+    String getName(int row);
+
+    /**
+     * Gets the <tt>ChemSignature</tt> of the chemical stored at a row.
+     *
+     * @param row the row to be accessed
+     * @return the signature as an <tt>int</tt>
+     */
+    int getSignature(int row);
+
+    /**
+     * Gets a previously generated ID of the chemical stored at a row.
+     *
+     * @param row the row to be accessed
+     * @param idType the ID type requested
+     * @return the ID as a <tt>String</tt>, or <tt>null</tt> if none is stored
+     */
+    String getID(int row, ChemID idType);
+
+    /**
+     * Stores a generated ID for the chemical at a row.
+     *
+     * @param row the row to be accessed
+     * @param idType the ID type to be set
+     * @param id the ID as a <tt>String</tt>
+     */
+    void setID(int row, ChemID idType, String id);
+
+    /**
+     * Gets the chemical stored at a row as an immutable <tt>CompactChemical</tt>.
+     *
+     * @param row the row to be accessed
+     * @return the chemical as a <tt>CompactChemical</tt>
+     */
+    default CompactChemical getCompact(int row) {
+        CompactChemical compact = new CompactChemical(getName(row), HazardProfile.of(getSignature(row)));
+        for(ChemID idType : ChemID.values()) {
+            String id = getID(row, idType);
+            if(id != null) {
+                compact = compact.withID(idType, id);
+            }
+        }
+        return compact;
+    }
+
+}
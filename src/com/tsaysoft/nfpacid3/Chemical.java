@@ -1,7 +1,10 @@
 package com.tsaysoft.nfpacid3;
 
 import com.sun.istack.internal.Nullable;
+import java.text.Normalizer;
 import java.util.EnumMap;
+import java.util.Locale;
+import java.util.regex.Pattern;
 
 import static com.tsaysoft.nfpacid3.ChemProp.*;
 import static com.tsaysoft.nfpacid3.ChemSpecial.*;
@@ -11,6 +14,8 @@ import static com.tsaysoft.nfpacid3.ChemSpecial.*;
  * <p>
  *     Carries NFPA 704 information and chemical ID information.
  *     Can ask an {@link IDGAbstract} to retrieve a chemical ID from a name.
+ *     The ID getter used by all <tt>Chemical</tt>s can be replaced (e.g. by an {@link IDGCache}) with
+ *     {@link Chemical#setIDG(IDGInterface)}.
  * </p>
  *
  * @author Clay Tsay
@@ -27,7 +32,9 @@ public class Chemical {
     private EnumMap<ChemSpecial, Boolean> specials = new EnumMap<>(ChemSpecial.class);
     private EnumMap<ChemID, String> ids = new EnumMap<>(ChemID.class);
 
-    private static IDGAbstract idg = new FiehnIDG();
+    private static volatile IDGInterface idg = new FiehnIDG();
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
 
 
 
@@ -161,6 +168,34 @@ public class Chemical {
     // GETTERS AND SETTERS
     // --------------------
 
+    /**
+     * Gets the ID getter that {@link Chemical#genChemID(ChemID)} uses.
+     * @return the ID getter (a {@link FiehnIDG} unless it was replaced)
+     *
+     * @since 00.02.00
+     */
+    public static IDGInterface getIDG() {
+        return idg;
+    }
+
+    /**
+     * Sets the ID getter that {@link Chemical#genChemID(ChemID)} uses for all <tt>Chemical</tt>s.
+     * <p>
+     *     For example, <tt>Chemical.setIDG(new IDGCache(new FiehnIDG(), "ids.cache"))</tt> keeps the IDs
+     *     between runs so that only new names are looked up over the network.
+     * </p>
+     * @param newIDG the ID getter to be used
+     *
+     * @see com.tsaysoft.nfpacid3.IDGCache
+     * @since 00.02.00
+     */
+    public static void setIDG(IDGInterface newIDG) {
+        if(newIDG == null) {
+            throw new IllegalArgumentException("ID getter is null");
+        }
+        idg = newIDG;
+    }
+
     /**
      * Gets the name of the chemical.
      * @return the chemical name as a {@code String}
@@ -196,6 +231,21 @@ public class Chemical {
         return ids.get(idType);
     }
 
+    /**
+     * Sets an identification code of the chemical without making an HTTP request.
+     * <p>
+     *     Used to restore IDs that were generated earlier (e.g. ones stored in a database snapshot).
+     * </p>
+     * @param idType the ID type to be set
+     * @param newID the ID code as a <tt>String</tt>
+     *
+     * @see Chemical#genChemID(ChemID)
+     * @since 00.02.00
+     */
+    void setID(ChemID idType, String newID) {
+        ids.put(idType, newID);
+    }
+
     /**
      * Gets a specific hazard rating of the chemical.
      * <p>
@@ -375,6 +425,27 @@ public class Chemical {
 
     }
 
+    /**
+     * Converts a chemical name into a canonical form for comparisons.
+     * <p>
+     *     Applies Unicode compatibility normalization (NFKC), lower-cases the name, trims it and collapses
+     *     runs of whitespace into single spaces, so that e.g. <tt>"Acetic  Acid "</tt> and
+     *     <tt>"acetic acid"</tt> normalize to the same <tt>String</tt>.
+     *     Unlike {@link IDGAbstract#cleanName(String)}, nothing is removed from the name.
+     * </p>
+     * @param chemName the name to be normalized (may be <tt>null</tt>)
+     * @return the normalized name, or <tt>null</tt> if <tt>chemName</tt> is <tt>null</tt>
+     *
+     * @since 00.02.00
+     */
+    public static String normalizeName(@Nullable String chemName) {
+        if(chemName == null) {
+            return null;
+        }
+        String normalized = Normalizer.normalize(chemName, Normalizer.Form.NFKC).trim().toLowerCase(Locale.ROOT);
+        return WHITESPACE.matcher(normalized).replaceAll(" ");
+    }
+
     /**
      * Uses an HTTP request to get the ID for the {@code Chemical}.
      * <p>
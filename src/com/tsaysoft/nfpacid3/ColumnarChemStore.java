@@ -0,0 +1,180 @@
+package com.tsaysoft.nfpacid3;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * A {@link ChemStore} that keeps chemicals in struct-of-arrays form.
+ * <p>
+ *     Each rating has its own <tt>byte[]</tt> column and the special symbols are kept as a bit mask column
+ *     (see {@link ChemSignature#specialMask(java.util.EnumMap)}).
+ *     Names are encoded as UTF-8 and packed one after another into a single <tt>byte[]</tt> area,
+ *     with the end of each name kept in an offsets column.
+ *     IDs are rare, so they are kept sparsely in {@link ChemIDColumns}.
+ *     <tt>Chemical</tt>s are only built when a row is accessed through {@link ColumnarChemStore#get(int)}.
+ * </p>
+ *
+ * @see com.tsaysoft.nfpacid3.ChemStorage#COLUMNAR
+ *
+ * @author Clay Tsay
+ * @version 00.02.00
+ */
+class ColumnarChemStore implements ChemStore {
+
+    // --------------------
+    // VARIABLES AND DATA
+    // --------------------
+
+    private int size = 0;
+
+    private byte[] health = new byte[16];
+    private byte[] flammability = new byte[16];
+    private byte[] reactivity = new byte[16];
+    private byte[] specials = new byte[16];
+
+    /**
+     * The packed names; the name of row <tt>i</tt> spans <tt>nameEnds[i - 1]</tt> to <tt>nameEnds[i]</tt>.
+     */
+    private byte[] nameArea = new byte[256];
+    private int[] nameEnds = new int[16];
+    private BitSet nullNames = new BitSet();
+
+    private ChemIDColumns ids = new ChemIDColumns();
+
+    // Whether nullNames is still shared with the store this one was forked from
+    private boolean shared = false;
+
+
+
+    // --------------------
+    // PUBLIC UTILITY METHODS
+    // --------------------
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void add(String name, int signature) {
+        if(size == health.length) {
+            int capacity = size * 2;
+            health = Arrays.copyOf(health, capacity);
+            flammability = Arrays.copyOf(flammability, capacity);
+            reactivity = Arrays.copyOf(reactivity, capacity);
+            specials = Arrays.copyOf(specials, capacity);
+            nameEnds = Arrays.copyOf(nameEnds, capacity);
+        }
+
+        health[size] = (byte) ChemSignature.getProp(signature, ChemProp.HEALTH);
+        flammability[size] = (byte) ChemSignature.getProp(signature, ChemProp.FLAMMABILITY);
+        reactivity[size] = (byte) ChemSignature.getProp(signature, ChemProp.REACTIVITY);
+        specials[size] = (byte) ChemSignature.getSpecials(signature);
+
+        // Append the name to the packed area
+        int start = nameStart(size);
+        if(name == null) {
+            unshare();
+            nullNames.set(size);
+            nameEnds[size] = start;
+        } else {
+            byte[] encoded = name.getBytes(StandardCharsets.UTF_8);
+            if(start + encoded.length > nameArea.length) {
+                nameArea = Arrays.copyOf(nameArea, Math.max(nameArea.length * 2, start + encoded.length));
+            }
+            System.arraycopy(encoded, 0, nameArea, start, encoded.length);
+            nameEnds[size] = start + encoded.length;
+        }
+
+        size++;
+    }
+
+    @Override
+    public ChemStore fork() {
+        ColumnarChemStore fork = new ColumnarChemStore();
+        fork.size = size;
+        fork.health = health;
+        fork.flammability = flammability;
+        fork.reactivity = reactivity;
+        fork.specials = specials;
+        fork.nameArea = nameArea;
+        fork.nameEnds = nameEnds;
+        // The columns are only written past the size of this store; the rest is copied on its first change
+        fork.nullNames = nullNames;
+        fork.shared = true;
+        fork.ids = ids.fork();
+        return fork;
+    }
+
+    @Override
+    public Chemical get(int row) {
+        int signature = getSignature(row);
+        Chemical chem = new Chemical(getName(row),
+                ChemSignature.toProps(signature), ChemSignature.toSpecials(signature));
+        for(ChemID idType : ChemID.values()) {
+            String id = ids.get(row, idType);
+            if(id != null) {
+                chem.setID(idType, id);
+            }
+        }
+        return chem;
+    }
+
+    @Override
+    public String getName(int row) {
+        checkRow(row);
+        if(nullNames.get(row)) {
+            return null;
+        }
+        int start = nameStart(row);
+        return new String(nameArea, start, nameEnds[row] - start, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public int getSignature(int row) {
+        checkRow(row);
+        return ChemSignature.pack(health[row], flammability[row], reactivity[row], specials[row]);
+    }
+
+
+
+    @Override
+    public String getID(int row, ChemID idType) {
+        checkRow(row);
+        return ids.get(row, idType);
+    }
+
+    @Override
+    public void setID(int row, ChemID idType, String id) {
+        checkRow(row);
+        ids.set(row, idType, id);
+    }
+
+
+
+    // --------------------
+    // PRIVATE UTILITY METHODS
+    // --------------------
+
+    /**
+     * Copies the parts of a forked store that are changed in place rather than appended to.
+     */
+    private void unshare() {
+        if(shared) {
+            nullNames = (BitSet) nullNames.clone();
+            shared = false;
+        }
+    }
+
+    private int nameStart(int row) {
+        return row == 0 ? 0 : nameEnds[row - 1];
+    }
+
+    private void checkRow(int row) {
+        if(row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("row " + row + " out of bounds for size " + size);
+        }
+    }
+
+}
@@ -0,0 +1,110 @@
+package com.tsaysoft.nfpacid3;
+
+import java.util.Arrays;
+
+/**
+ * A {@link ChemStore} that keeps every chemical as a {@link CompactChemical}.
+ * <p>
+ *     IDs are kept apart in {@link ChemIDColumns}, so that they can be set on a fork, and are only added
+ *     to the <tt>CompactChemical</tt> when a row is accessed.
+ * </p>
+ *
+ * @see com.tsaysoft.nfpacid3.ChemStorage#COMPACT
+ *
+ * @author Clay Tsay
+ * @version 00.02.00
+ */
+class CompactChemStore implements ChemStore {
+
+    // --------------------
+    // VARIABLES AND DATA
+    // --------------------
+
+    private int size = 0;
+
+    private CompactChemical[] chems = new CompactChemical[16];
+
+    private ChemIDColumns ids = new ChemIDColumns();
+
+
+
+    // --------------------
+    // PUBLIC UTILITY METHODS
+    // --------------------
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void add(String name, int signature) {
+        if(size == chems.length) {
+            chems = Arrays.copyOf(chems, size * 2);
+        }
+        chems[size++] = new CompactChemical(name, HazardProfile.of(signature));
+    }
+
+    @Override
+    public ChemStore fork() {
+        CompactChemStore fork = new CompactChemStore();
+        fork.size = size;
+        fork.chems = chems;
+        fork.ids = ids.fork();
+        return fork;
+    }
+
+    @Override
+    public Chemical get(int row) {
+        return getCompact(row).toChemical();
+    }
+
+    @Override
+    public String getName(int row) {
+        return chems[checkRow(row)].getName();
+    }
+
+    @Override
+    public int getSignature(int row) {
+        return chems[checkRow(row)].getProfile().getSignature();
+    }
+
+    @Override
+    public String getID(int row, ChemID idType) {
+        return ids.get(checkRow(row), idType);
+    }
+
+    @Override
+    public void setID(int row, ChemID idType, String id) {
+        ids.set(checkRow(row), idType, id);
+    }
+
+    /**
+     * Gets the <tt>CompactChemical</tt> stored at a row, only copying it if it has IDs.
+     */
+    @Override
+    public CompactChemical getCompact(int row) {
+        CompactChemical compact = chems[checkRow(row)];
+        for(ChemID idType : ChemID.values()) {
+            String id = ids.get(row, idType);
+            if(id != null) {
+                compact = compact.withID(idType, id);
+            }
+        }
+        return compact;
+    }
+
+
+
+    // --------------------
+    // PRIVATE UTILITY METHODS
+    // --------------------
+
+    private int checkRow(int row) {
+        if(row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("row " + row + " out of bounds for size " + size);
+        }
+        return row;
+    }
+
+}
@@ -0,0 +1,178 @@
+package com.tsaysoft.nfpacid3;
+
+import com.sun.istack.internal.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * A compact, immutable counterpart of {@link Chemical}.
+ * <p>
+ *     Holds only a name, a reference to a shared {@link HazardProfile} and, once any have been attached,
+ *     an array of IDs; no <tt>EnumMap</tt>s or boxed values are allocated.
+ *     All fields are final, so <tt>CompactChemical</tt>s can be shared between threads without copying.
+ *     Attaching an ID returns a new <tt>CompactChemical</tt> that shares the name and profile of the original.
+ * </p>
+ *
+ * @see com.tsaysoft.nfpacid3.ChemStorage#COMPACT
+ *
+ * @author Clay Tsay
+ * @version 00.02.00
+ */
+public final class CompactChemical {
+
+    // --------------------
+    // VARIABLES AND DATA
+    // --------------------
+
+    private final String name;
+    private final HazardProfile profile;
+
+    /**
+     * IDs by <tt>ChemID</tt> ordinal; <tt>null</tt> until the first ID is attached. Never modified.
+     */
+    private final String[] ids;
+
+
+
+    // --------------------
+    // CONSTRUCTORS
+    // --------------------
+
+    /**
+     * Constructs a <tt>CompactChemical</tt> without any IDs.
+     *
+     * @param chemName name of the chemical
+     * @param profile the hazard profile of the chemical
+     *
+     * @since 00.02.00
+     */
+    public CompactChemical(@Nullable String chemName, HazardProfile profile) {
+        this(chemName, profile, null);
+    }
+
+    private CompactChemical(String chemName, HazardProfile profile, String[] ids) {
+        if(profile == null) {
+            throw new IllegalArgumentException("profile null - CompactChemical not constructed");
+        }
+        this.name = chemName;
+        this.profile = profile;
+        this.ids = ids;
+    }
+
+    /**
+     * Converts a <tt>Chemical</tt> into a <tt>CompactChemical</tt>, including any generated IDs.
+     *
+     * @param chem the <tt>Chemical</tt> to be converted
+     * @return the equivalent <tt>CompactChemical</tt>
+     * @throws IllegalArgumentException if the <tt>Chemical</tt>'s NFPA information cannot be packed
+     *
+     * @since 00.02.00
+     */
+    public static CompactChemical of(Chemical chem) throws IllegalArgumentException {
+        CompactChemical compact = new CompactChemical(chem.getName(), HazardProfile.of(ChemSignature.of(chem)));
+        for(ChemID idType : ChemID.values()) {
+            String id = chem.getID(idType);
+            if(id != null) {
+                compact = compact.withID(idType, id);
+            }
+        }
+        return compact;
+    }
+
+
+
+    // --------------------
+    // GETTERS AND SETTERS
+    // --------------------
+
+    /**
+     * Gets the name of the chemical.
+     * @return the chemical name as a <tt>String</tt>
+     *
+     * @since 00.02.00
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the shared hazard profile of the chemical.
+     * @return the <tt>HazardProfile</tt>
+     *
+     * @since 00.02.00
+     */
+    public HazardProfile getProfile() {
+        return profile;
+    }
+
+    /**
+     * Gets an identification code of the chemical.
+     * @param idType the ID type requested
+     * @return the ID as a <tt>String</tt>, or <tt>null</tt> if none has been attached
+     *
+     * @since 00.02.00
+     */
+    public String getID(ChemID idType) {
+        return ids == null ? null : ids[idType.ordinal()];
+    }
+
+    /**
+     * Attaches an identification code to the chemical.
+     * @param idType the ID type to be attached
+     * @param id the ID as a <tt>String</tt>
+     * @return a new <tt>CompactChemical</tt> with the ID attached
+     *
+     * @since 00.02.00
+     */
+    public CompactChemical withID(ChemID idType, String id) {
+        String[] newIDs = ids == null ? new String[ChemID.values().length] : Arrays.copyOf(ids, ids.length);
+        newIDs[idType.ordinal()] = id;
+        return new CompactChemical(name, profile, newIDs);
+    }
+
+
+
+    // --------------------
+    // PUBLIC UTILITY METHODS
+    // --------------------
+
+    /**
+     * Converts the <tt>CompactChemical</tt> into a (mutable) <tt>Chemical</tt>, including any IDs.
+     * @return a new <tt>Chemical</tt>
+     *
+     * @since 00.02.00
+     */
+    public Chemical toChemical() {
+        Chemical chem = new Chemical(name, profile.getProps(), profile.getSpecials());
+        if(ids != null) {
+            for(ChemID idType : ChemID.values()) {
+                if(ids[idType.ordinal()] != null) {
+                    chem.setID(idType, ids[idType.ordinal()]);
+                }
+            }
+        }
+        return chem;
+    }
+
+    /**
+     * Compares two <tt>CompactChemical</tt>s based on their NFPA information only.
+     * @param chem the <tt>CompactChemical</tt> to be compared with the current one
+     * @param special whether the special symbols should be considered
+     * @return <tt>true</tt> if the NFPA values are the same, <tt>false</tt> if not
+     *
+     * @see Chemical#equalsNFPA(Chemical, boolean)
+     * @since 00.02.00
+     */
+    public boolean equalsNFPA(CompactChemical chem, boolean special) {
+        if(special) {
+            return profile == chem.profile;
+        }
+        return ChemSignature.propsOf(profile.getSignature()) == ChemSignature.propsOf(chem.profile.getSignature());
+    }
+
+    @Override
+    public String toString() {
+        return name + " (" + profile + ")";
+    }
+
+}
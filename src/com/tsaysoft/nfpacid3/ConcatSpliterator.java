@@ -0,0 +1,105 @@
+package com.tsaysoft.nfpacid3;
+
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * A <tt>Spliterator</tt> that traverses several <tt>Spliterator</tt>s one after another.
+ * <p>
+ *     Used by {@link ChemDBManager} to stream the results of all of its databases.
+ *     Splitting first divides the list of <tt>Spliterator</tt>s in half and, once only one is left,
+ *     splits that one, so parallel streams spread the work over both databases and rows.
+ *     Unlike <tt>flatMap</tt>, short-circuiting operations stop as soon as they are satisfied.
+ * </p>
+ *
+ * @author Clay Tsay
+ * @version 00.02.00
+ */
+class ConcatSpliterator<T> implements Spliterator<T> {
+
+    // --------------------
+    // VARIABLES AND DATA
+    // --------------------
+
+    private final List<Spliterator<T>> parts;
+    private int current;
+    private final int fence;
+
+
+
+    // --------------------
+    // CONSTRUCTORS
+    // --------------------
+
+    /**
+     * Constructs a <tt>ConcatSpliterator</tt> over <tt>parts[origin]</tt> to <tt>parts[fence - 1]</tt>.
+     *
+     * @param parts the <tt>Spliterator</tt>s to be traversed in order
+     * @param origin the first index into <tt>parts</tt> (inclusive)
+     * @param fence the last index into <tt>parts</tt> (exclusive)
+     */
+    ConcatSpliterator(List<Spliterator<T>> parts, int origin, int fence) {
+        this.parts = parts;
+        this.current = origin;
+        this.fence = fence;
+    }
+
+
+
+    // --------------------
+    // PUBLIC UTILITY METHODS
+    // --------------------
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        while(current < fence) {
+            if(parts.get(current).tryAdvance(action)) {
+                return true;
+            }
+            current++;
+        }
+        return false;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super T> action) {
+        for(; current < fence; current++) {
+            parts.get(current).forEachRemaining(action);
+        }
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+        int remaining = fence - current;
+        if(remaining > 1) {
+            int mid = current + remaining / 2;
+            Spliterator<T> prefix = new ConcatSpliterator<>(parts, current, mid);
+            current = mid;
+            return prefix;
+        }
+        return remaining == 1 ? parts.get(current).trySplit() : null;
+    }
+
+    @Override
+    public long estimateSize() {
+        long size = 0;
+        for(int i = current; i < fence; i++) {
+            size += parts.get(i).estimateSize();
+            if(size < 0) {
+                return Long.MAX_VALUE;
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public int characteristics() {
+        int characteristics = ORDERED | SIZED | SUBSIZED | NONNULL;
+        for(int i = current; i < fence; i++) {
+            characteristics &= parts.get(i).characteristics();
+        }
+        return characteristics;
+    }
+
+}
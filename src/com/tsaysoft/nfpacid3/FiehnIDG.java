@@ -14,7 +14,7 @@ import org.json.*;
  * @see <a href="http://cts.fiehnlab.ucdavis.edu/conversion/">http://cts.fiehnlab.ucdavis.edu/conversion/</a>
  *
  * @author Clay Tsay
- * @version 00.01.00
+ * @version 00.02.00
  */
 public class FiehnIDG extends IDGAbstract{
 
@@ -22,7 +22,39 @@ public class FiehnIDG extends IDGAbstract{
     // VARIABLES AND DATA
     // --------------------
 
-    // N/A
+    /**
+     * The URL of the Fiehn Lab conversion service.
+     */
+    public static final String DEFAULT_URL = "http://cts.fiehnlab.ucdavis.edu/service/convert/";
+
+    private final String baseURL;
+
+
+
+    // --------------------
+    // CONSTRUCTORS
+    // --------------------
+
+    /**
+     * Constructs a <tt>FiehnIDG</tt> that uses the Fiehn Lab conversion service.
+     *
+     * @since 00.02.00
+     */
+    public FiehnIDG() {
+        this(DEFAULT_URL);
+    }
+
+    /**
+     * Constructs a <tt>FiehnIDG</tt> that uses a conversion service at another URL (e.g. a mirror or a
+     * local test server).
+     *
+     * @param baseURL the URL that the <tt>Chemical%20Name/</tt> path is added to, ending with <tt>/</tt>
+     *
+     * @since 00.02.00
+     */
+    public FiehnIDG(String baseURL) {
+        this.baseURL = baseURL;
+    }
 
 
     // --------------------
@@ -41,7 +73,7 @@ public class FiehnIDG extends IDGAbstract{
     protected String urlGenerator(String chemName, ChemID id) {
         // Declaring variables
         String typeToken = "";
-        String url = "http://cts.fiehnlab.ucdavis.edu/service/convert/Chemical%20Name/";
+        String url = baseURL + "Chemical%20Name/";
 
         // Find the typeToken "radical" from the provided enum and add to the URL
         // Assumes that all of the enums in ChemID will be supported
@@ -67,7 +99,7 @@ public class FiehnIDG extends IDGAbstract{
     }
 
     @Override
-    protected String parseJSON(String JSONInput){
+    protected String parseJSON(String JSONInput, ChemID id){
         try {
             //System.out.println(JSONInput);
             JSONArray array1 = new JSONArray(JSONInput);
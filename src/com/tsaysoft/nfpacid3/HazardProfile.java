@@ -0,0 +1,166 @@
+package com.tsaysoft.nfpacid3;
+
+import java.util.EnumMap;
+
+/**
+ * An immutable NFPA 704 hazard profile (the three ratings plus the special symbols).
+ * <p>
+ *     There are only {@link ChemSignature#COUNT} possible profiles, so every one of them is created once
+ *     and shared: {@link HazardProfile#of(int)} always returns the same canonical instance for a signature.
+ *     Chemicals with the same fire diamond therefore share a single <tt>HazardProfile</tt>, and two
+ *     profiles are equal exactly when they are the same object.
+ * </p>
+ *
+ * @see com.tsaysoft.nfpacid3.CompactChemical
+ *
+ * @author Clay Tsay
+ * @version 00.02.00
+ */
+public final class HazardProfile {
+
+    // --------------------
+    // VARIABLES AND DATA
+    // --------------------
+
+    private static final HazardProfile[] PROFILES = new HazardProfile[ChemSignature.COUNT];
+
+    static {
+        for(int signature = 0; signature < PROFILES.length; signature++) {
+            PROFILES[signature] = new HazardProfile(signature);
+        }
+    }
+
+    private final int signature;
+
+
+
+    // --------------------
+    // CONSTRUCTORS
+    // --------------------
+
+    private HazardProfile(int signature) {
+        this.signature = signature;
+    }
+
+    /**
+     * Gets the canonical <tt>HazardProfile</tt> of a signature.
+     *
+     * @param signature a valid <tt>ChemSignature</tt>
+     * @return the shared <tt>HazardProfile</tt>
+     * @throws IllegalArgumentException if the signature is not valid
+     *
+     * @since 00.02.00
+     */
+    public static HazardProfile of(int signature) throws IllegalArgumentException {
+        if(signature < 0 || signature >= PROFILES.length) {
+            throw new IllegalArgumentException("invalid ChemSignature " + signature);
+        }
+        return PROFILES[signature];
+    }
+
+    /**
+     * Gets the canonical <tt>HazardProfile</tt> of the given ratings and special symbols.
+     *
+     * @param health the health rating
+     * @param flammability the flammability rating
+     * @param reactivity the reactivity rating
+     * @param specials the special symbols as a bit mask (see {@link ChemSignature#specialMask(EnumMap)})
+     * @return the shared <tt>HazardProfile</tt>
+     * @throws IllegalArgumentException if any of the arguments are out of range
+     *
+     * @since 00.02.00
+     */
+    public static HazardProfile of(int health, int flammability, int reactivity, int specials)
+            throws IllegalArgumentException {
+        return of(ChemSignature.pack(health, flammability, reactivity, specials));
+    }
+
+
+
+    // --------------------
+    // GETTERS AND SETTERS
+    // --------------------
+
+    /**
+     * Gets the packed <tt>ChemSignature</tt> of the profile.
+     * @return the signature as an <tt>int</tt>
+     *
+     * @since 00.02.00
+     */
+    public int getSignature() {
+        return signature;
+    }
+
+    /**
+     * Gets a specific hazard rating of the profile.
+     * @param prop the specific hazard being queried
+     * @return the rating as an <tt>int</tt>
+     *
+     * @since 00.02.00
+     */
+    public int getProp(ChemProp prop) {
+        return ChemSignature.getProp(signature, prop);
+    }
+
+    /**
+     * Gets all the hazard ratings of the profile.
+     * @return a new <tt>EnumMap</tt> with all of the ratings
+     *
+     * @since 00.02.00
+     */
+    public EnumMap<ChemProp, Integer> getProps() {
+        return ChemSignature.toProps(signature);
+    }
+
+    /**
+     * Gets the presence of a specific special hazard symbol of the profile.
+     * @param special the special hazard symbol being queried
+     * @return the presence of the symbol as a <tt>boolean</tt>
+     *
+     * @since 00.02.00
+     */
+    public boolean getSpecial(ChemSpecial special) {
+        return (ChemSignature.getSpecials(signature) & (1 << special.ordinal())) != 0;
+    }
+
+    /**
+     * Gets all of the presences of the special hazard symbols of the profile.
+     * @return a new <tt>EnumMap</tt> with all of the symbols
+     *
+     * @since 00.02.00
+     */
+    public EnumMap<ChemSpecial, Boolean> getSpecials() {
+        return ChemSignature.toSpecials(signature);
+    }
+
+
+
+    // --------------------
+    // PUBLIC UTILITY METHODS
+    // --------------------
+
+    /**
+     * Prints the profile the way it is usually written, e.g. <tt>2-0-1 OX</tt>.
+     * @return the profile as a <tt>String</tt>
+     *
+     * @since 00.02.00
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(getProp(ChemProp.HEALTH)).append('-')
+                .append(getProp(ChemProp.FLAMMABILITY)).append('-')
+                .append(getProp(ChemProp.REACTIVITY));
+        if(getSpecial(ChemSpecial.OXIDIZER)) {
+            sb.append(" OX");
+        }
+        if(getSpecial(ChemSpecial.SIMPLE_ASPHYXIANT)) {
+            sb.append(" SA");
+        }
+        if(getSpecial(ChemSpecial.WATER_REACT)) {
+            sb.append(" W");
+        }
+        return sb.toString();
+    }
+
+}
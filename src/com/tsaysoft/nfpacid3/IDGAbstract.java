@@ -1,9 +1,11 @@
 package com.tsaysoft.nfpacid3;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * An abstract class outlining classes that handle chemical name to chemical ID conversion.
@@ -11,18 +13,179 @@ import java.net.URL;
  *     Handles the HTTP request involved in converting a chemical name to a specified chemical ID.
  *     ID type is specified by using <tt>enum</tt>s from {@link ChemID}.
  *     Subclasses are denoted by the name of the service they use and the letters "IDG".
+ *     All requests go through the shared {@link IDGHttpClient}, so they time out instead of hanging and
+ *     {@link IDGAbstract#requestIDAsync(String, ChemID)} does not block the calling thread.
+ * </p>
+ * <p>
+ *     Every <tt>IDGAbstract</tt> keeps track of the health of its service. Requests to a service that keeps
+ *     failing or answering very slowly are refused at once until it has had time to recover
+ *     (see {@link IDGAbstract#setFailureThreshold(int)}), and the read timeout of requests follows the latencies
+ *     the service usually has (see {@link IDGAbstract#getTimeout()}).
  * </p>
  *
  * @author Clay Tsay
- * @version 00.01.00
+ * @version 00.02.00
  */
 public abstract class IDGAbstract implements IDGInterface{
 
+    /**
+     * Thrown when a request is refused because the service has been failing.
+     *
+     * @since 00.02.00
+     */
+    public static class UnavailableException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        UnavailableException(String service) {
+            super(service + " is unavailable after repeated failures");
+        }
+    }
+
     // --------------------
     // VARIABLES AND DATA
     // --------------------
 
-    // N/A
+    private final IDGBreaker breaker = new IDGBreaker();
+
+    // Requests per second; 0 for no limit
+    private double rateLimit = 0;
+    // The earliest time (System.nanoTime()) at which the next request may be made
+    private long nextRequest = System.nanoTime();
+
+
+
+    // --------------------
+    // GETTERS AND SETTERS
+    // --------------------
+
+    /**
+     * Gets the maximum rate of requests to the service.
+     * @return the rate in requests per second, or <tt>0</tt> if there is no limit
+     *
+     * @since 00.02.00
+     */
+    public synchronized double getRateLimit() {
+        return rateLimit;
+    }
+
+    /**
+     * Sets the maximum rate of requests to the service.
+     * <p>
+     *     Requests beyond the rate are spaced out evenly: asynchronous ones are delayed without holding a thread,
+     *     {@link IDGAbstract#requestID(String, ChemID)} sleeps. Services often block clients that send too many
+     *     requests, so a limit should be set before large numbers of IDs are requested
+     *     (e.g. by a {@link ChemIDEnricher}).
+     * </p>
+     * @param requestsPerSecond the rate in requests per second, or <tt>0</tt> for no limit
+     * @throws IllegalArgumentException if the rate is negative or not a number
+     *
+     * @since 00.02.00
+     */
+    public synchronized void setRateLimit(double requestsPerSecond) {
+        if(!(requestsPerSecond >= 0)) {
+            throw new IllegalArgumentException("invalid rate: " + requestsPerSecond);
+        }
+        rateLimit = requestsPerSecond;
+    }
+
+    /**
+     * Gets the number of failed or slow requests in a row after which the service is considered down.
+     * @return the number of requests
+     *
+     * @since 00.02.00
+     */
+    public int getFailureThreshold() {
+        return breaker.getFailureThreshold();
+    }
+
+    /**
+     * Sets the number of failed or slow requests in a row after which the service is considered down
+     * (by default 5).
+     * <p>
+     *     Requests that time out, cannot connect or get a <tt>429</tt> or server error count as failed; so do
+     *     requests slower than {@link IDGAbstract#getSlowTime()}. While the service is down, requests fail at once
+     *     with an {@link IDGAbstract.UnavailableException} without using a thread or a connection, so callers can
+     *     move on (an {@link IDGManager} uses its other <tt>IDGetter</tt>s). After {@link IDGAbstract#getOpenTime()}
+     *     a single request is let through to probe the service: if it succeeds, requests are made normally again,
+     *     otherwise the service is left alone for twice as long as before (up to 5 minutes).
+     * </p>
+     * @param failures the number of requests
+     * @throws IllegalArgumentException if <tt>failures</tt> is not positive
+     *
+     * @since 00.02.00
+     */
+    public void setFailureThreshold(int failures) {
+        breaker.setFailureThreshold(failures);
+    }
+
+    /**
+     * Gets the time a service is left alone after it is considered down, before it is probed.
+     * @return the time in milliseconds
+     *
+     * @since 00.02.00
+     */
+    public long getOpenTime() {
+        return breaker.getOpenTime();
+    }
+
+    /**
+     * Sets the time a service is left alone after it is considered down, before it is probed (by default 10 seconds).
+     * @param millis the time in milliseconds
+     * @throws IllegalArgumentException if <tt>millis</tt> is not positive
+     *
+     * @see IDGAbstract#setFailureThreshold(int)
+     * @since 00.02.00
+     */
+    public void setOpenTime(long millis) {
+        breaker.setOpenTime(millis);
+    }
+
+    /**
+     * Gets the latency above which a successful request still counts as a failure of the service.
+     * @return the latency in milliseconds
+     *
+     * @since 00.02.00
+     */
+    public long getSlowTime() {
+        return breaker.getSlowTime();
+    }
+
+    /**
+     * Sets the latency above which a successful request still counts as a failure of the service
+     * (by default 10 seconds).
+     * @param millis the latency in milliseconds
+     * @throws IllegalArgumentException if <tt>millis</tt> is not positive
+     *
+     * @see IDGAbstract#setFailureThreshold(int)
+     * @since 00.02.00
+     */
+    public void setSlowTime(long millis) {
+        breaker.setSlowTime(millis);
+    }
+
+    /**
+     * Gets the read timeout of the next request.
+     * <p>
+     *     Once enough requests have been answered or timed out, it is four times the 99th percentile of their
+     *     latencies, but never less than one second nor more than {@link IDGHttpClient#getReadTimeout()}.
+     * </p>
+     * @return the timeout in milliseconds
+     *
+     * @since 00.02.00
+     */
+    public int getTimeout() {
+        return breaker.timeout();
+    }
+
+    /**
+     * Checks whether a request to the service would be made right now.
+     * @return <tt>false</tt> if the service is considered down and is not due to be probed
+     *
+     * @since 00.02.00
+     */
+    public boolean isAvailable() {
+        return breaker.isAvailable();
+    }
 
 
 
@@ -35,15 +198,85 @@ public abstract class IDGAbstract implements IDGInterface{
         // Make sure to remove cleanName() if it causes problems with ID generation
         String url = urlGenerator(cleanName(chemName), id);
         String JSON;
+        if(!breaker.acquire()) {
+            System.out.println(new UnavailableException(getClass().getSimpleName()) + " - ID unavailable");
+            return null;
+        }
         try {
-            JSON = getHTML(url);
-            return parseJSON(JSON);
+            long delay = reserveRequest();
+            if(delay > 0) {
+                TimeUnit.NANOSECONDS.sleep(delay);
+            }
+            long start = System.nanoTime();
+            try {
+                JSON = IDGHttpClient.get(url, breaker.timeout());
+            } catch (Exception e) {
+                report(e, start);
+                throw e;
+            }
+            report(null, start);
+            return parseJSON(JSON, id);
+        } catch (InterruptedException e) {
+            breaker.release();
+            Thread.currentThread().interrupt();
+            System.out.println(e + " - ID unavailable");
+            return null;
         } catch (Exception e) {
             System.out.println(e + " - ID unavailable");
             return null;
         }
     }
 
+    /**
+     * Converts a chemical name to a specific type of chemical ID on the pool of the shared
+     * {@link IDGHttpClient}.
+     *
+     * @param chemName the trivial (common) or formal (IUPAC) name of the chemical
+     * @return a <tt>CompletableFuture</tt> with the chemical's requested ID, or <tt>null</tt> if it is unavailable
+     *
+     * @since 00.02.00
+     */
+    @Override
+    public CompletableFuture<String> requestIDAsync(String chemName, ChemID id) {
+        CompletableFuture<String> fetch = fetchIDAsync(chemName, id);
+        return IDGHttpClient.cancelWith(fetch.exceptionally(e -> {
+            System.out.println((e.getCause() != null ? e.getCause() : e) + " - ID unavailable");
+            return null;
+        }), fetch);
+    }
+
+    /**
+     * Converts a chemical name to a specific type of chemical ID on the pool of the shared
+     * {@link IDGHttpClient}, reporting failures to the caller.
+     * <p>
+     *     The future completes exceptionally with the <tt>IOException</tt> (see
+     *     {@link IDGHttpClient.StatusException}) if the request fails, and with <tt>null</tt> if the service's
+     *     answer holds no ID. While the service is considered down, the future fails at once with an
+     *     {@link IDGAbstract.UnavailableException}. Cancelling the future aborts the request.
+     * </p>
+     *
+     * @param chemName the trivial (common) or formal (IUPAC) name of the chemical
+     * @return a <tt>CompletableFuture</tt> with the chemical's requested ID
+     *
+     * @since 00.02.00
+     */
+    @Override
+    public CompletableFuture<String> fetchIDAsync(String chemName, ChemID id) {
+        String url = urlGenerator(cleanName(chemName), id);
+        if(!breaker.acquire()) {
+            CompletableFuture<String> refused = new CompletableFuture<>();
+            refused.completeExceptionally(new CompletionException(new UnavailableException(getClass().getSimpleName())));
+            return refused;
+        }
+        long delay = reserveRequest();
+        long start = System.nanoTime() + delay;
+        Executor executor = IDGHttpClient.delayedExecutor(delay, TimeUnit.NANOSECONDS);
+        CompletableFuture<String> response = IDGHttpClient.getAsync(url, executor, breaker.timeout());
+        // Reported before the caller sees the result, so a caller's next request already goes by it
+        CompletableFuture<String> reported = response.whenComplete((JSON, e) -> report(e, start));
+        return IDGHttpClient.cancelWith(reported.thenApply(JSON -> parseJSON(JSON, id)), response);
+    }
+
     /**
      * Takes a chemical name and cleans it of any extraneous content.
      * <p>
@@ -102,6 +335,45 @@ public abstract class IDGAbstract implements IDGInterface{
     // PRIVATE UTILITY METHODS
     // --------------------
 
+    /**
+     * Reserves the next free request slot under the rate limit.
+     *
+     * @return how long to wait before making the request, in nanoseconds
+     */
+    private synchronized long reserveRequest() {
+        if(rateLimit == 0) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        long slot = Math.max(now, nextRequest);
+        nextRequest = slot + (long) (TimeUnit.SECONDS.toNanos(1) / rateLimit);
+        return slot - now;
+    }
+
+    /**
+     * Tells the breaker how a request went.
+     *
+     * @param e the failure of the request, or <tt>null</tt> if the service answered
+     * @param start the time (System.nanoTime()) at which the request was made
+     */
+    private void report(Throwable e, long start) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        if(cause == null) {
+            breaker.success(System.nanoTime() - start);
+        } else if(cause instanceof IDGHttpClient.StatusException
+                && !((IDGHttpClient.StatusException) cause).isTransient()) {
+            // The service answered, just not with an ID (e.g. 404)
+            breaker.success(System.nanoTime() - start);
+        } else if(cause instanceof SocketTimeoutException) {
+            breaker.timedOut(System.nanoTime() - start);
+        } else if(cause instanceof IOException) {
+            breaker.failure();
+        } else {
+            // Cancelled, or failed on this side
+            breaker.release();
+        }
+    }
+
     /**
      * Converts a chemical name to a HTTP request-ready URL.
      *
@@ -112,31 +384,28 @@ public abstract class IDGAbstract implements IDGInterface{
 
     /**
      * Takes a URL and requests the HTML information.
+     * <p>
+     *     Uses the shared {@link IDGHttpClient}, with its connect and read timeouts.
+     * </p>
      *
      * @param urlToRead the URL to be accessed
      * @return the information received as a <tt>String</tt>
      * @throws Exception if the method fails for whatever reason
      */
     protected static String getHTML(String urlToRead) throws Exception {
-        StringBuilder result = new StringBuilder();
-        URL url = new URL(urlToRead);
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        conn.setRequestMethod("GET");
-        BufferedReader rd = new BufferedReader(new InputStreamReader(conn.getInputStream()));
-        String line;
-        while ((line = rd.readLine()) != null) {
-            result.append(line);
-        }
-        rd.close();
-        return result.toString();
+        return IDGHttpClient.get(urlToRead);
     }
 
     /**
      * Parses <tt>String</tt> input into JSON and takes information from the latter, returning a chemical ID.
+     * <p>
+     *     May be called from several threads at once.
+     * </p>
      *
      * @param JSONInput the input containing the ID information in a specific form
+     * @param id the ID type that was requested
      * @return the requested chemical ID as an <tt>String</tt>
      */
-    protected abstract String parseJSON(String JSONInput);
+    protected abstract String parseJSON(String JSONInput, ChemID id);
 
 }
@@ -0,0 +1,256 @@
+package com.tsaysoft.nfpacid3;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps track of the health of an ID service and stops requests to it while it is down (a circuit breaker).
+ * <p>
+ *     The breaker is <i>closed</i> while the service answers. After {@link IDGBreaker#getFailureThreshold()}
+ *     failed or slow requests in a row it <i>opens</i>, and requests are refused at once instead of waiting for
+ *     the service to time out. Once {@link IDGBreaker#getOpenTime()} has passed it is <i>half-open</i>: a single
+ *     request is let through as a probe, and the breaker closes again if the probe succeeds or reopens (for twice
+ *     as long, up to {@link IDGBreaker#MAX_OPEN_TIME}) if it fails.
+ * </p>
+ * <p>
+ *     The latencies of requests that were answered or timed out also set the read timeout of further requests
+ *     (see {@link IDGBreaker#timeout()}).
+ * </p>
+ *
+ * @see com.tsaysoft.nfpacid3.IDGAbstract#isAvailable()
+ *
+ * @author Clay Tsay
+ * @version 00.02.00
+ */
+class IDGBreaker {
+
+    private enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    // --------------------
+    // VARIABLES AND DATA
+    // --------------------
+
+    /**
+     * The default number of failed or slow requests in a row that opens the breaker.
+     */
+    static final int DEFAULT_FAILURE_THRESHOLD = 5;
+
+    /**
+     * The default time the breaker stays open before a probe is let through, in milliseconds.
+     */
+    static final long DEFAULT_OPEN_TIME = 10_000;
+
+    /**
+     * The longest time the breaker stays open, in milliseconds.
+     */
+    static final long MAX_OPEN_TIME = TimeUnit.MINUTES.toMillis(5);
+
+    /**
+     * The default latency above which a successful request still counts against the service, in milliseconds.
+     */
+    static final long DEFAULT_SLOW_TIME = 10_000;
+
+    /**
+     * The shortest read timeout given to requests, in milliseconds.
+     */
+    static final int MIN_TIMEOUT = 1_000;
+
+    // The read timeout is this many times the 99th percentile of recent latencies
+    private static final int TIMEOUT_FACTOR = 4;
+    private static final double TIMEOUT_PERCENTILE = 0.99;
+
+    private final IDGLatency latency = new IDGLatency();
+
+    private int failureThreshold = DEFAULT_FAILURE_THRESHOLD;
+    private long openTime = DEFAULT_OPEN_TIME;
+    private long slowTime = DEFAULT_SLOW_TIME;
+
+    private State state = State.CLOSED;
+    private int failures = 0;
+    // How long the breaker stays open the next time it opens; doubled by every failed probe
+    private long nextOpenTime = DEFAULT_OPEN_TIME;
+    // The time (System.nanoTime()) at which an open breaker lets a probe through
+    private long openUntil = 0;
+    private boolean probing = false;
+
+
+
+    // --------------------
+    // GETTERS AND SETTERS
+    // --------------------
+
+    synchronized int getFailureThreshold() {
+        return failureThreshold;
+    }
+
+    synchronized void setFailureThreshold(int failures) {
+        if(failures <= 0) {
+            throw new IllegalArgumentException("threshold must be positive: " + failures);
+        }
+        failureThreshold = failures;
+    }
+
+    synchronized long getOpenTime() {
+        return openTime;
+    }
+
+    synchronized void setOpenTime(long millis) {
+        if(millis <= 0) {
+            throw new IllegalArgumentException("open time must be positive: " + millis);
+        }
+        openTime = millis;
+        nextOpenTime = millis;
+    }
+
+    synchronized long getSlowTime() {
+        return slowTime;
+    }
+
+    synchronized void setSlowTime(long millis) {
+        if(millis <= 0) {
+            throw new IllegalArgumentException("slow time must be positive: " + millis);
+        }
+        slowTime = millis;
+    }
+
+
+
+    // --------------------
+    // PUBLIC UTILITY METHODS
+    // --------------------
+
+    /**
+     * Checks whether a request would be let through right now, without taking the probe of a half-open breaker.
+     *
+     * @return <tt>false</tt> if the breaker is open, or half-open with a probe in flight
+     */
+    synchronized boolean isAvailable() {
+        switch(state) {
+            case OPEN:
+                return System.nanoTime() - openUntil >= 0;
+            case HALF_OPEN:
+                return !probing;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Asks to make a request. Every request let through must be followed by exactly one call of
+     * {@link IDGBreaker#success(long)}, {@link IDGBreaker#timedOut(long)}, {@link IDGBreaker#failure()} or
+     * {@link IDGBreaker#release()}.
+     *
+     * @return <tt>true</tt> if the request may be made
+     */
+    synchronized boolean acquire() {
+        switch(state) {
+            case OPEN:
+                if(System.nanoTime() - openUntil < 0) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                probing = true;
+                return true;
+            case HALF_OPEN:
+                if(probing) {
+                    return false;
+                }
+                probing = true;
+                return true;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Records a request that the service answered (with or without an ID).
+     *
+     * @param nanos the latency of the request in nanoseconds
+     */
+    synchronized void success(long nanos) {
+        latency.record(nanos);
+        if(nanos > TimeUnit.MILLISECONDS.toNanos(slowTime)) {
+            failure();
+            return;
+        }
+        probing = false;
+        failures = 0;
+        nextOpenTime = openTime;
+        state = State.CLOSED;
+    }
+
+    /**
+     * Records a request that failed because the service did not answer within its read timeout.
+     * <p>
+     *     The time waited counts as a latency, so a service that gets slower than the timeout raises the
+     *     timeout of later requests until they can be answered again.
+     * </p>
+     *
+     * @param nanos the time the request waited in nanoseconds
+     */
+    synchronized void timedOut(long nanos) {
+        latency.record(nanos);
+        failure();
+    }
+
+    /**
+     * Records a request that failed because of the service (e.g. a server error).
+     */
+    synchronized void failure() {
+        failures++;
+        if(state == State.HALF_OPEN) {
+            probing = false;
+            nextOpenTime = Math.min(MAX_OPEN_TIME, nextOpenTime * 2);
+            open();
+        } else if(state == State.CLOSED && failures >= failureThreshold) {
+            open();
+        }
+    }
+
+    /**
+     * Records a request that ended without telling anything about the service (e.g. it was cancelled).
+     */
+    synchronized void release() {
+        probing = false;
+    }
+
+    /**
+     * Gets the read timeout for the next request.
+     * <p>
+     *     Once enough latencies are known, it is four times their 99th percentile, but never
+     *     less than {@link IDGBreaker#MIN_TIMEOUT} nor more than {@link IDGHttpClient#getReadTimeout()}. A service
+     *     that suddenly gets much slower than usual is thus soon counted as failing, and holds threads for less
+     *     time. The probe of a half-open breaker is always given the full {@link IDGHttpClient#getReadTimeout()},
+     *     so that a service that is still up but has stayed slower can close the breaker again.
+     * </p>
+     *
+     * @return the timeout in milliseconds
+     */
+    int timeout() {
+        int max = IDGHttpClient.getReadTimeout();
+        synchronized(this) {
+            if(state == State.HALF_OPEN) {
+                return max;
+            }
+        }
+        long p99 = latency.percentile(TIMEOUT_PERCENTILE);
+        if(p99 < 0) {
+            return max;
+        }
+        long adaptive = TimeUnit.NANOSECONDS.toMillis(p99) * TIMEOUT_FACTOR;
+        return (int) Math.min(max, Math.max(MIN_TIMEOUT, adaptive));
+    }
+
+
+
+    // --------------------
+    // PRIVATE UTILITY METHODS
+    // --------------------
+
+    private void open() {
+        state = State.OPEN;
+        openUntil = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(nextOpenTime);
+    }
+
+}
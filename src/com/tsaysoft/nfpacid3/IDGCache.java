@@ -0,0 +1,567 @@
+package com.tsaysoft.nfpacid3;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A persistent cache in front of an {@link IDGInterface}.
+ * <p>
+ *     Every ID request goes over the network, which is slow and has to be repeated for every new
+ *     {@link Chemical} and after every restart. An <tt>IDGCache</tt> remembers the answers, keyed by the
+ *     normalized chemical name (see {@link Chemical#normalizeName(String)}), the {@link ChemID} type and the
+ *     provider, and keeps them in a small binary file between runs.
+ * </p>
+ * <p>
+ *     Answers expire after a time-to-live; IDs that were unavailable are remembered too, but for a shorter
+ *     time so that they are asked for again sooner. When the cache is full, the least recently used answers
+ *     are evicted. Only one <tt>IDGCache</tt> should use a file at a time.
+ * </p>
+ * <p>
+ *     New answers are written to the file in the background, {@link IDGCache#getSaveDelay()} after the first
+ *     unsaved one, and once more when the program exits, so a cache that is never saved or closed explicitly
+ *     (e.g. one given to {@link Chemical#setIDG(IDGInterface)}) still keeps its answers. A cache file that
+ *     cannot be read is reported to the console and replaced by an empty cache.
+ * </p>
+ * <p>
+ *     The file holds the magic bytes <tt>NFPAIDGC</tt>, the format version and the number of entries,
+ *     followed by each entry's key, expiry time and ID, from least to most recently used.
+ * </p>
+ *
+ * @see com.tsaysoft.nfpacid3.Chemical#setIDG(IDGInterface)
+ *
+ * @author Clay Tsay
+ * @version 00.02.00
+ */
+public class IDGCache implements IDGInterface, Closeable {
+
+    /**
+     * A cached answer, which is <tt>null</tt> if the ID was unavailable.
+     */
+    private static final class Answer {
+        final String id;
+        final long expires;
+
+        Answer(String id, long expires) {
+            this.id = id;
+            this.expires = expires;
+        }
+    }
+
+    /**
+     * The cached answers in access order, which drop the least recently used one once over their maximum size.
+     */
+    private static final class Entries extends LinkedHashMap<String, Answer> {
+        private static final long serialVersionUID = 1L;
+
+        private int maxSize = DEFAULT_MAX_SIZE;
+
+        Entries() {
+            super(16, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Answer> eldest) {
+            return size() > maxSize;
+        }
+    }
+
+    // --------------------
+    // VARIABLES AND DATA
+    // --------------------
+
+    private static final byte[] MAGIC = "NFPAIDGC".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+
+    /**
+     * The default time-to-live of an ID, in milliseconds (30 days).
+     */
+    public static final long DEFAULT_TTL = TimeUnit.DAYS.toMillis(30);
+
+    /**
+     * The default time-to-live of an unavailable ID, in milliseconds (1 day).
+     */
+    public static final long DEFAULT_MISS_TTL = TimeUnit.DAYS.toMillis(1);
+
+    /**
+     * The default maximum number of cached answers.
+     */
+    public static final int DEFAULT_MAX_SIZE = 100_000;
+
+    /**
+     * The default time between the first unsaved answer and the save that writes it, in milliseconds.
+     */
+    public static final long DEFAULT_SAVE_DELAY = TimeUnit.SECONDS.toMillis(10);
+
+    private final IDGInterface idg;
+    private final String provider;
+    private final Path file;
+
+    private long ttl = DEFAULT_TTL;
+    private long missTTL = DEFAULT_MISS_TTL;
+    private long saveDelay = DEFAULT_SAVE_DELAY;
+
+    private final Entries entries = new Entries();
+
+    // Whether the answers have changed since the last save, and whether a background save is already on its way
+    private boolean unsaved = false;
+    private boolean saveScheduled = false;
+
+    // Saves unsaved answers when the program exits; removed by close()
+    private final Thread shutdownHook = new Thread(this::saveIfUnsaved, "IDGCache-shutdown");
+
+
+
+    // --------------------
+    // CONSTRUCTORS
+    // --------------------
+
+    /**
+     * Constructs an <tt>IDGCache</tt> in front of an ID getter, named after the ID getter's class.
+     *
+     * @param idg the ID getter to be asked when an answer is not cached
+     * @param fileName the name of the cache file, which is read if it exists
+     *
+     * @see IDGCache#IDGCache(IDGInterface, String, String)
+     * @since 00.02.00
+     */
+    public IDGCache(IDGInterface idg, String fileName) {
+        this(idg, idg.getClass().getName(), fileName);
+    }
+
+    /**
+     * Constructs an <tt>IDGCache</tt> in front of an ID getter.
+     * <p>
+     *     The provider name is part of every key, so one cache file can hold the answers of several
+     *     providers; answers of other providers in the file are kept but never returned.
+     * </p>
+     *
+     * @param idg the ID getter to be asked when an answer is not cached
+     * @param provider the name of the ID getter's provider
+     * @param fileName the name of the cache file, which is read if it exists
+     *
+     * @since 00.02.00
+     */
+    public IDGCache(IDGInterface idg, String provider, String fileName) {
+        this.idg = idg;
+        this.provider = provider;
+        this.file = Paths.get(fileName);
+        if(Files.exists(file)) {
+            try {
+                read();
+            } catch (IOException e) {
+                // A truncated or corrupt file only costs the answers in it; they are asked for again
+                System.out.println(e + " - ID cache could not be read, starting empty");
+                entries.clear();
+            }
+        }
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+
+
+    // --------------------
+    // GETTERS AND SETTERS
+    // --------------------
+
+    /**
+     * Gets the time-to-live of an ID.
+     * @return the time-to-live in milliseconds
+     *
+     * @since 00.02.00
+     */
+    public synchronized long getTTL() {
+        return ttl;
+    }
+
+    /**
+     * Sets the time-to-live of IDs cached from now on.
+     * @param ttl the time-to-live in milliseconds
+     * @throws IllegalArgumentException if <tt>ttl</tt> is negative
+     *
+     * @since 00.02.00
+     */
+    public synchronized void setTTL(long ttl) {
+        if(ttl < 0) {
+            throw new IllegalArgumentException("negative TTL: " + ttl);
+        }
+        this.ttl = ttl;
+    }
+
+    /**
+     * Gets the time-to-live of an unavailable ID.
+     * @return the time-to-live in milliseconds
+     *
+     * @since 00.02.00
+     */
+    public synchronized long getMissTTL() {
+        return missTTL;
+    }
+
+    /**
+     * Sets the time-to-live of unavailable IDs cached from now on; <tt>0</tt> stops them from being cached.
+     * @param missTTL the time-to-live in milliseconds
+     * @throws IllegalArgumentException if <tt>missTTL</tt> is negative
+     *
+     * @since 00.02.00
+     */
+    public synchronized void setMissTTL(long missTTL) {
+        if(missTTL < 0) {
+            throw new IllegalArgumentException("negative TTL: " + missTTL);
+        }
+        this.missTTL = missTTL;
+    }
+
+    /**
+     * Gets the maximum number of cached answers.
+     * @return the maximum number of answers
+     *
+     * @since 00.02.00
+     */
+    public synchronized int getMaxSize() {
+        return entries.maxSize;
+    }
+
+    /**
+     * Sets the maximum number of cached answers, evicting the least recently used ones if there are more.
+     * @param maxSize the maximum number of answers
+     * @throws IllegalArgumentException if <tt>maxSize</tt> is negative
+     *
+     * @since 00.02.00
+     */
+    public synchronized void setMaxSize(int maxSize) {
+        if(maxSize < 0) {
+            throw new IllegalArgumentException("negative size: " + maxSize);
+        }
+        entries.maxSize = maxSize;
+        Iterator<String> eldest = entries.keySet().iterator();
+        while(entries.size() > maxSize) {
+            eldest.next();
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Gets the time between the first unsaved answer and the background save that writes it.
+     * @return the delay in milliseconds
+     *
+     * @since 00.02.00
+     */
+    public synchronized long getSaveDelay() {
+        return saveDelay;
+    }
+
+    /**
+     * Sets the time between the first unsaved answer and the background save that writes it; <tt>0</tt> saves
+     * after every new answer.
+     * @param saveDelay the delay in milliseconds
+     * @throws IllegalArgumentException if <tt>saveDelay</tt> is negative
+     *
+     * @since 00.02.00
+     */
+    public synchronized void setSaveDelay(long saveDelay) {
+        if(saveDelay < 0) {
+            throw new IllegalArgumentException("negative delay: " + saveDelay);
+        }
+        this.saveDelay = saveDelay;
+    }
+
+    /**
+     * Gets the number of cached answers, including expired ones that have not been removed yet.
+     * @return the number of answers
+     *
+     * @since 00.02.00
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+
+
+    // --------------------
+    // PUBLIC UTILITY METHODS
+    // --------------------
+
+    /**
+     * Gets a chemical ID from the cache, or from the ID getter if it is not cached or has expired.
+     * <p>
+     *     The ID getter is asked without holding a lock, so other names can be looked up meanwhile.
+     *     Chemicals without a name are never cached, and neither are failed requests (e.g. timeouts or
+     *     server errors): they are reported to the console, <tt>null</tt> is returned and the name is asked for
+     *     again next time.
+     * </p>
+     *
+     * @param chemName the trivial (common) or formal (IUPAC) name of the chemical
+     * @return the chemical's requested ID as a <tt>String</tt>, or <tt>null</tt> if it is unavailable
+     *
+     * @since 00.02.00
+     */
+    @Override
+    public String requestID(String chemName, ChemID id) {
+        String key = key(chemName, id);
+        if(key == null) {
+            return idg.requestID(chemName, id);
+        }
+        // Goes through fetchIDAsync, since requestID would turn failures into null answers that look like misses
+        return requestIDAsync(chemName, id).join();
+    }
+
+    /**
+     * Gets a chemical ID from the cache, or asks the ID getter asynchronously if it is not cached or
+     * has expired.
+     *
+     * @param chemName the trivial (common) or formal (IUPAC) name of the chemical
+     * @return a <tt>CompletableFuture</tt> with the chemical's requested ID, already completed if it was cached
+     *     (failed requests are not cached)
+     *
+     * @see IDGCache#requestID(String, ChemID)
+     * @since 00.02.00
+     */
+    @Override
+    public CompletableFuture<String> requestIDAsync(String chemName, ChemID id) {
+        String key = key(chemName, id);
+        if(key == null) {
+            return idg.requestIDAsync(chemName, id);
+        }
+        Answer answer = lookup(key);
+        if(answer != null) {
+            return CompletableFuture.completedFuture(answer.id);
+        }
+        CompletableFuture<String> fetch = idg.fetchIDAsync(chemName, id);
+        return IDGHttpClient.cancelWith(fetch.thenApply(result -> store(key, result)).exceptionally(e -> {
+            System.out.println((e.getCause() != null ? e.getCause() : e) + " - ID unavailable");
+            return null;
+        }), fetch);
+    }
+
+    /**
+     * Gets a chemical ID from the cache, or fetches it asynchronously from the ID getter if it is not cached or
+     * has expired.
+     * <p>
+     *     Failed requests are passed on to the caller and are not cached.
+     * </p>
+     *
+     * @param chemName the trivial (common) or formal (IUPAC) name of the chemical
+     * @return a <tt>CompletableFuture</tt> with the chemical's requested ID, already completed if it was cached
+     *
+     * @see IDGInterface#fetchIDAsync(String, ChemID)
+     * @since 00.02.00
+     */
+    @Override
+    public CompletableFuture<String> fetchIDAsync(String chemName, ChemID id) {
+        String key = key(chemName, id);
+        if(key == null) {
+            return idg.fetchIDAsync(chemName, id);
+        }
+        Answer answer = lookup(key);
+        if(answer != null) {
+            return CompletableFuture.completedFuture(answer.id);
+        }
+        CompletableFuture<String> fetch = idg.fetchIDAsync(chemName, id);
+        return IDGHttpClient.cancelWith(fetch.thenApply(result -> store(key, result)), fetch);
+    }
+
+    /**
+     * Removes every cached answer (but not the cache file, until the next save).
+     *
+     * @since 00.02.00
+     */
+    public synchronized void clear() {
+        entries.clear();
+        changed();
+    }
+
+    /**
+     * Writes the unexpired answers to the cache file.
+     * <p>
+     *     A new file is written next to the old one and then renamed over it, so the cache file is never left
+     *     half-written.
+     * </p>
+     * @throws IOException if the file cannot be written
+     *
+     * @since 00.02.00
+     */
+    public synchronized void save() throws IOException {
+        unsaved = false;
+        long now = System.currentTimeMillis();
+        Path directory = file.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.write(MAGIC);
+                out.writeInt(VERSION);
+                int count = 0;
+                for(Answer answer : entries.values()) {
+                    if(answer.expires > now) {
+                        count++;
+                    }
+                }
+                out.writeInt(count);
+                for(Map.Entry<String, Answer> entry : entries.entrySet()) {
+                    if(entry.getValue().expires > now) {
+                        out.writeUTF(entry.getKey());
+                        out.writeLong(entry.getValue().expires);
+                        out.writeBoolean(entry.getValue().id != null);
+                        if(entry.getValue().id != null) {
+                            out.writeUTF(entry.getValue().id);
+                        }
+                    }
+                }
+            }
+            try {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException | RuntimeException e) {
+            unsaved = true;
+            throw e;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Saves the cache (see {@link IDGCache#save()}) and stops saving it when the program exits, so that it can
+     * be garbage-collected.
+     * @throws IOException if the file cannot be written
+     *
+     * @since 00.02.00
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            // The program is exiting, and the hook saves the cache anyway
+        }
+        save();
+    }
+
+
+
+    // --------------------
+    // PRIVATE UTILITY METHODS
+    // --------------------
+
+    /**
+     * Reads the cache file, dropping expired answers.
+     */
+    private void read() throws IOException {
+        long now = System.currentTimeMillis();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            if(!Arrays.equals(magic, MAGIC)) {
+                throw new IOException("not an ID cache: " + file);
+            }
+            int version = in.readInt();
+            if(version != VERSION) {
+                throw new IOException("unsupported ID cache version " + version + ": " + file);
+            }
+            int count = in.readInt();
+            for(int i = 0; i < count; i++) {
+                String key = in.readUTF();
+                long expires = in.readLong();
+                String id = in.readBoolean() ? in.readUTF() : null;
+                if(expires > now) {
+                    entries.put(key, new Answer(id, expires));
+                }
+            }
+        } catch (EOFException e) {
+            throw new IOException("truncated ID cache: " + file, e);
+        }
+    }
+
+    /**
+     * Gets the cache key of a request.
+     *
+     * @return the key, or <tt>null</tt> if the chemical has no name and should not be cached
+     */
+    private String key(String chemName, ChemID id) {
+        String normalized = Chemical.normalizeName(chemName);
+        if(normalized == null || normalized.isEmpty()) {
+            return null;
+        }
+        return provider + '\0' + id.name() + '\0' + normalized;
+    }
+
+    /**
+     * Gets an unexpired answer, removing it if it has expired.
+     *
+     * @return the answer, or <tt>null</tt> if there is none
+     */
+    private synchronized Answer lookup(String key) {
+        Answer answer = entries.get(key);
+        if(answer != null && answer.expires <= System.currentTimeMillis()) {
+            entries.remove(key);
+            return null;
+        }
+        return answer;
+    }
+
+    /**
+     * Caches an answer from the ID getter.
+     *
+     * @return the ID that was given
+     */
+    private synchronized String store(String key, String result) {
+        long life = result == null ? missTTL : ttl;
+        if(life > 0) {
+            entries.put(key, new Answer(result, expiry(life)));
+            changed();
+        }
+        return result;
+    }
+
+    /**
+     * Notes that the answers have changed, and schedules a background save unless one is already scheduled.
+     */
+    private synchronized void changed() {
+        unsaved = true;
+        if(!saveScheduled) {
+            saveScheduled = true;
+            IDGHttpClient.delayedExecutor(saveDelay, TimeUnit.MILLISECONDS).execute(() -> {
+                synchronized(this) {
+                    saveScheduled = false;
+                }
+                saveIfUnsaved();
+            });
+        }
+    }
+
+    /**
+     * Saves the cache if it has changed since the last save, reporting failures to the console.
+     */
+    private synchronized void saveIfUnsaved() {
+        if(unsaved) {
+            try {
+                save();
+            } catch (IOException e) {
+                System.out.println(e + " - ID cache could not be saved");
+            }
+        }
+    }
+
+    private static long expiry(long life) {
+        long now = System.currentTimeMillis();
+        return life > Long.MAX_VALUE - now ? Long.MAX_VALUE : now + life;
+    }
+
+}
@@ -0,0 +1,393 @@
+package com.tsaysoft.nfpacid3;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * The HTTP client shared by all {@link IDGAbstract}s.
+ * <p>
+ *     Requests are made with <tt>HttpURLConnection</tt>, which keeps connections alive and reuses them as long
+ *     as every response is read to the end and closed, as done here. Every request has a connect and a read
+ *     timeout, so a slow or unreachable service can no longer block a thread forever.
+ * </p>
+ * <p>
+ *     Asynchronous requests run on a shared pool of {@link IDGHttpClient#THREADS} daemon threads, which
+ *     bounds the number of requests in flight; further requests wait in line. The JDK keeps at most
+ *     <tt>http.maxConnections</tt> (by default 5) idle connections per host, which can be raised with that
+ *     system property.
+ * </p>
+ *
+ * @see com.tsaysoft.nfpacid3.IDGInterface#requestIDAsync(String, ChemID)
+ *
+ * @author Clay Tsay
+ * @version 00.02.00
+ */
+public final class IDGHttpClient {
+
+    /**
+     * Thrown when a service answers with a status other than 2xx.
+     *
+     * @since 00.02.00
+     */
+    public static class StatusException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private final int status;
+
+        StatusException(int status, String url) {
+            super("HTTP " + status + " from " + url);
+            this.status = status;
+        }
+
+        /**
+         * Gets the HTTP status code of the response.
+         * @return the status code (e.g. <tt>503</tt>)
+         */
+        public int getStatus() {
+            return status;
+        }
+
+        /**
+         * Checks whether the same request may succeed later.
+         * @return <tt>true</tt> for <tt>429 Too Many Requests</tt> and server errors (5xx)
+         */
+        public boolean isTransient() {
+            return status == 429 || status >= 500;
+        }
+    }
+
+    /**
+     * Makes daemon threads, so pending requests never keep the program running.
+     */
+    private static final class DaemonFactory implements ThreadFactory {
+        private final String name;
+        private final AtomicInteger count = new AtomicInteger();
+
+        DaemonFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    // --------------------
+    // VARIABLES AND DATA
+    // --------------------
+
+    /**
+     * The number of threads that asynchronous requests run on.
+     */
+    public static final int THREADS = 16;
+
+    /**
+     * The default connect timeout, in milliseconds.
+     */
+    public static final int DEFAULT_CONNECT_TIMEOUT = 5_000;
+
+    /**
+     * The default read timeout, in milliseconds.
+     */
+    public static final int DEFAULT_READ_TIMEOUT = 15_000;
+
+    private static volatile int connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+    private static volatile int readTimeout = DEFAULT_READ_TIMEOUT;
+
+    private static final ExecutorService executor = Executors.newFixedThreadPool(THREADS, new DaemonFactory("IDGHttpClient"));
+
+    // Only hands delayed tasks over to the executor
+    private static final ScheduledExecutorService scheduler =
+            Executors.newSingleThreadScheduledExecutor(new DaemonFactory("IDGHttpClient-scheduler"));
+
+
+
+    // --------------------
+    // CONSTRUCTORS
+    // --------------------
+
+    private IDGHttpClient() {
+        // Utility class - not to be instantiated
+    }
+
+
+
+    // --------------------
+    // GETTERS AND SETTERS
+    // --------------------
+
+    /**
+     * Gets the time allowed for opening a connection.
+     * @return the connect timeout in milliseconds
+     *
+     * @since 00.02.00
+     */
+    public static int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    /**
+     * Sets the time allowed for opening a connection, for all requests made from now on.
+     * @param millis the connect timeout in milliseconds
+     * @throws IllegalArgumentException if <tt>millis</tt> is not positive
+     *
+     * @since 00.02.00
+     */
+    public static void setConnectTimeout(int millis) {
+        if(millis <= 0) {
+            throw new IllegalArgumentException("timeout must be positive: " + millis);
+        }
+        connectTimeout = millis;
+    }
+
+    /**
+     * Gets the time allowed between two reads of a response.
+     * @return the read timeout in milliseconds
+     *
+     * @since 00.02.00
+     */
+    public static int getReadTimeout() {
+        return readTimeout;
+    }
+
+    /**
+     * Sets the time allowed between two reads of a response, for all requests made from now on.
+     * @param millis the read timeout in milliseconds
+     * @throws IllegalArgumentException if <tt>millis</tt> is not positive
+     *
+     * @since 00.02.00
+     */
+    public static void setReadTimeout(int millis) {
+        if(millis <= 0) {
+            throw new IllegalArgumentException("timeout must be positive: " + millis);
+        }
+        readTimeout = millis;
+    }
+
+    /**
+     * Gets the pool that asynchronous requests run on.
+     * <p>
+     *     Also used by ID getters that are not HTTP-based, so that all ID lookups share one bound.
+     * </p>
+     * @return the shared <tt>ExecutorService</tt>
+     *
+     * @since 00.02.00
+     */
+    public static ExecutorService getExecutor() {
+        return executor;
+    }
+
+
+
+    // --------------------
+    // PUBLIC UTILITY METHODS
+    // --------------------
+
+    /**
+     * Makes a GET request and reads the whole response as UTF-8 text.
+     *
+     * @param url the URL to be requested
+     * @return the body of the response
+     * @throws IOException if the request fails or times out
+     * @throws StatusException if the response status is not 2xx
+     *
+     * @since 00.02.00
+     */
+    public static String get(String url) throws IOException {
+        return get(url, readTimeout);
+    }
+
+    /**
+     * Makes a GET request with its own read timeout and reads the whole response as UTF-8 text.
+     *
+     * @param url the URL to be requested
+     * @param readTimeout the time allowed between two reads of the response, in milliseconds
+     * @return the body of the response
+     * @throws IOException if the request fails or times out
+     * @throws StatusException if the response status is not 2xx
+     *
+     * @see IDGHttpClient#setReadTimeout(int)
+     * @since 00.02.00
+     */
+    public static String get(String url, int readTimeout) throws IOException {
+        return get(url, readTimeout, conn -> { });
+    }
+
+    /**
+     * Gets an <tt>Executor</tt> that runs tasks on the shared pool after a delay.
+     * <p>
+     *     Used to space out requests (e.g. for rate limits or retries) without holding a pool thread while waiting.
+     * </p>
+     *
+     * @param delay how long to wait before running each task
+     * @param unit the unit of <tt>delay</tt>
+     * @return the delayed <tt>Executor</tt>
+     *
+     * @since 00.02.00
+     */
+    public static Executor delayedExecutor(long delay, TimeUnit unit) {
+        if(delay <= 0) {
+            return executor;
+        }
+        return task -> scheduler.schedule(() -> executor.execute(task), delay, unit);
+    }
+
+    /**
+     * Makes a GET request on the shared pool.
+     *
+     * @param url the URL to be requested
+     * @return a <tt>CompletableFuture</tt> with the body of the response
+     *
+     * @see IDGHttpClient#getAsync(String, Executor)
+     * @since 00.02.00
+     */
+    public static CompletableFuture<String> getAsync(String url) {
+        return getAsync(url, executor);
+    }
+
+    /**
+     * Makes a GET request on the given <tt>Executor</tt> (e.g. a {@link IDGHttpClient#delayedExecutor delayed}
+     * one).
+     * <p>
+     *     Cancelling the returned future aborts the request: if it has not started yet it is never made,
+     *     otherwise its connection is closed, which frees the thread waiting on it.
+     * </p>
+     *
+     * @param url the URL to be requested
+     * @param executor the <tt>Executor</tt> to make the request on
+     * @return a <tt>CompletableFuture</tt> with the body of the response, completed exceptionally with a
+     *     <tt>CompletionException</tt> wrapping the <tt>IOException</tt> if the request fails
+     *
+     * @see IDGHttpClient#get(String)
+     * @since 00.02.00
+     */
+    public static CompletableFuture<String> getAsync(String url, Executor executor) {
+        return getAsync(url, executor, readTimeout);
+    }
+
+    /**
+     * Makes a GET request with its own read timeout on the given <tt>Executor</tt>.
+     *
+     * @param url the URL to be requested
+     * @param executor the <tt>Executor</tt> to make the request on
+     * @param readTimeout the time allowed between two reads of the response, in milliseconds
+     * @return a <tt>CompletableFuture</tt> with the body of the response
+     *
+     * @see IDGHttpClient#getAsync(String, Executor)
+     * @since 00.02.00
+     */
+    public static CompletableFuture<String> getAsync(String url, Executor executor, int readTimeout) {
+        AtomicReference<HttpURLConnection> connection = new AtomicReference<>();
+        CompletableFuture<String> result = new CompletableFuture<String>() {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                boolean cancelled = super.cancel(mayInterruptIfRunning);
+                HttpURLConnection conn = connection.get();
+                if(conn != null) {
+                    conn.disconnect();
+                }
+                return cancelled;
+            }
+        };
+        executor.execute(() -> {
+            if(result.isDone()) {
+                return;
+            }
+            try {
+                result.complete(get(url, readTimeout, conn -> {
+                    connection.set(conn);
+                    // Cancelled between the check above and now
+                    if(result.isCancelled()) {
+                        conn.disconnect();
+                    }
+                }));
+            } catch (IOException | RuntimeException e) {
+                result.completeExceptionally(new CompletionException(e));
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Cancels a source future whenever a future derived from it (e.g. with <tt>thenApply</tt>) is cancelled,
+     * which <tt>CompletableFuture</tt> does not do by itself.
+     *
+     * @param derived the derived future
+     * @param source the future it was derived from
+     * @return <tt>derived</tt>
+     *
+     * @since 00.02.00
+     */
+    public static <T> CompletableFuture<T> cancelWith(CompletableFuture<T> derived, CompletableFuture<?> source) {
+        derived.whenComplete((value, e) -> {
+            if(derived.isCancelled()) {
+                source.cancel(true);
+            }
+        });
+        return derived;
+    }
+
+
+
+    // --------------------
+    // PRIVATE UTILITY METHODS
+    // --------------------
+
+    /**
+     * Makes a GET request, handing the connection to <tt>opened</tt> before waiting for the response.
+     */
+    private static String get(String url, int readTimeout, Consumer<HttpURLConnection> opened) throws IOException {
+        if(readTimeout <= 0) {
+            throw new IllegalArgumentException("timeout must be positive: " + readTimeout);
+        }
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        conn.setRequestMethod("GET");
+        conn.setConnectTimeout(connectTimeout);
+        conn.setReadTimeout(readTimeout);
+        conn.setRequestProperty("Accept", "application/json");
+        opened.accept(conn);
+
+        int status = conn.getResponseCode();
+        if(status < 200 || status >= 300) {
+            // Read the error body too, so the connection can be reused
+            try (InputStream error = conn.getErrorStream()) {
+                if(error != null) {
+                    readAll(error);
+                }
+            }
+            throw new StatusException(status, url);
+        }
+        try (InputStream in = conn.getInputStream()) {
+            return new String(readAll(in), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+}
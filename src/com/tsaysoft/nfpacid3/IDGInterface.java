@@ -1,5 +1,7 @@
 package com.tsaysoft.nfpacid3;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * The Java interface that unifies chemical ID getters.
  * <p>
@@ -7,7 +9,7 @@ package com.tsaysoft.nfpacid3;
  * </p>
  *
  * @author Clay Tsay
- * @version 00.01.00
+ * @version 00.02.00
  */
 public interface IDGInterface {
 
@@ -23,4 +25,42 @@ public interface IDGInterface {
      * @since 00.01.00
      */
     String requestID(String chemName, ChemID id);
+
+    /**
+     * Converts a chemical name to a specific type of chemical ID without blocking the calling thread.
+     * <p>
+     *     As with {@link IDGInterface#requestID(String, ChemID)}, an unavailable ID is printed to the console
+     *     and the future is completed with <tt>null</tt>.
+     *     By default, <tt>requestID</tt> is run on the pool shared by all ID getters
+     *     (see {@link IDGHttpClient#getExecutor()}).
+     * </p>
+     *
+     * @param chemName the trivial (common) or formal (IUPAC) name of the chemical
+     * @return a <tt>CompletableFuture</tt> with the chemical's requested ID as a <tt>String</tt>
+     *
+     * @since 00.02.00
+     */
+    default CompletableFuture<String> requestIDAsync(String chemName, ChemID id) {
+        return CompletableFuture.supplyAsync(() -> requestID(chemName, id), IDGHttpClient.getExecutor());
+    }
+
+    /**
+     * Converts a chemical name to a specific type of chemical ID without blocking the calling thread,
+     * reporting failures to the caller.
+     * <p>
+     *     Unlike {@link IDGInterface#requestIDAsync(String, ChemID)}, a failed request (e.g. a timeout or an
+     *     unreachable service) completes the future exceptionally, so the caller can retry it or ask another
+     *     service; <tt>null</tt> only means that the service answered but has no such ID.
+     *     By default, failures cannot be told apart and this is the same as <tt>requestIDAsync</tt>.
+     * </p>
+     *
+     * @param chemName the trivial (common) or formal (IUPAC) name of the chemical
+     * @return a <tt>CompletableFuture</tt> with the chemical's requested ID as a <tt>String</tt>
+     *
+     * @since 00.02.00
+     */
+    default CompletableFuture<String> fetchIDAsync(String chemName, ChemID id) {
+        return requestIDAsync(chemName, id);
+    }
+
 }
@@ -0,0 +1,67 @@
+package com.tsaysoft.nfpacid3;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the latencies of the most recent requests to an ID service.
+ * <p>
+ *     Used to decide when a request is taking unusually long (see {@link IDGManager#setHedging(boolean)}).
+ * </p>
+ *
+ * @author Clay Tsay
+ * @version 00.02.00
+ */
+class IDGLatency {
+
+    // --------------------
+    // VARIABLES AND DATA
+    // --------------------
+
+    /**
+     * The number of latencies kept.
+     */
+    static final int WINDOW = 128;
+
+    /**
+     * The number of latencies needed before percentiles are given.
+     */
+    static final int MIN_SAMPLES = 16;
+
+    private final long[] samples = new long[WINDOW];
+    private int count = 0;
+    private int next = 0;
+
+
+
+    // --------------------
+    // PUBLIC UTILITY METHODS
+    // --------------------
+
+    /**
+     * Adds the latency of a request, replacing the oldest one once the window is full.
+     *
+     * @param nanos the latency in nanoseconds
+     */
+    synchronized void record(long nanos) {
+        samples[next] = nanos;
+        next = (next + 1) % WINDOW;
+        count = Math.min(count + 1, WINDOW);
+    }
+
+    /**
+     * Gets a percentile of the recent latencies.
+     *
+     * @param percentile the percentile, from <tt>0</tt> to <tt>1</tt> (e.g. <tt>0.95</tt>)
+     * @return the latency in nanoseconds, or <tt>-1</tt> if fewer than {@link IDGLatency#MIN_SAMPLES} are known
+     */
+    synchronized long percentile(double percentile) {
+        if(count < MIN_SAMPLES) {
+            return -1;
+        }
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile * count) - 1;
+        return sorted[Math.max(0, Math.min(count - 1, index))];
+    }
+
+}
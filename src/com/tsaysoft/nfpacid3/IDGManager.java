@@ -1,6 +1,11 @@
 package com.tsaysoft.nfpacid3;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * <tt>IDGManager</tt>s manage multiple {@link IDGAbstract}s.
@@ -10,9 +15,16 @@ import java.util.*;
  *     that interfere with name-to-ID conversion services. Therefore, <tt>IDGManager</tt>s
  *     take in information from numerous sources to arrive at an accurate chemical ID.
  * </p>
+ * <p>
+ *     All of the <tt>IDGetter</tt>s are asked at once, and an ID is returned as soon as a quorum of them agrees
+ *     on it (see {@link IDGManager#fetchIDAsync(String, ChemID)}); requests that are unusually slow can also
+ *     be hedged (see {@link IDGManager#setHedging(boolean)}).
+ *     An <tt>IDGetter</tt> whose service is down refuses requests at once
+ *     (see {@link IDGAbstract#setFailureThreshold(int)}), so the answer then comes from the others.
+ * </p>
  *
  * @author Clay Tsay
- * @version 00.01.00
+ * @version 00.02.00
  */
 public class IDGManager implements IDGInterface{
 
@@ -20,8 +32,20 @@ public class IDGManager implements IDGInterface{
     // VARIABLES AND DATA
     // --------------------
 
+    /**
+     * The default percentile of recent latencies after which a request is hedged.
+     */
+    public static final double DEFAULT_HEDGE_PERCENTILE = 0.95;
+
     private List<IDGAbstract> IDGs = new ArrayList<>();
 
+    // The recent latencies of each IDGetter (which are compared by identity)
+    private final Map<IDGAbstract, IDGLatency> latencies = new ConcurrentHashMap<>();
+
+    private volatile int quorum = 0;
+    private volatile boolean hedging = false;
+    private volatile double hedgePercentile = DEFAULT_HEDGE_PERCENTILE;
+
 
 
     // --------------------
@@ -67,69 +91,296 @@ public class IDGManager implements IDGInterface{
         IDGs.addAll(IDGCollection);
     }
 
+
+
+    // --------------------
+    // GETTERS AND SETTERS
+    // --------------------
+
+    /**
+     * Gets the number of <tt>IDGetter</tt>s that must agree on an ID.
+     * @return the quorum, or <tt>0</tt> for a majority of the <tt>IDGetter</tt>s
+     *
+     * @since 00.02.00
+     */
+    public int getQuorum() {
+        return quorum;
+    }
+
+    /**
+     * Sets the number of <tt>IDGetter</tt>s that must agree on an ID before it is returned.
+     * <p>
+     *     A quorum of <tt>1</tt> returns the first ID found; the default (<tt>0</tt>) waits for a majority.
+     *     A quorum larger than the number of <tt>IDGetter</tt>s can never be reached, so every request then waits
+     *     for all of them.
+     * </p>
+     * @param quorum the quorum, or <tt>0</tt> for a majority
+     * @throws IllegalArgumentException if <tt>quorum</tt> is negative
+     *
+     * @see IDGManager#fetchIDAsync(String, ChemID)
+     * @since 00.02.00
+     */
+    public void setQuorum(int quorum) {
+        if(quorum < 0) {
+            throw new IllegalArgumentException("negative quorum: " + quorum);
+        }
+        this.quorum = quorum;
+    }
+
+    /**
+     * Checks whether slow requests are hedged.
+     * @return <tt>true</tt> if slow requests are hedged
+     *
+     * @since 00.02.00
+     */
+    public boolean isHedging() {
+        return hedging;
+    }
+
+    /**
+     * Sets whether slow requests are hedged.
+     * <p>
+     *     When hedging, a request that takes longer than the hedge percentile of its <tt>IDGetter</tt>'s recent
+     *     latencies is sent a second time, and whichever copy answers first is used. This cuts the tail latency
+     *     caused by occasional slow responses at the cost of a few extra requests.
+     *     Hedging starts once enough latencies are known.
+     * </p>
+     * @param hedging <tt>true</tt> to hedge slow requests
+     *
+     * @see IDGManager#setHedgePercentile(double)
+     * @since 00.02.00
+     */
+    public void setHedging(boolean hedging) {
+        this.hedging = hedging;
+    }
+
+    /**
+     * Gets the percentile of recent latencies after which a request is hedged.
+     * @return the percentile, from <tt>0</tt> to <tt>1</tt>
+     *
+     * @since 00.02.00
+     */
+    public double getHedgePercentile() {
+        return hedgePercentile;
+    }
+
+    /**
+     * Sets the percentile of recent latencies after which a request is hedged.
+     * @param percentile the percentile, from <tt>0</tt> to <tt>1</tt>
+     * @throws IllegalArgumentException if <tt>percentile</tt> is outside of that range
+     *
+     * @see IDGManager#setHedging(boolean)
+     * @since 00.02.00
+     */
+    public void setHedgePercentile(double percentile) {
+        if(!(percentile >= 0 && percentile <= 1)) {
+            throw new IllegalArgumentException("percentile out of range: " + percentile);
+        }
+        this.hedgePercentile = percentile;
+    }
+
+
+
     // --------------------
     // PUBLIC UTILITY METHODS
     // --------------------
 
+    /**
+     * Asks all of the <tt>IDGetter</tt>s for a chemical ID at once and returns the ID they agree on.
+     * <p>
+     *     Blocks until {@link IDGManager#fetchIDAsync(String, ChemID)} completes.
+     *     If the ID in unavailable, will print error to console and return <tt>null</tt>.
+     * </p>
+     *
+     * @param chemName the trivial (common) or formal (IUPAC) name of the chemical
+     * @return the chemical's requested ID as a <tt>String</tt>
+     *
+     * @since 00.01.00
+     */
     @Override
     public String requestID(String chemName, ChemID id) {
-        // Initialize variables
-        List<String> results = new ArrayList<>();
-        List<String> tokens = new ArrayList<>();
-        Map<String, Integer> idFreqs = new HashMap<>();
-        Integer tempInt;
-        String maxToken;
-        int maxFreq = 0;
-
-        // Ask all of the IDGetters for their IDs
-        for(IDGAbstract i : IDGs) {
-            results.add(i.requestID(chemName, id));
-        }
+        return requestIDAsync(chemName, id).join();
+    }
 
-        // Find the numerical frequencies of the IDs
-        for(String token : results) {
-            if(!idFreqs.containsKey(token)) {
-                idFreqs.put(token, 1);
-            } else {
-                tempInt = idFreqs.get(token);
-                idFreqs.put(token, tempInt+1);
-                tokens.add(token);
-            }
-        }
+    /**
+     * Asks all of the <tt>IDGetter</tt>s for a chemical ID at once without blocking the calling thread.
+     * <p>
+     *     See {@link IDGManager#fetchIDAsync(String, ChemID)}. Failures are printed to the console and the
+     *     future is completed with <tt>null</tt>.
+     * </p>
+     *
+     * @param chemName the trivial (common) or formal (IUPAC) name of the chemical
+     * @return a <tt>CompletableFuture</tt> with the chemical's requested ID
+     *
+     * @since 00.02.00
+     */
+    @Override
+    public CompletableFuture<String> requestIDAsync(String chemName, ChemID id) {
+        CompletableFuture<String> fetch = fetchIDAsync(chemName, id);
+        return IDGHttpClient.cancelWith(fetch.exceptionally(e -> {
+            System.out.println((e.getCause() != null ? e.getCause() : e) + " - ID unavailable");
+            return null;
+        }), fetch);
+    }
 
-        // Find the ID with the greatest frequency
-        for(String s : tokens) {
-            if(idFreqs.get(s) > maxFreq) {
-                maxFreq = idFreqs.get(s);
-                maxToken = s;
-            }
+    /**
+     * Asks all of the <tt>IDGetter</tt>s for a chemical ID at once and completes with the ID they agree on.
+     * <p>
+     *     As soon as a quorum of <tt>IDGetter</tt>s (see {@link IDGManager#setQuorum(int)}) gives the same ID,
+     *     the future is completed with it and the requests still in flight are cancelled, so the answer takes
+     *     as long as the fastest agreeing <tt>IDGetter</tt>s rather than the slowest one.
+     *     If no quorum is reached once every <tt>IDGetter</tt> has answered, the most frequent ID is used
+     *     (the one that got there first if several are tied), or <tt>null</tt> if none was found.
+     *     If every <tt>IDGetter</tt> failed, the future completes exceptionally with the first failure.
+     * </p>
+     * <p>
+     *     Cancelling the future cancels all of the requests.
+     * </p>
+     *
+     * @param chemName the trivial (common) or formal (IUPAC) name of the chemical
+     * @return a <tt>CompletableFuture</tt> with the chemical's requested ID
+     *
+     * @see IDGManager#setHedging(boolean)
+     * @since 00.02.00
+     */
+    @Override
+    public CompletableFuture<String> fetchIDAsync(String chemName, ChemID id) {
+        CompletableFuture<String> result = new CompletableFuture<>();
+        List<IDGAbstract> providers = IDGs;
+        if(providers.isEmpty()) {
+            result.complete(null);
+            return result;
         }
+        int needed = quorum == 0 ? providers.size() / 2 + 1 : quorum;
 
-        // If there is an ID with greatest frequency, return. If not, randomly choose.
+        // Tally of the answers, guarded by itself
+        Map<String, Integer> votes = new LinkedHashMap<>();
+        int[] answered = new int[1];
+        int[] failed = new int[1];
+        Throwable[] failure = new Throwable[1];
 
-        //TODO: Get this method working
-        return null;
+        List<CompletableFuture<String>> requests = new ArrayList<>(providers.size());
+        for(IDGAbstract idg : providers) {
+            requests.add(request(idg, chemName, id));
+        }
+        for(CompletableFuture<String> request : requests) {
+            request.whenComplete((value, e) -> {
+                // Decided under the lock but completed outside of it, since completing cancels the other requests
+                String agreed = null;
+                boolean decided;
+                boolean allFailed;
+                synchronized(votes) {
+                    answered[0]++;
+                    if(e != null) {
+                        if(failed[0]++ == 0) {
+                            failure[0] = e;
+                        }
+                    } else if(value != null && votes.merge(value, 1, Integer::sum) >= needed) {
+                        agreed = value;
+                    }
+                    boolean last = answered[0] == requests.size();
+                    allFailed = last && failed[0] == answered[0];
+                    if(agreed == null && last && !allFailed) {
+                        agreed = plurality(votes);
+                    }
+                    decided = agreed != null || last;
+                }
+                if(allFailed) {
+                    result.completeExceptionally(failure[0]);
+                } else if(decided) {
+                    result.complete(agreed);
+                }
+            });
+        }
 
+        // Cancels the stragglers once the result is known (or the caller gives up)
+        result.whenComplete((value, e) -> {
+            for(CompletableFuture<String> request : requests) {
+                request.cancel(true);
+            }
+        });
+        return result;
+    }
 
 
-    }
 
     // --------------------
     // PRIVATE UTILITY METHODS
     // --------------------
 
-    private static String determineMax(List<String> strings) {
-        //Initialise variables
-        Map<String, Integer> map = new HashMap<String, Integer>();
+    /**
+     * Gets the ID given by the most <tt>IDGetter</tt>s, the first one given if several are tied.
+     *
+     * @return the ID, or <tt>null</tt> if none was given
+     */
+    private static String plurality(Map<String, Integer> votes) {
+        String best = null;
+        int bestCount = 0;
+        for(Map.Entry<String, Integer> vote : votes.entrySet()) {
+            if(vote.getValue() > bestCount) {
+                best = vote.getKey();
+                bestCount = vote.getValue();
+            }
+        }
+        return best;
+    }
 
-        // Initialise frequency table
-        for(String s : strings) {
-            Integer freq = map.get(s);
-            map.put(s, (freq == null) ? 1 : freq + 1);
+    /**
+     * Makes a request to one <tt>IDGetter</tt>, hedging it if it takes unusually long.
+     */
+    private CompletableFuture<String> request(IDGAbstract idg, String chemName, ChemID id) {
+        IDGLatency latency = latencies.computeIfAbsent(idg, key -> new IDGLatency());
+        CompletableFuture<String> primary = timed(idg, latency, chemName, id);
+        long delay = hedging ? latency.percentile(hedgePercentile) : -1;
+        if(delay < 0) {
+            return primary;
         }
-        return null;
 
+        // The first copy to answer wins and the other one is cancelled; a failure only counts once both failed
+        CompletableFuture<String> first = new CompletableFuture<>();
+        List<CompletableFuture<String>> copies = new CopyOnWriteArrayList<>();
+        AtomicInteger running = new AtomicInteger(1);
+        copies.add(primary);
+        primary.whenComplete((value, e) -> complete(first, running, value, e));
+        IDGHttpClient.delayedExecutor(delay, TimeUnit.NANOSECONDS).execute(() -> {
+            if(!first.isDone()) {
+                running.incrementAndGet();
+                CompletableFuture<String> hedge = timed(idg, latency, chemName, id);
+                copies.add(hedge);
+                hedge.whenComplete((value, e) -> complete(first, running, value, e));
+                if(first.isDone()) {
+                    hedge.cancel(true);
+                }
+            }
+        });
+        first.whenComplete((value, e) -> {
+            for(CompletableFuture<String> copy : copies) {
+                copy.cancel(true);
+            }
+        });
+        return first;
+    }
+
+    /**
+     * Makes a request to one <tt>IDGetter</tt>, recording its latency if it succeeds.
+     */
+    private static CompletableFuture<String> timed(IDGAbstract idg, IDGLatency latency, String chemName, ChemID id) {
+        long start = System.nanoTime();
+        CompletableFuture<String> request = idg.fetchIDAsync(chemName, id);
+        request.whenComplete((value, e) -> {
+            if(e == null) {
+                latency.record(System.nanoTime() - start);
+            }
+        });
+        return request;
     }
 
+    private static void complete(CompletableFuture<String> future, AtomicInteger running, String value, Throwable e) {
+        if(e == null) {
+            future.complete(value);
+        } else if(running.decrementAndGet() == 0) {
+            future.completeExceptionally(e);
+        }
+    }
 
 }
@@ -0,0 +1,165 @@
+package com.tsaysoft.nfpacid3;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A read-only {@link ChemStore} backed by the sections of a memory-mapped {@link ChemSnapshot}.
+ * <p>
+ *     Nothing is copied onto the heap when the store is opened; every access reads straight from the
+ *     mapped file, and <tt>Chemical</tt>s are only built when a row is accessed through
+ *     {@link MappedChemStore#get(int)}.
+ * </p>
+ *
+ * @see com.tsaysoft.nfpacid3.ChemSnapshot
+ *
+ * @author Clay Tsay
+ * @version 00.02.00
+ */
+class MappedChemStore implements ChemStore {
+
+    // --------------------
+    // VARIABLES AND DATA
+    // --------------------
+
+    private final int size;
+
+    private final ByteBuffer signatures;
+    private final ByteBuffer nameEnds;
+    private final ByteBuffer nullNames;
+    private final ByteBuffer nameArea;
+
+    /**
+     * One section per <tt>ChemID</tt> (by ordinal), each holding sorted rows, string ends and a string area.
+     */
+    private final ByteBuffer[] idRows;
+    private final ByteBuffer[] idEnds;
+    private final ByteBuffer[] idAreas;
+
+
+
+    // --------------------
+    // CONSTRUCTORS
+    // --------------------
+
+    MappedChemStore(int size, ByteBuffer signatures, ByteBuffer nameEnds, ByteBuffer nullNames,
+                    ByteBuffer nameArea, ByteBuffer[] idRows, ByteBuffer[] idEnds, ByteBuffer[] idAreas) {
+        this.size = size;
+        this.signatures = signatures;
+        this.nameEnds = nameEnds;
+        this.nullNames = nullNames;
+        this.nameArea = nameArea;
+        this.idRows = idRows;
+        this.idEnds = idEnds;
+        this.idAreas = idAreas;
+    }
+
+
+
+    // --------------------
+    // PUBLIC UTILITY METHODS
+    // --------------------
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Always throws, as snapshots are read-only.
+     */
+    @Override
+    public void add(String name, int signature) {
+        throw new UnsupportedOperationException("snapshot-backed ChemDBs are read-only");
+    }
+
+    @Override
+    public ChemStore fork() {
+        throw new UnsupportedOperationException("snapshot-backed ChemDBs are read-only");
+    }
+
+    @Override
+    public Chemical get(int row) {
+        int signature = getSignature(row);
+        Chemical chem = new Chemical(getName(row),
+                ChemSignature.toProps(signature), ChemSignature.toSpecials(signature));
+        for(ChemID idType : ChemID.values()) {
+            String id = getID(row, idType);
+            if(id != null) {
+                chem.setID(idType, id);
+            }
+        }
+        return chem;
+    }
+
+    @Override
+    public String getName(int row) {
+        checkRow(row);
+        if((nullNames.getLong((row >>> 6) * Long.BYTES) & (1L << row)) != 0) {
+            return null;
+        }
+        int start = row == 0 ? 0 : nameEnds.getInt((row - 1) * Integer.BYTES);
+        return decode(nameArea, start, nameEnds.getInt(row * Integer.BYTES));
+    }
+
+    @Override
+    public int getSignature(int row) {
+        checkRow(row);
+        return signatures.getShort(row * Short.BYTES);
+    }
+
+    @Override
+    public String getID(int row, ChemID idType) {
+        checkRow(row);
+        ByteBuffer rows = idRows[idType.ordinal()];
+        ByteBuffer ends = idEnds[idType.ordinal()];
+
+        // Binary search the sorted rows that have an ID of this type
+        int low = 0;
+        int high = rows.limit() / Integer.BYTES - 1;
+        while(low <= high) {
+            int mid = (low + high) >>> 1;
+            int midRow = rows.getInt(mid * Integer.BYTES);
+            if(midRow < row) {
+                low = mid + 1;
+            } else if(midRow > row) {
+                high = mid - 1;
+            } else {
+                int start = mid == 0 ? 0 : ends.getInt((mid - 1) * Integer.BYTES);
+                return decode(idAreas[idType.ordinal()], start, ends.getInt(mid * Integer.BYTES));
+            }
+        }
+        return null;
+    }
+
+
+
+    /**
+     * Always throws, as snapshots are read-only.
+     */
+    @Override
+    public void setID(int row, ChemID idType, String id) {
+        throw new UnsupportedOperationException("snapshot-backed ChemDBs are read-only");
+    }
+
+
+
+    // --------------------
+    // PRIVATE UTILITY METHODS
+    // --------------------
+
+    private static String decode(ByteBuffer area, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        ByteBuffer slice = area.duplicate();
+        slice.position(start);
+        slice.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void checkRow(int row) {
+        if(row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("row " + row + " out of bounds for size " + size);
+        }
+    }
+
+}
@@ -16,7 +16,7 @@ import org.json.JSONObject;
  * @see <a href="http://opsin.ch.cam.ac.uk/">http://opsin.ch.cam.ac.uk/</a>
  *
  * @author Clay Tsay
- * @version 00.01.00
+ * @version 00.02.00
  */
 public class OPSINIDG extends IDGAbstract{
 
@@ -24,7 +24,39 @@ public class OPSINIDG extends IDGAbstract{
     // VARIABLES AND DATA
     // --------------------
 
-    ChemID idTemp;
+    /**
+     * The URL of the OPSIN service.
+     */
+    public static final String DEFAULT_URL = "http://opsin.ch.cam.ac.uk/opsin/";
+
+    private final String baseURL;
+
+
+
+    // --------------------
+    // CONSTRUCTORS
+    // --------------------
+
+    /**
+     * Constructs an <tt>OPSINIDG</tt> that uses the OPSIN service.
+     *
+     * @since 00.02.00
+     */
+    public OPSINIDG() {
+        this(DEFAULT_URL);
+    }
+
+    /**
+     * Constructs an <tt>OPSINIDG</tt> that uses an OPSIN service at another URL (e.g. a mirror or a
+     * local test server).
+     *
+     * @param baseURL the URL that the chemical name is added to, ending with <tt>/</tt>
+     *
+     * @since 00.02.00
+     */
+    public OPSINIDG(String baseURL) {
+        this.baseURL = baseURL;
+    }
 
 
     // --------------------
@@ -42,8 +74,7 @@ public class OPSINIDG extends IDGAbstract{
     @Override
     protected String urlGenerator(String chemName, ChemID id) {
         // Declaring and setting up variables
-        String url = "http://opsin.ch.cam.ac.uk/opsin/";
-        idTemp = id;
+        String url = baseURL;
 
         // Clean the chemical name and concatenate to URL
         chemName = cleanName(chemName);
@@ -57,7 +88,7 @@ public class OPSINIDG extends IDGAbstract{
     }
 
     @Override
-    protected String parseJSON(String JSONInput){
+    protected String parseJSON(String JSONInput, ChemID id){
         String chemID = null;
 
         try {
@@ -65,7 +96,7 @@ public class OPSINIDG extends IDGAbstract{
             JSONObject object1 = new JSONObject(JSONInput);
 
             // Choose which type of ID to return
-            switch(idTemp) {
+            switch(id) {
                 case InChI_Key:
                     chemID = object1.get("stdinchikey").toString();
                     break;
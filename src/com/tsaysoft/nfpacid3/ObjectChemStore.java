@@ -0,0 +1,114 @@
+package com.tsaysoft.nfpacid3;
+
+import java.util.Arrays;
+
+/**
+ * A {@link ChemStore} that keeps every chemical as a {@link Chemical}.
+ * <p>
+ *     <tt>Chemical</tt>s are mutable, so {@link ObjectChemStore#get(int)} hands out copies; a caller changing
+ *     one cannot change the stored chemical behind the back of the indexes.
+ *     IDs are kept apart in {@link ChemIDColumns}, so that they can be set on a fork.
+ * </p>
+ *
+ * @see com.tsaysoft.nfpacid3.ChemStorage#OBJECT
+ *
+ * @author Clay Tsay
+ * @version 00.02.00
+ */
+class ObjectChemStore implements ChemStore {
+
+    // --------------------
+    // VARIABLES AND DATA
+    // --------------------
+
+    private int size = 0;
+
+    private Chemical[] chems = new Chemical[16];
+
+    /**
+     * The signatures of the chemicals as they were added (<tt>Chemical</tt>s are mutable).
+     */
+    private short[] signatures = new short[16];
+
+    private ChemIDColumns ids = new ChemIDColumns();
+
+
+
+    // --------------------
+    // PUBLIC UTILITY METHODS
+    // --------------------
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void add(String name, int signature) {
+        if(size == chems.length) {
+            chems = Arrays.copyOf(chems, size * 2);
+            signatures = Arrays.copyOf(signatures, size * 2);
+        }
+        signatures[size] = (short) signature;
+        chems[size] = new Chemical(name, ChemSignature.toProps(signature), ChemSignature.toSpecials(signature));
+        size++;
+    }
+
+    @Override
+    public ChemStore fork() {
+        ObjectChemStore fork = new ObjectChemStore();
+        fork.size = size;
+        fork.chems = chems;
+        fork.signatures = signatures;
+        fork.ids = ids.fork();
+        return fork;
+    }
+
+    @Override
+    public Chemical get(int row) {
+        int signature = signatures[checkRow(row)];
+        Chemical chem = new Chemical(chems[row].getName(),
+                ChemSignature.toProps(signature), ChemSignature.toSpecials(signature));
+        for(ChemID idType : ChemID.values()) {
+            String id = ids.get(row, idType);
+            if(id != null) {
+                chem.setID(idType, id);
+            }
+        }
+        return chem;
+    }
+
+    @Override
+    public String getName(int row) {
+        return chems[checkRow(row)].getName();
+    }
+
+    @Override
+    public int getSignature(int row) {
+        return signatures[checkRow(row)];
+    }
+
+    @Override
+    public String getID(int row, ChemID idType) {
+        return ids.get(checkRow(row), idType);
+    }
+
+    @Override
+    public void setID(int row, ChemID idType, String id) {
+        ids.set(checkRow(row), idType, id);
+    }
+
+
+
+    // --------------------
+    // PRIVATE UTILITY METHODS
+    // --------------------
+
+    private int checkRow(int row) {
+        if(row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("row " + row + " out of bounds for size " + size);
+        }
+        return row;
+    }
+
+}
@@ -0,0 +1,92 @@
+package com.tsaysoft.nfpacid3;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * A <tt>Spliterator</tt> over a list of rows of a {@link ChemStore}.
+ * <p>
+ *     <tt>Chemical</tt>s are only fetched from the store as the rows are traversed, so short-circuiting
+ *     stream operations stop early without touching the rest of the rows.
+ *     Splits the remaining rows in half, so that parallel streams divide the work evenly.
+ * </p>
+ *
+ * @author Clay Tsay
+ * @version 00.02.00
+ */
+class RowSpliterator implements Spliterator<Chemical> {
+
+    // --------------------
+    // VARIABLES AND DATA
+    // --------------------
+
+    private final ChemStore store;
+    private final int[] rows;
+    private int origin;
+    private final int fence;
+
+
+
+    // --------------------
+    // CONSTRUCTORS
+    // --------------------
+
+    /**
+     * Constructs a <tt>RowSpliterator</tt> over <tt>rows[origin]</tt> to <tt>rows[fence - 1]</tt>.
+     *
+     * @param store the <tt>ChemStore</tt> holding the rows
+     * @param rows the rows to be traversed (not copied, so must not be changed)
+     * @param origin the first index into <tt>rows</tt> (inclusive)
+     * @param fence the last index into <tt>rows</tt> (exclusive)
+     */
+    RowSpliterator(ChemStore store, int[] rows, int origin, int fence) {
+        this.store = store;
+        this.rows = rows;
+        this.origin = origin;
+        this.fence = fence;
+    }
+
+
+
+    // --------------------
+    // PUBLIC UTILITY METHODS
+    // --------------------
+
+    @Override
+    public boolean tryAdvance(Consumer<? super Chemical> action) {
+        if(origin < fence) {
+            action.accept(store.get(rows[origin++]));
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super Chemical> action) {
+        for(; origin < fence; origin++) {
+            action.accept(store.get(rows[origin]));
+        }
+    }
+
+    @Override
+    public Spliterator<Chemical> trySplit() {
+        int mid = (origin + fence) >>> 1;
+        if(mid <= origin) {
+            return null;
+        }
+        Spliterator<Chemical> prefix = new RowSpliterator(store, rows, origin, mid);
+        origin = mid;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        return fence - origin;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | SIZED | SUBSIZED | NONNULL;
+    }
+
+}
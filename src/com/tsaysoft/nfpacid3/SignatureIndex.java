@@ -0,0 +1,224 @@
+package com.tsaysoft.nfpacid3;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * An index from {@link ChemSignature}s to the rows of a {@link ChemDB} holding them.
+ * <p>
+ *     Keeps one bucket per signature (special symbols included) and one bucket per properties signature
+ *     (special symbols ignored), so that exact-match queries are a single bucket lookup
+ *     instead of a scan over every chemical.
+ *     Rows are kept in the order in which they were added.
+ * </p>
+ * <p>
+ *     Buckets are only appended to in place, so an index can be forked (see {@link SignatureIndex#fork()})
+ *     without copying them: each index keeps its own bucket sizes and never reads past them.
+ *     Removing a row copies its buckets first, unless the fork made them itself.
+ * </p>
+ *
+ * @author Clay Tsay
+ * @version 00.02.00
+ */
+class SignatureIndex {
+
+    // --------------------
+    // VARIABLES AND DATA
+    // --------------------
+
+    private static final int[] EMPTY = new int[0];
+
+    private final int[][] fullRows;
+    private final int[] fullSizes;
+    private final int[][] propsRows;
+    private final int[] propsSizes;
+
+    // Whether each bucket was made by this index, and may thus have rows removed in place
+    private final boolean[] fullOwned;
+    private final boolean[] propsOwned;
+
+
+
+    // --------------------
+    // CONSTRUCTORS
+    // --------------------
+
+    SignatureIndex() {
+        this(new int[ChemSignature.COUNT][], new int[ChemSignature.COUNT],
+                new int[ChemSignature.PROPS_COUNT][], new int[ChemSignature.PROPS_COUNT]);
+    }
+
+    private SignatureIndex(int[][] fullRows, int[] fullSizes, int[][] propsRows, int[] propsSizes) {
+        this.fullRows = fullRows;
+        this.fullSizes = fullSizes;
+        this.propsRows = propsRows;
+        this.propsSizes = propsSizes;
+        this.fullOwned = new boolean[fullRows.length];
+        this.propsOwned = new boolean[propsRows.length];
+    }
+
+
+
+    // --------------------
+    // PUBLIC UTILITY METHODS
+    // --------------------
+
+    /**
+     * Adds a row to the buckets of the given signature.
+     *
+     * @param row the row to be added
+     * @param signature the (valid) signature of the row
+     */
+    void add(int row, int signature) {
+        int props = ChemSignature.propsOf(signature);
+        append(fullRows, fullSizes, fullOwned, signature, row);
+        append(propsRows, propsSizes, propsOwned, props, row);
+    }
+
+    /**
+     * Removes a row from the buckets of the given signature.
+     * <p>
+     *     Costs as much as copying the buckets, whatever the number of rows in the index.
+     * </p>
+     *
+     * @param row the row to be removed
+     * @param signature the signature the row was added with
+     */
+    void remove(int row, int signature) {
+        remove(fullRows, fullSizes, fullOwned, signature, row);
+        remove(propsRows, propsSizes, propsOwned, ChemSignature.propsOf(signature), row);
+    }
+
+    /**
+     * Creates an index over the same rows that more rows can be added to without changing this one.
+     * <p>
+     *     Only the tables of buckets and sizes are copied (a fixed cost, whatever the number of rows);
+     *     the buckets themselves are shared. Once forked, rows must only be added to or removed from the fork.
+     * </p>
+     *
+     * @return the new index
+     */
+    SignatureIndex fork() {
+        return new SignatureIndex(fullRows.clone(), fullSizes.clone(), propsRows.clone(), propsSizes.clone());
+    }
+
+    /**
+     * Gets the rows matching a signature.
+     * <p>
+     *     The returned array is shared and may be longer than the bucket;
+     *     only the first {@link SignatureIndex#size(int, boolean)} entries are valid.
+     * </p>
+     *
+     * @param signature the (valid) signature to be looked up
+     * @param special whether the special symbols should be taken into account
+     * @return the rows as an <tt>int[]</tt>
+     */
+    int[] rows(int signature, boolean special) {
+        int[] rows = special ? fullRows[signature] : propsRows[ChemSignature.propsOf(signature)];
+        return rows == null ? EMPTY : rows;
+    }
+
+    /**
+     * Gets the number of rows matching a signature.
+     *
+     * @param signature the (valid) signature to be looked up
+     * @param special whether the special symbols should be taken into account
+     * @return the number of rows
+     */
+    int size(int signature, boolean special) {
+        return special ? fullSizes[signature] : propsSizes[ChemSignature.propsOf(signature)];
+    }
+
+
+
+    /**
+     * Writes the buckets in the format read by {@link SignatureIndex#read(ByteBuffer)}.
+     * <p>
+     *     Each bucket is written as its size followed by its rows.
+     * </p>
+     *
+     * @param out the <tt>DataOutput</tt> to be written to
+     * @throws IOException if writing fails
+     */
+    void write(DataOutput out) throws IOException {
+        writeBuckets(out, fullRows, fullSizes);
+        writeBuckets(out, propsRows, propsSizes);
+    }
+
+    /**
+     * Reads buckets written by {@link SignatureIndex#write(DataOutput)}.
+     *
+     * @param in the <tt>ByteBuffer</tt> positioned at the start of the index; advanced past its end
+     * @return the index
+     */
+    static SignatureIndex read(ByteBuffer in) {
+        SignatureIndex index = new SignatureIndex();
+        readBuckets(in, index.fullRows, index.fullSizes);
+        readBuckets(in, index.propsRows, index.propsSizes);
+        return index;
+    }
+
+
+
+    // --------------------
+    // PRIVATE UTILITY METHODS
+    // --------------------
+
+    private static void writeBuckets(DataOutput out, int[][] buckets, int[] sizes) throws IOException {
+        for(int i = 0; i < buckets.length; i++) {
+            out.writeInt(sizes[i]);
+            for(int j = 0; j < sizes[i]; j++) {
+                out.writeInt(buckets[i][j]);
+            }
+        }
+    }
+
+    private static void readBuckets(ByteBuffer in, int[][] buckets, int[] sizes) {
+        for(int i = 0; i < buckets.length; i++) {
+            sizes[i] = in.getInt();
+            if(sizes[i] > 0) {
+                buckets[i] = new int[sizes[i]];
+                in.asIntBuffer().get(buckets[i]);
+                in.position(in.position() + sizes[i] * Integer.BYTES);
+            }
+        }
+    }
+
+    /**
+     * Appends a row to a bucket, growing the bucket if necessary.
+     */
+    private static void append(int[][] buckets, int[] sizes, boolean[] owned, int i, int row) {
+        int[] bucket = buckets[i];
+        int size = sizes[i];
+        if(bucket == null || size == bucket.length) {
+            bucket = bucket == null ? new int[4] : Arrays.copyOf(bucket, Math.max(size * 2, 4));
+            buckets[i] = bucket;
+            owned[i] = true;
+        }
+        bucket[size] = row;
+        sizes[i] = size + 1;
+    }
+
+    /**
+     * Removes a row from a bucket, copying the bucket first if it is shared.
+     * <p>
+     *     Rows are added in increasing order, so each bucket is sorted.
+     * </p>
+     */
+    private static void remove(int[][] buckets, int[] sizes, boolean[] owned, int i, int row) {
+        int size = sizes[i];
+        int at = buckets[i] == null ? -1 : Arrays.binarySearch(buckets[i], 0, size, row);
+        if(at < 0) {
+            return;
+        }
+        if(!owned[i]) {
+            buckets[i] = Arrays.copyOf(buckets[i], size);
+            owned[i] = true;
+        }
+        System.arraycopy(buckets[i], at + 1, buckets[i], at, size - at - 1);
+        sizes[i] = size - 1;
+    }
+
+}
@@ -0,0 +1,301 @@
+package com.tsaysoft.nfpacid3;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * A multi-threaded stress test of concurrent changes to a {@link ChemDB}.
+ * <p>
+ *     Several writers insert, update and remove chemicals and give them IDs while several readers run queries.
+ *     Every change is logged in the order in which it was applied; the log is then replayed on a fresh
+ *     <tt>ChemDB</tt> one change at a time, and the result of every query is checked against the replayed
+ *     versions. A query must return exactly what one of the versions between its start and its end would
+ *     have returned (i.e. the queries are linearizable), in the same order.
+ * </p>
+ * <p>
+ *     The readers also change the <tt>Chemical</tt>s they are given, which must not change the database.
+ *     Throws an <tt>AssertionError</tt> on the first failure.
+ * </p>
+ *
+ * @author Clay Tsay
+ * @version 00.02.00
+ */
+public class ChemDBStressTest {
+
+    /**
+     * A query run by the readers, turned into a string that covers every field of every result.
+     */
+    private interface Query {
+        String run(ChemDB chemDB);
+    }
+
+    /**
+     * The fingerprint of a query result as seen by a reader, with the versions that were current when the
+     * query started and ended.
+     */
+    private static final class Observation {
+        final int query;
+        final int earliest;
+        final int latest;
+        final long result;
+
+        Observation(int query, int earliest, int latest, long result) {
+            this.query = query;
+            this.earliest = earliest;
+            this.latest = latest;
+            this.result = result;
+        }
+    }
+
+    // --------------------
+    // VARIABLES AND DATA
+    // --------------------
+
+    private static final int NAMES = 40;
+    private static final int INITIAL = 120;
+    private static final int WRITERS = 4;
+    private static final int READERS = 4;
+    private static final int CHANGES_PER_WRITER = 2000;
+
+    private static final List<Query> QUERIES = new ArrayList<>();
+
+    static {
+        QUERIES.add(chemDB -> describe(chemDB.queryChemNFPA(chemical(null, 1, 1, 0, false), true)));
+        QUERIES.add(chemDB -> describe(chemDB.queryChemNFPA(chemical(null, 0, 1, 0, true), false)));
+        QUERIES.add(chemDB -> {
+            ChemQuery query = new ChemQuery();
+            query.setRating(ChemProp.HEALTH, 1);
+            return describe(chemDB.queryRangeNFPA(query));
+        });
+        QUERIES.add(chemDB -> describe(chemDB.streamRangeNFPA(new ChemQuery()).parallel()
+                .collect(Collectors.toList())));
+        QUERIES.add(chemDB -> {
+            List<Chemical> results = new ArrayList<>();
+            chemDB.queryNFPA(0, 0, 0, 0, false, results);
+            return describe(results);
+        });
+        QUERIES.add(chemDB -> {
+            ChemCounts counts = chemDB.countNFPA(new ChemQuery());
+            return Arrays.toString(counts.getRatingCounts(ChemProp.HEALTH)) + counts.getTotal();
+        });
+    }
+
+
+
+    // --------------------
+    // PUBLIC UTILITY METHODS
+    // --------------------
+
+    public static void main(String[] args) throws InterruptedException {
+        for(ChemStorage storage : ChemStorage.values()) {
+            run(storage, 1);
+        }
+    }
+
+    /**
+     * Runs the writers and readers against one <tt>ChemDB</tt> and checks what the readers saw.
+     */
+    private static void run(ChemStorage storage, long seed) throws InterruptedException {
+        ChemDB chemDB = new ChemDB(initial(seed), storage);
+        List<Consumer<ChemDB>> log = new ArrayList<>();
+        // started: changes that may have been applied; committed: changes that have certainly been applied
+        AtomicInteger started = new AtomicInteger();
+        AtomicInteger committed = new AtomicInteger();
+        AtomicBoolean done = new AtomicBoolean();
+        List<Throwable> errors = new CopyOnWriteArrayList<>();
+
+        List<Thread> writers = new ArrayList<>();
+        for(int w = 0; w < WRITERS; w++) {
+            Random random = new Random(seed * 31 + w);
+            writers.add(new Thread(() -> {
+                try {
+                    for(int i = 0; i < CHANGES_PER_WRITER; i++) {
+                        Consumer<ChemDB> change = randomChange(random);
+                        // ChemDB applies changes while holding its own lock, so this fixes the order of the log
+                        synchronized(chemDB) {
+                            started.incrementAndGet();
+                            change.accept(chemDB);
+                            log.add(change);
+                            committed.incrementAndGet();
+                        }
+                    }
+                } catch (Throwable e) {
+                    errors.add(e);
+                }
+            }, "writer-" + w));
+        }
+
+        List<List<Observation>> observations = new ArrayList<>();
+        List<Thread> readers = new ArrayList<>();
+        for(int r = 0; r < READERS; r++) {
+            List<Observation> seen = new ArrayList<>();
+            observations.add(seen);
+            readers.add(new Thread(() -> {
+                try {
+                    while(!done.get()) {
+                        for(int q = 0; q < QUERIES.size(); q++) {
+                            int earliest = committed.get();
+                            long result = fingerprint(QUERIES.get(q).run(chemDB));
+                            int latest = started.get();
+                            seen.add(new Observation(q, earliest, latest, result));
+                        }
+                        vandalize(chemDB);
+                    }
+                } catch (Throwable e) {
+                    errors.add(e);
+                }
+            }, "reader-" + r));
+        }
+
+        readers.forEach(Thread::start);
+        writers.forEach(Thread::start);
+        for(Thread writer : writers) {
+            writer.join();
+        }
+        done.set(true);
+        for(Thread reader : readers) {
+            reader.join();
+        }
+        if(!errors.isEmpty()) {
+            throw new AssertionError(storage + ": thread failed", errors.get(0));
+        }
+
+        // Replay the log one change at a time, remembering the result of every query after each change
+        ChemDB replay = new ChemDB(initial(seed), storage);
+        List<long[]> versions = new ArrayList<>();
+        versions.add(runAll(replay));
+        for(Consumer<ChemDB> change : log) {
+            change.accept(replay);
+            versions.add(runAll(replay));
+        }
+
+        int checked = 0;
+        for(List<Observation> seen : observations) {
+            for(Observation observation : seen) {
+                boolean found = false;
+                for(int v = observation.earliest; v <= observation.latest && !found; v++) {
+                    found = versions.get(v)[observation.query] == observation.result;
+                }
+                if(!found) {
+                    throw new AssertionError(storage + ": query " + observation.query + " returned a result of no"
+                            + " version between " + observation.earliest + " and " + observation.latest);
+                }
+                checked++;
+            }
+        }
+        if(!Arrays.equals(versions.get(versions.size() - 1), runAll(chemDB))) {
+            throw new AssertionError(storage + ": final state differs from the replay");
+        }
+        System.out.println(storage + ": " + log.size() + " changes, " + checked + " query results checked");
+    }
+
+
+
+    // --------------------
+    // PRIVATE UTILITY METHODS
+    // --------------------
+
+    private static long[] runAll(ChemDB chemDB) {
+        long[] results = new long[QUERIES.size()];
+        for(int q = 0; q < results.length; q++) {
+            results[q] = fingerprint(QUERIES.get(q).run(chemDB));
+        }
+        return results;
+    }
+
+    /**
+     * Hashes a query result (64-bit FNV-1a), so that the results of thousands of versions fit in memory.
+     */
+    private static long fingerprint(String result) {
+        long hash = 0xcbf29ce484222325L;
+        for(int i = 0; i < result.length(); i++) {
+            hash = (hash ^ result.charAt(i)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static List<Chemical> initial(long seed) {
+        Random random = new Random(seed);
+        List<Chemical> chems = new ArrayList<>();
+        for(int i = 0; i < INITIAL; i++) {
+            chems.add(randomChemical(random));
+        }
+        return chems;
+    }
+
+    /**
+     * Picks a change; the chemicals are built when the change is applied, since <tt>Chemical</tt>s are mutable.
+     */
+    private static Consumer<ChemDB> randomChange(Random random) {
+        String name = "Chemical " + random.nextInt(NAMES);
+        int health = random.nextInt(2);
+        int flammability = random.nextInt(2);
+        int reactivity = random.nextInt(2);
+        boolean water = random.nextBoolean();
+        switch(random.nextInt(4)) {
+            case 0:
+                int count = 1 + random.nextInt(3);
+                return chemDB -> {
+                    List<Chemical> chems = new ArrayList<>();
+                    for(int i = 0; i < count; i++) {
+                        chems.add(chemical(name, health, flammability, reactivity, water));
+                    }
+                    chemDB.insertChemicals(chems);
+                };
+            case 1:
+                return chemDB -> chemDB.updateChemical(name,
+                        chemical(name.toUpperCase(), health, flammability, reactivity, water));
+            case 2:
+                return chemDB -> chemDB.removeChemical(name);
+            default:
+                String id = "CID-" + random.nextInt(1000);
+                return chemDB -> chemDB.setIDs(ChemID.CID, Collections.singletonMap(Chemical.normalizeName(name), id));
+        }
+    }
+
+    private static Chemical randomChemical(Random random) {
+        return chemical("Chemical " + random.nextInt(NAMES),
+                random.nextInt(2), random.nextInt(2), random.nextInt(2), random.nextBoolean());
+    }
+
+    private static Chemical chemical(String name, int health, int flammability, int reactivity, boolean water) {
+        EnumMap<ChemProp, Integer> props = new EnumMap<>(ChemProp.class);
+        props.put(ChemProp.HEALTH, health);
+        props.put(ChemProp.FLAMMABILITY, flammability);
+        props.put(ChemProp.REACTIVITY, reactivity);
+        EnumMap<ChemSpecial, Boolean> specials = new EnumMap<>(ChemSpecial.class);
+        specials.put(ChemSpecial.WATER_REACT, water);
+        return new Chemical(name, props, specials);
+    }
+
+    private static String describe(Collection<Chemical> chems) {
+        StringBuilder builder = new StringBuilder();
+        for(Chemical chem : chems) {
+            builder.append(chem.getName()).append('|').append(chem.getProps()).append('|')
+                    .append(chem.getSpecials()).append('|').append(chem.getID(ChemID.CID)).append(';');
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Changes the <tt>Chemical</tt>s returned by a query, which must not change the database.
+     */
+    private static void vandalize(ChemDB chemDB) {
+        for(Chemical chem : chemDB.queryRangeNFPA(new ChemQuery())) {
+            chem.setName("vandalized");
+            chem.setProp(ChemProp.HEALTH, 4);
+            chem.setID(ChemID.CID, "vandalized");
+        }
+    }
+
+}
@@ -0,0 +1,122 @@
+package com.tsaysoft.nfpacid3;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests how an {@link IDGBreaker} follows a service that gets slower than its learned read timeout.
+ * <p>
+ *     The service is simulated: each request "takes" a given latency, and times out if that is longer than the
+ *     read timeout it was given. Throws an <tt>AssertionError</tt> on the first failure.
+ * </p>
+ *
+ * @author Clay Tsay
+ * @version 00.02.00
+ */
+public class IDGBreakerTest {
+
+    // --------------------
+    // VARIABLES AND DATA
+    // --------------------
+
+    private static final long FAST = 100;
+    private static final long SLOW = 3_000;
+
+
+
+    // --------------------
+    // PUBLIC UTILITY METHODS
+    // --------------------
+
+    public static void main(String[] args) throws InterruptedException {
+        probeGetsFullTimeout();
+        slowDownThenRecover();
+        System.out.println("IDGBreakerTest passed");
+    }
+
+    /**
+     * The probe of a half-open breaker waits as long as any request may, whatever the learned timeout is.
+     */
+    private static void probeGetsFullTimeout() throws InterruptedException {
+        IDGBreaker breaker = trained();
+        check(breaker.timeout() == IDGBreaker.MIN_TIMEOUT, "learned timeout " + breaker.timeout());
+        open(breaker);
+        check(!breaker.acquire(), "open breaker let a request through");
+        Thread.sleep(5);
+        check(breaker.acquire(), "half-open breaker refused the probe");
+        check(breaker.timeout() == IDGHttpClient.getReadTimeout(), "probe timeout " + breaker.timeout());
+        breaker.success(millis(FAST));
+        check(breaker.timeout() == IDGBreaker.MIN_TIMEOUT, "timeout after the probe " + breaker.timeout());
+    }
+
+    /**
+     * A service that settles at a latency above the learned timeout is answered again after a few timeouts,
+     * and stays answered.
+     */
+    private static void slowDownThenRecover() throws InterruptedException {
+        IDGBreaker breaker = trained();
+        int attempts = 0;
+        while(!request(breaker, SLOW)) {
+            check(++attempts < 100, "still timing out after " + attempts + " attempts");
+        }
+        for(int i = 0; i < 50; i++) {
+            check(request(breaker, SLOW), "request " + i + " after recovering timed out");
+        }
+        check(breaker.timeout() >= SLOW, "timeout " + breaker.timeout() + " below the latency");
+        check(breaker.isAvailable(), "breaker still open");
+    }
+
+
+
+    // --------------------
+    // PRIVATE UTILITY METHODS
+    // --------------------
+
+    /**
+     * Makes a breaker that has seen many fast requests, with a short open time.
+     */
+    private static IDGBreaker trained() {
+        IDGBreaker breaker = new IDGBreaker();
+        breaker.setOpenTime(1);
+        for(int i = 0; i < IDGLatency.WINDOW; i++) {
+            check(breaker.acquire(), "closed breaker refused a request");
+            breaker.success(millis(FAST));
+        }
+        return breaker;
+    }
+
+    private static void open(IDGBreaker breaker) {
+        for(int i = 0; i < breaker.getFailureThreshold(); i++) {
+            check(breaker.acquire(), "closed breaker refused a request");
+            breaker.failure();
+        }
+    }
+
+    /**
+     * Makes a simulated request, waiting while the breaker is open.
+     *
+     * @return <tt>true</tt> if the request was answered, <tt>false</tt> if it timed out
+     */
+    private static boolean request(IDGBreaker breaker, long latency) throws InterruptedException {
+        while(!breaker.acquire()) {
+            Thread.sleep(2);
+        }
+        int timeout = breaker.timeout();
+        if(latency > timeout) {
+            breaker.timedOut(millis(timeout));
+            return false;
+        }
+        breaker.success(millis(latency));
+        return true;
+    }
+
+    private static long millis(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    private static void check(boolean condition, String message) {
+        if(!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+}
@@ -0,0 +1,242 @@
+package com.tsaysoft.nfpacid3;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests {@link IDGHttpClient} and the HTTP-based ID getters against a local stub server.
+ * <p>
+ *     The stub answers like the Fiehn and OPSIN services, and can also answer slowly, with an error status or
+ *     after a short delay that lets requests overlap. Throws an <tt>AssertionError</tt> on the first failure.
+ * </p>
+ *
+ * @author Clay Tsay
+ * @version 00.02.00
+ */
+public class IDGHttpClientTest {
+
+    // --------------------
+    // VARIABLES AND DATA
+    // --------------------
+
+    private static final long SLOW = 3_000;
+    private static final long BUSY = 50;
+    private static final int CONCURRENT_REQUESTS = 200;
+
+    private static final AtomicInteger inFlight = new AtomicInteger();
+    private static final AtomicInteger maxInFlight = new AtomicInteger();
+
+    private static String base;
+
+
+
+    // --------------------
+    // PUBLIC UTILITY METHODS
+    // --------------------
+
+    public static void main(String[] args) throws Exception {
+        ExecutorService serverThreads = Executors.newCachedThreadPool();
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(serverThreads);
+        server.createContext("/", IDGHttpClientTest::answer);
+        server.start();
+        base = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+        try {
+            answers();
+            statuses();
+            timeouts();
+            concurrency();
+        } finally {
+            server.stop(0);
+            serverThreads.shutdownNow();
+        }
+        System.out.println("IDGHttpClientTest passed");
+    }
+
+    /**
+     * Both services' answers are parsed, synchronously and asynchronously.
+     */
+    private static void answers() {
+        FiehnIDG fiehn = new FiehnIDG(base + "fiehn/");
+        OPSINIDG opsin = new OPSINIDG(base + "opsin/");
+        check("CAS-water".equals(fiehn.requestID("water", ChemID.CASRN)), "Fiehn answer");
+        check("CAS-water".equals(fiehn.requestIDAsync("water", ChemID.CASRN).join()), "Fiehn async answer");
+        check("KEY-ethanol".equals(opsin.requestID("ethanol", ChemID.InChI_Key)), "OPSIN answer");
+        check("KEY-ethanol".equals(opsin.requestIDAsync("ethanol", ChemID.InChI_Key).join()), "OPSIN async answer");
+    }
+
+    /**
+     * Statuses other than 2xx become <tt>StatusException</tt>s, which the ID getters pass on or turn into
+     * <tt>null</tt>.
+     */
+    private static void statuses() throws IOException {
+        IDGHttpClient.StatusException notFound = statusOf(base + "status/404");
+        check(notFound.getStatus() == 404 && !notFound.isTransient(), "404: " + notFound);
+        IDGHttpClient.StatusException unavailable = statusOf(base + "status/503");
+        check(unavailable.getStatus() == 503 && unavailable.isTransient(), "503: " + unavailable);
+        IDGHttpClient.StatusException tooMany = statusOf(base + "status/429");
+        check(tooMany.isTransient(), "429: " + tooMany);
+
+        FiehnIDG fiehn = new FiehnIDG(base + "status/404/");
+        try {
+            fiehn.fetchIDAsync("water", ChemID.CASRN).join();
+            throw new AssertionError("404 fetched an ID");
+        } catch (CompletionException e) {
+            check(e.getCause() instanceof IDGHttpClient.StatusException, "404 fetch failed with " + e.getCause());
+        }
+        check(fiehn.requestIDAsync("water", ChemID.CASRN).join() == null, "404 gave an ID");
+        check(fiehn.requestID("water", ChemID.CASRN) == null, "404 gave an ID");
+        // The service answered, so it is still considered up
+        check(fiehn.isAvailable(), "404s opened the breaker");
+    }
+
+    /**
+     * A slow answer fails with a timeout instead of holding the thread, and cancelling a request aborts it.
+     */
+    private static void timeouts() throws IOException {
+        long start = System.nanoTime();
+        try {
+            IDGHttpClient.get(base + "slow/fiehn/x", 300);
+            throw new AssertionError("slow request did not time out");
+        } catch (SocketTimeoutException e) {
+            check(elapsed(start) < SLOW, "timed out after " + elapsed(start) + "ms");
+        }
+
+        int readTimeout = IDGHttpClient.getReadTimeout();
+        IDGHttpClient.setReadTimeout(300);
+        try {
+            FiehnIDG fiehn = new FiehnIDG(base + "slow/fiehn/");
+            start = System.nanoTime();
+            try {
+                fiehn.fetchIDAsync("water", ChemID.CASRN).join();
+                throw new AssertionError("slow fetch did not time out");
+            } catch (CompletionException e) {
+                check(e.getCause() instanceof SocketTimeoutException, "slow fetch failed with " + e.getCause());
+                check(elapsed(start) < SLOW, "async timed out after " + elapsed(start) + "ms");
+            }
+            check(fiehn.requestIDAsync("water", ChemID.CASRN).join() == null, "slow request gave an ID");
+        } finally {
+            IDGHttpClient.setReadTimeout(readTimeout);
+        }
+
+        FiehnIDG fiehn = new FiehnIDG(base + "slow/fiehn/");
+        CompletableFuture<String> cancelled = fiehn.fetchIDAsync("water", ChemID.CASRN);
+        check(cancelled.cancel(true) && cancelled.isCancelled(), "request was not cancelled");
+        // Cancelling says nothing about the service
+        check(fiehn.isAvailable(), "cancelling opened the breaker");
+    }
+
+    /**
+     * Many asynchronous requests overlap, all get their own answer, and no more than the shared pool's threads
+     * are in flight at once.
+     */
+    private static void concurrency() {
+        maxInFlight.set(0);
+        FiehnIDG fiehn = new FiehnIDG(base + "busy/fiehn/");
+        OPSINIDG opsin = new OPSINIDG(base + "busy/opsin/");
+        List<CompletableFuture<String>> fiehnIDs = new ArrayList<>();
+        List<CompletableFuture<String>> opsinIDs = new ArrayList<>();
+        for(int i = 0; i < CONCURRENT_REQUESTS; i++) {
+            fiehnIDs.add(fiehn.requestIDAsync("chem" + i, ChemID.CASRN));
+            opsinIDs.add(opsin.requestIDAsync("chem" + i, ChemID.InChI_Key));
+        }
+        for(int i = 0; i < CONCURRENT_REQUESTS; i++) {
+            check(("CAS-chem" + i).equals(fiehnIDs.get(i).join()), "Fiehn answer " + i);
+            check(("KEY-chem" + i).equals(opsinIDs.get(i).join()), "OPSIN answer " + i);
+        }
+        check(maxInFlight.get() > 1, "requests did not overlap");
+        check(maxInFlight.get() <= IDGHttpClient.THREADS, maxInFlight.get() + " requests in flight");
+        check(fiehn.isAvailable() && opsin.isAvailable(), "breaker opened");
+    }
+
+
+
+    // --------------------
+    // PRIVATE UTILITY METHODS
+    // --------------------
+
+    /**
+     * Answers a request to the stub server. The path is made of optional <tt>slow/</tt> or <tt>busy/</tt>
+     * (or <tt>status/&lt;code&gt;/</tt>), the service (<tt>fiehn/</tt> or <tt>opsin/</tt>) and the rest of
+     * the service's URL, whose last segment is the chemical name (followed by <tt>.json</tt> for OPSIN).
+     */
+    private static void answer(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        // Only busy requests are counted, since slow ones go on sleeping after the client has given up
+        boolean busy = path.startsWith("/busy/");
+        if(busy) {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        }
+        try {
+            String name = path.substring(path.lastIndexOf('/') + 1).replaceFirst("\\.json$", "");
+            int status = 200;
+            String body;
+            if(path.startsWith("/status/")) {
+                status = Integer.parseInt(path.split("/")[2]);
+                body = "status " + status;
+            } else {
+                if(path.startsWith("/slow/")) {
+                    sleep(SLOW);
+                } else if(busy) {
+                    sleep(BUSY);
+                }
+                body = path.contains("/opsin/") ? "{\"stdinchikey\":\"KEY-" + name + "\"}"
+                        : "[{\"result\":[\"CAS-" + name + "\"]}]";
+            }
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(status, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        } catch (IOException e) {
+            // The client gave up (e.g. timed out) before the answer was sent
+        } finally {
+            if(busy) {
+                inFlight.decrementAndGet();
+            }
+            exchange.close();
+        }
+    }
+
+    private static IDGHttpClient.StatusException statusOf(String url) throws IOException {
+        try {
+            IDGHttpClient.get(url);
+        } catch (IDGHttpClient.StatusException e) {
+            return e;
+        }
+        throw new AssertionError("no StatusException from " + url);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static long elapsed(long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    private static void check(boolean condition, String message) {
+        if(!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+}